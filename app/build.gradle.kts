@@ -15,6 +15,11 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // pass -PuseFirebaseEmulator=true to run against the local Firebase emulators
+        buildConfigField("boolean", "USE_FIREBASE_EMULATOR",
+            (project.findProperty("useFirebaseEmulator") ?: "false").toString())
+        buildConfigField("String", "FIREBASE_EMULATOR_HOST", "\"10.0.2.2\"")
     }
 
     buildTypes {
@@ -30,8 +35,13 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // Robolectric tests inflate the real item layouts
+        unitTests.isIncludeAndroidResources = true
+    }
     buildFeatures {
         viewBinding = true;
+        buildConfig = true
     }
 }
 
@@ -45,7 +55,15 @@ dependencies {
     implementation(libs.firebase.bom)
     implementation(libs.firebase.messaging)
     implementation(libs.firebase.firestore)
+    implementation(libs.firebase.storage)
+    implementation(libs.lifecycle.viewmodel)
+    implementation(libs.lifecycle.livedata)
+    implementation(libs.work.runtime)
+    implementation(libs.tracing)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
+    androidTestImplementation(libs.work.testing)
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.example.signinsignoutapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.signinsignoutapp.models.BroadcastProgress;
+import com.example.signinsignoutapp.repositories.BroadcastSender;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented throughput test of BroadcastSender against the local Firestore emulator.
+ * Skipped unless the app is built with USE_FIREBASE_EMULATOR, so it never writes to a real project.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BroadcastThroughputTest {
+    private static final String TAG = "BroadcastThroughputTest";
+    private static final int RECIPIENTS = 1000;
+
+    private Context context;
+    private PreferenceManager preferenceManager;
+
+    @Before
+    public void setUp() {
+        assumeTrue(BuildConfig.USE_FIREBASE_EMULATOR);
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        preferenceManager = new PreferenceManager(context);
+        preferenceManager.clear();
+        preferenceManager.putString(Constants.KEY_USER_ID, "broadcastSender");
+    }
+
+    @Test
+    public void sequentialBatchesReachEveryRecipient() throws Exception {
+        measure(BroadcastSender.DEFAULT_CHUNK_RECIPIENTS, 1);
+    }
+
+    @Test
+    public void parallelBatchesReachEveryRecipient() throws Exception {
+        measure(BroadcastSender.DEFAULT_CHUNK_RECIPIENTS, BroadcastSender.DEFAULT_MAX_PARALLEL_BATCHES);
+    }
+
+    @Test
+    public void finishedBroadcastIsNotResumed() throws Exception {
+        BroadcastSender broadcastSender = new BroadcastSender(context, FirebaseFirestore.getInstance(),
+                BroadcastSender.DEFAULT_CHUNK_RECIPIENTS, BroadcastSender.DEFAULT_MAX_PARALLEL_BATCHES);
+        broadcastSender.send("hello", recipients(10)).get(1, TimeUnit.MINUTES);
+        assertFalse(broadcastSender.hasPendingBroadcast());
+        assertNull(broadcastSender.resume());
+    }
+
+    /**
+     * measure method to broadcast to RECIPIENTS users and log the throughput
+     *
+     * @param chunkRecipients - the number of recipients written per batch
+     *
+     * @param maxParallelBatches - the maximum number of batches committing at the same time
+     */
+    private void measure(int chunkRecipients, int maxParallelBatches) throws Exception {
+        BroadcastSender broadcastSender = new BroadcastSender(context, FirebaseFirestore.getInstance(),
+                chunkRecipients, maxParallelBatches);
+        BroadcastProgress progress = broadcastSender.send("hello everyone", recipients(RECIPIENTS))
+                .get(5, TimeUnit.MINUTES);
+
+        assertTrue(progress.isFinished);
+        assertEquals(0, progress.failedChunks);
+        assertEquals(RECIPIENTS, progress.sentRecipients);
+        assertTrue(Tasks.await(FirebaseFirestore.getInstance().collection(Constants.KEY_COLLECTION_CHAT)
+                .document(progress.broadcastId + "_recipient" + (RECIPIENTS - 1)).get()).exists());
+        Log.i(TAG, String.format("%d recipients, %d per batch, %d in flight: %d ms, %.0f recipients/s",
+                RECIPIENTS, chunkRecipients, maxParallelBatches, progress.elapsedMs,
+                RECIPIENTS * 1000.0 / Math.max(1, progress.elapsedMs)));
+    }
+
+    private static List<String> recipients(int count) {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recipients.add("recipient" + i);
+        }
+        return recipients;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationSummary;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.workers.SyncDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// FakeSyncDataSource class implements SyncDataSource with synthetic data and no network
+// every query returns a full page and is counted the way firestore bills it
+public class FakeSyncDataSource implements SyncDataSource {
+    public int queries, reads;
+    public final List<String> userCursors = new ArrayList<>(); // the cursor of every directory query
+    public String lastUserId; // the last user returned by a directory query
+    private final long unreadCount = System.currentTimeMillis(); // always more than any stored count
+
+    @Override
+    public List<ConversationSummary> fetchConversationSummaries(int limit) {
+        List<ConversationSummary> conversationSummaries = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            ConversationSummary conversationSummary = new ConversationSummary();
+            conversationSummary.senderId = "sender" + i;
+            conversationSummary.conversationId = "conversation" + i;
+            conversationSummary.unreadCount = unreadCount;
+            conversationSummaries.add(conversationSummary);
+        }
+        return charge(conversationSummaries);
+    }
+
+    @Override
+    public List<ChatMessage> fetchMessagesAfter(String conversationId, long afterTimestamp, int afterNanos,
+                                                String afterMessageId, int limit) {
+        return fetchNewestMessages(conversationId, limit);
+    }
+
+    @Override
+    public List<ChatMessage> fetchNewestMessages(String conversationId, int limit) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = conversationId + "_" + i;
+            chatMessage.senderId = "sender";
+            chatMessage.message = "message " + i;
+            chatMessage.timestamp = i;
+            chatMessages.add(chatMessage);
+        }
+        return charge(chatMessages);
+    }
+
+    @Override
+    public List<User> fetchUsersAfterId(String afterUserId, int limit) {
+        userCursors.add(afterUserId);
+        List<User> users = new ArrayList<>();
+        int first = afterUserId == null ? 0 : Integer.parseInt(afterUserId.substring("user".length())) + 1;
+        for (int i = first; i < first + limit; i++) {
+            User user = new User();
+            user.id = String.format("user%06d", i);
+            user.name = user.id;
+            users.add(user);
+            lastUserId = user.id;
+        }
+        return charge(users);
+    }
+
+    @Override
+    public List<User> fetchUsersUpdatedAfter(long updatedAfter, int updatedAfterNanos, String afterUserId, int limit) {
+        return fetchUsersAfterId(afterUserId, limit);
+    }
+
+    private <T> List<T> charge(List<T> documents) {
+        queries++;
+        reads += Math.max(1, documents.size());
+        return documents;
+    }
+}
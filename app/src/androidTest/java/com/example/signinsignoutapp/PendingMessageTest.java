@@ -0,0 +1,148 @@
+package com.example.signinsignoutapp;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.widget.TextView;
+
+import androidx.core.widget.TextViewCompat;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.ConversationCipher;
+import com.example.signinsignoutapp.firebase.SessionKeyStore;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.repositories.ChatRepository;
+import com.example.signinsignoutapp.utilities.ChatImageLoader;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageTextPrecomputer;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented test of ChatRepository against the local Firestore emulator: a message still pending when the
+ * listener detaches is confirmed, stored and counted in the high-water mark once the listener is attached again.
+ * Skipped unless the app is built with USE_FIREBASE_EMULATOR, so it never writes to a real project.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PendingMessageTest {
+    private static final String SENDER_ID = "pendingSender";
+    private static final long TIMEOUT_MS = 30_000;
+
+    private Context context;
+    private Instrumentation instrumentation;
+    private FirebaseFirestore database;
+    private ChatRepository chatRepository;
+
+    @Before
+    public void setUp() {
+        assumeTrue(BuildConfig.USE_FIREBASE_EMULATOR);
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = instrumentation.getTargetContext();
+        database = FirebaseFirestore.getInstance();
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        preferenceManager.clear();
+        preferenceManager.putString(Constants.KEY_USER_ID, SENDER_ID);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (chatRepository != null) {
+            instrumentation.runOnMainSync(chatRepository::close);
+        }
+        if (database != null) {
+            Tasks.await(database.enableNetwork());
+        }
+    }
+
+    @Test
+    public void pendingSendIsConfirmedWhenTheListenerIsAttachedAgain() throws Exception {
+        User receiverUser = new User();
+        receiverUser.id = "pendingReceiver" + System.nanoTime(); // a fresh conversation for every run
+        receiverUser.name = "Receiver";
+        String conversationId = ConversationUtils.getConversationId(SENDER_ID, receiverUser.id);
+        instrumentation.runOnMainSync(() -> {
+            ConversationCipher conversationCipher = new ConversationCipher(SessionKeyStore.getInstance(context),
+                    SENDER_ID, receiverUser.id);
+            MessageTextPrecomputer messageTextPrecomputer = new MessageTextPrecomputer(
+                    TextViewCompat.getTextMetricsParams(new TextView(context)), conversationCipher);
+            chatRepository = new ChatRepository(context, receiverUser, messageTextPrecomputer,
+                    new ChatImageLoader(context), conversationCipher);
+            chatRepository.start();
+        });
+        waitFor(() -> Boolean.FALSE.equals(chatRepository.getLoading().getValue()));
+
+        // the write stays pending while offline, and the listener detaches before the server confirms it
+        Tasks.await(database.disableNetwork());
+        instrumentation.runOnMainSync(() -> chatRepository.sendMessage("sent while offline"));
+        waitFor(() -> findMessage() != null);
+        assertTrue(onMain(() -> findMessage().isPending));
+        instrumentation.runOnMainSync(chatRepository::stop);
+        Tasks.await(database.enableNetwork());
+        Tasks.await(database.waitForPendingWrites(), TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        // attached again, the confirmed document is delivered as added
+        instrumentation.runOnMainSync(chatRepository::start);
+        waitFor(() -> !findMessage().isPending);
+        String messageId = onMain(() -> findMessage().id);
+        waitFor(() -> isStored(conversationId, messageId));
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        waitFor(() -> messageId.equals(
+                preferenceManager.getString(Constants.KEY_LAST_SEEN_MESSAGE_ID + "_" + conversationId)));
+    }
+
+    // the message sent by the test, null until it is shown, read on the main thread
+    private ChatMessage findMessage() {
+        for (ChatMessage chatMessage : chatRepository.getChatMessages()) {
+            if (SENDER_ID.equals(chatMessage.senderId)) {
+                return chatMessage;
+            }
+        }
+        return null;
+    }
+
+    private boolean isStored(String conversationId, String messageId) {
+        for (ChatMessage chatMessage : ChatDatabase.getInstance(context).getMessages(conversationId)) {
+            if (chatMessage.id.equals(messageId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> T onMain(Callable<T> callable) {
+        AtomicReference<T> result = new AtomicReference<>();
+        instrumentation.runOnMainSync(() -> {
+            try {
+                result.set(callable.call());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        return result.get();
+    }
+
+    // polls the condition on the main thread, where the repository state lives, until it holds
+    private void waitFor(Callable<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!Boolean.TRUE.equals(onMain(condition))) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
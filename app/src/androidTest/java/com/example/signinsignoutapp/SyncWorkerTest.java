@@ -0,0 +1,109 @@
+package com.example.signinsignoutapp;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.work.Configuration;
+import androidx.work.ListenableWorker;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.WorkerFactory;
+import androidx.work.WorkerParameters;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestDriver;
+import androidx.work.testing.TestListenableWorkerBuilder;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import com.example.signinsignoutapp.models.NetworkState;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.NetworkPolicy;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.example.signinsignoutapp.workers.SyncWorker;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of SyncWorker, driven by the WorkManager test driver with a fake data source.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncWorkerTest {
+    private Context context;
+    private FakeSyncDataSource fakeSyncDataSource;
+    private WorkerFactory workerFactory;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        preferenceManager.clear();
+        preferenceManager.putString(Constants.KEY_USER_ID, "currentUser");
+        fakeSyncDataSource = new FakeSyncDataSource();
+        workerFactory = new WorkerFactory() {
+            @Override
+            public ListenableWorker createWorker(@NonNull Context appContext, @NonNull String workerClassName,
+                                                 @NonNull WorkerParameters workerParameters) {
+                return new SyncWorker(appContext, workerParameters, fakeSyncDataSource, unmeteredPolicy());
+            }
+        };
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, new Configuration.Builder()
+                .setExecutor(new SynchronousExecutor())
+                .setWorkerFactory(workerFactory)
+                .build());
+    }
+
+    @Test
+    public void periodicSyncWaitsForConstraints() throws Exception {
+        PeriodicWorkRequest workRequest = SyncWorker.buildWorkRequest();
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.enqueue(workRequest).getResult().get();
+        TestDriver testDriver = WorkManagerTestInitHelper.getTestDriver(context);
+        testDriver.setPeriodDelayMet(workRequest.getId());
+        assertEquals(0, fakeSyncDataSource.queries); // no unmetered network, no run
+
+        testDriver.setAllConstraintsMet(workRequest.getId());
+        WorkInfo workInfo = workManager.getWorkInfoById(workRequest.getId()).get();
+        assertTrue(fakeSyncDataSource.queries > 0);
+        assertEquals(WorkInfo.State.ENQUEUED, workInfo.getState()); // scheduled again for the next period
+    }
+
+    @Test
+    public void runStaysWithinReadBudget() {
+        ListenableWorker.Result result = buildWorker().doWork();
+        assertEquals(ListenableWorker.Result.success(), result);
+        // the fake always returns full pages, so the whole budget is used and never more
+        assertEquals(SyncWorker.MAX_READS_PER_RUN, fakeSyncDataSource.reads);
+    }
+
+    @Test
+    public void directoryResumesWhereTheLastRunStopped() {
+        // the first run spends its budget on the conversations, the second one on the directory
+        buildWorker().doWork();
+        buildWorker().doWork();
+        assertFalse(fakeSyncDataSource.userCursors.isEmpty());
+        String lastUserId = fakeSyncDataSource.lastUserId;
+        int queries = fakeSyncDataSource.userCursors.size();
+
+        buildWorker().doWork();
+        assertEquals(lastUserId, fakeSyncDataSource.userCursors.get(queries)); // the page after the last stored one
+    }
+
+    private SyncWorker buildWorker() {
+        return TestListenableWorkerBuilder.from(context, SyncWorker.class)
+                .setWorkerFactory(workerFactory)
+                .build();
+    }
+
+    // a policy that always sees a fast unmetered network, whatever network the device is on
+    private static NetworkPolicy unmeteredPolicy() {
+        NetworkState networkState = new NetworkState();
+        networkState.isConnected = true;
+        return new NetworkPolicy(() -> networkState);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.signinsignoutapp;
+
+import android.app.Application;
+
+import com.example.signinsignoutapp.utilities.CacheRegistry;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.FirebaseStorage;
+
+// ChatApplication class extends Application
+public class ChatApplication extends Application {
+
+    // default ports of the local Firebase emulators
+    private static final int FIRESTORE_EMULATOR_PORT = 8080;
+    private static final int STORAGE_EMULATOR_PORT = 9199;
+
+    /**
+     * onCreate method overridden
+     * points Firebase at the local emulators before any Firebase call is made
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.USE_FIREBASE_EMULATOR) {
+            FirebaseFirestore.getInstance().useEmulator(BuildConfig.FIREBASE_EMULATOR_HOST, FIRESTORE_EMULATOR_PORT);
+            FirebaseStorage.getInstance().useEmulator(BuildConfig.FIREBASE_EMULATOR_HOST, STORAGE_EMULATOR_PORT);
+        }
+    }
+
+    /**
+     * onTrimMemory method overridden to release cached memory the system asked for
+     *
+     * @param level - how hard the system is pressed for memory, and whether this app is still visible
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheRegistry.getInstance().trim(level);
+    }
+
+    /**
+     * onLowMemory method overridden to release every cache, the system is short of memory as a whole
+     */
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheRegistry.getInstance().onLowMemory();
+    }
+}
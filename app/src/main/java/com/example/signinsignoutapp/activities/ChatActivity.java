@@ -1,46 +1,63 @@
 package com.example.signinsignoutapp.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.Intent;
 import android.os.Bundle;
-import android.util.Base64;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.provider.MediaStore;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.Toast;
 
-import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AlertDialog;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.graphics.Insets;
-import androidx.core.view.ViewCompat;
-import androidx.core.view.WindowInsetsCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.signinsignoutapp.R;
 import com.example.signinsignoutapp.adapters.ChatAdapter;
+import com.example.signinsignoutapp.adapters.SearchResultsAdapter;
 import com.example.signinsignoutapp.databinding.ActivityChatBinding;
+import com.example.signinsignoutapp.databinding.ItemContainerSentMessageBinding;
+import com.example.signinsignoutapp.R;
+import com.example.signinsignoutapp.listeners.MessageListener;
+import com.example.signinsignoutapp.listeners.SearchResultListener;
 import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ChatUpdate;
+import com.example.signinsignoutapp.models.ExportProgress;
+import com.example.signinsignoutapp.models.SearchResult;
 import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.repositories.ConversationExporter;
+import com.example.signinsignoutapp.utilities.CacheRegistry;
 import com.example.signinsignoutapp.utilities.Constants;
-import com.example.signinsignoutapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
-
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
-
-// ChatActivity class extends AppCompatActivity
-public class ChatActivity extends AppCompatActivity {
+import com.example.signinsignoutapp.utilities.MessageCompression;
+import com.example.signinsignoutapp.viewmodels.ChatViewModel;
+
+import java.util.concurrent.TimeUnit;
+
+// ChatActivity class extends AppCompatActivity and implements SearchResultListener and MessageListener
+// the conversation state lives in ChatViewModel, so a rotation re-reads and re-decodes nothing
+public class ChatActivity extends AppCompatActivity implements SearchResultListener, MessageListener {
     private ActivityChatBinding binding;
     private User receiverUser;
-    private List<ChatMessage> chatMessages;
+    private ChatViewModel chatViewModel;
     private ChatAdapter chatAdapter;
-    private PreferenceManager preferenceManager;
-    private FirebaseFirestore database;
+    private SearchResultsAdapter searchResultsAdapter;
+    private int displayedVersion; // the version of the chat messages list the chatAdapter was last told about
+    private static final int NEAR_BOTTOM_ROWS = 2; // rows the user may be above the newest message to still follow it
+    private int unseenMessageCount; // messages inserted below the visible rows while the user was scrolled up
+    private boolean followNextInsert; // set when the user sends a message, so they always see it
+    private AlertDialog exportDialog; // shown while this screen follows a running export
+    // trims the messages away from the rows this screen shows, registered for as long as the screen exists
+    private final CacheRegistry.TrimmableCache messageCache = this::trimMessages;
+    // times to live offered for disappearing messages, in the order of R.array.message_ttl_options,
+    // all shorter than MessageCompactor.COMPACTION_AGE_MS so a disappearing message is never compacted
+    private static final long[] MESSAGE_TTL_OPTIONS = {0, TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1),
+            TimeUnit.DAYS.toMillis(7)};
 
     /**
      * onCreate method overridden
@@ -59,120 +76,275 @@ public class ChatActivity extends AppCompatActivity {
         loadReceiverDetails();
         setListeners();
         init();
-        listenMessage();
+        observeChat();
+        observeExport();
+        CacheRegistry.getInstance().register(messageCache);
+    }
+
+    /**
+     * trimMessages method to release the derived state of the messages outside the visible rows
+     *
+     * @param level - a ComponentCallbacks2 trim level
+     *
+     * @return - the estimated number of bytes released
+     */
+    private long trimMessages(int level) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+        if (layoutManager == null) {
+            return chatViewModel.trimMessages(level, RecyclerView.NO_POSITION, RecyclerView.NO_POSITION);
+        }
+        return chatViewModel.trimMessages(level, layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition());
+    }
+
+    /**
+     * observeExport method to show the progress of a running export, and its outcome once it stops
+     */
+    private void observeExport() {
+        chatViewModel.getExportProgress().observe(this, progress -> {
+            if (!progress.isFinished) {
+                showExportProgress(progress);
+            } else if (exportDialog != null) {
+                // only reported if this screen saw the export running, not replayed after a rotation
+                exportDialog.dismiss();
+                exportDialog = null;
+                if (progress.isFailed) {
+                    showToast(getString(R.string.export_failed));
+                } else if (progress.isCancelled) {
+                    showToast(getString(R.string.export_cancelled));
+                } else {
+                    showToast(getString(R.string.export_done, progress.exportedMessages));
+                }
+            }
+        });
+    }
+
+    /**
+     * onDestroy method overridden to close the export dialog with the screen and stop trimming its messages
+     * the next screen shows it again while the export is still running
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        CacheRegistry.getInstance().unregister(messageCache);
+        if (exportDialog != null) {
+            exportDialog.dismiss();
+        }
+    }
+
+    /**
+     * showExportProgress method to show how many messages the running export has written
+     *
+     * @param progress - the progress of the export
+     */
+    private void showExportProgress(ExportProgress progress) {
+        String message = getString(R.string.export_progress, progress.exportedMessages, progress.totalMessages);
+        if (exportDialog == null) {
+            exportDialog = new AlertDialog.Builder(this)
+                    .setTitle(R.string.export_conversation)
+                    .setMessage(message)
+                    .setCancelable(false)
+                    .setNegativeButton(R.string.cancel, (dialog, which) -> chatViewModel.cancelExport())
+                    .show();
+        } else {
+            exportDialog.setMessage(message);
+        }
     }
 
     /**
-     * init method to initialize the chatMessages, the chatAdapter, and the firebase database
+     * init method to initialize the chatViewModel and the chatAdapter
+     * the chatAdapter shows the messages the chatViewModel already holds
      */
     private void init() {
-        preferenceManager = new PreferenceManager(getApplicationContext());
-        chatMessages = new ArrayList<>(); // initialize chatMessages array list here
-        // initialize chatAdapter here with chatMessages, receiverUser image, and user ID
+        chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+        // measure message text with the same metrics as the message item TextView
+        chatViewModel.init(receiverUser, TextViewCompat.getTextMetricsParams(
+                ItemContainerSentMessageBinding.inflate(getLayoutInflater()).textMessage));
+        // initialize chatAdapter here with chatMessages, receiverUser image, the image loader, and this listener
         chatAdapter = new ChatAdapter(
-                chatMessages,
-                getBitmapFromEncodedString(receiverUser.image),
-                preferenceManager.getString(Constants.KEY_USER_ID)
+                chatViewModel.getChatMessages(),
+                chatViewModel.getReceiverProfileBitmap(),
+                chatViewModel.getChatImageLoader(),
+                this
         );
+        displayedVersion = chatViewModel.getVersion();
         binding.chatRecyclerView.setAdapter(chatAdapter);
-        database = FirebaseFirestore.getInstance(); // initialize the firebase database here
+        binding.chatRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (!recyclerView.canScrollVertically(1)) {
+                    hideNewMessages(); // the user reached the newest message by themselves
+                }
+            }
+        });
+        if (!chatViewModel.getChatMessages().isEmpty()) {
+            binding.chatRecyclerView.setVisibility(View.VISIBLE);
+        }
+        searchResultsAdapter = new SearchResultsAdapter(this);
+        binding.searchRecyclerView.setAdapter(searchResultsAdapter);
+        showMessageTtl();
     }
 
     /**
-     * sendMessages method to control the messages being sent from the user
-     * the messages will then be directed to the firebase database in real-time
+     * observeChat method to apply the changes published by the chatViewModel
      */
-    private void sendMessages() {
-        // message made up of a String, Object key-pair
-        HashMap<String, Object> message = new HashMap<>();
+    private void observeChat() {
+        chatViewModel.getChatUpdates().observe(this, this::applyChatUpdate);
+        chatViewModel.getLoading().observe(this, isLoading -> {
+            if (!isLoading) {
+                binding.progressBar.setVisibility(View.GONE); // hide the progress bar
+            }
+        });
+        chatViewModel.getSearchResults().observe(this, searchResults -> {
+            searchResultsAdapter.setSearchResults(searchResults);
+            binding.searchRecyclerView.setVisibility(searchResults.isEmpty() ? View.GONE : View.VISIBLE);
+        });
+        chatViewModel.getErrorMessages().observe(this, errorMessage -> {
+            if (errorMessage != null) {
+                showToast(errorMessage); // prompt the user
+                chatViewModel.clearErrorMessage();
+            }
+        });
+        chatViewModel.getEncrypted().observe(this, isEncrypted -> {
+            if (isEncrypted == null) {
+                return;
+            }
+            // the input says whether what the user types next is end-to-end encrypted or goes out in the clear
+            binding.inputMessage.setHint(isEncrypted ? R.string.type_a_message : R.string.type_a_message_not_encrypted);
+        });
+    }
 
-        // add the sender and receiver id's to the message
-        message.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-        message.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
+    /**
+     * applyChatUpdate method to notify the chatAdapter of a change to the chat messages list
+     * targeted notifications are only used when no update was missed, otherwise every row is rebound
+     * edits and unsends only rebind or remove their own row
+     * inserts arrive at most once per frame, since the chatViewModel coalesces bursts of snapshots
+     * new messages are only scrolled to when the user is already near the bottom, a pill is shown otherwise
+     *
+     * @param chatUpdate - the change published by the chatViewModel
+     */
+    private void applyChatUpdate(ChatUpdate chatUpdate) {
+        if (chatUpdate.version <= displayedVersion) {
+            return; // already shown, e.g. the last update replayed to a recreated activity
+        }
+        if (chatUpdate.version != displayedVersion + 1 || chatUpdate.type == ChatUpdate.TYPE_RELOADED) {
+            chatAdapter.notifyDataSetChanged();
+        } else if (chatUpdate.type == ChatUpdate.TYPE_INSERTED) {
+            boolean following = followNextInsert || isNearBottom(chatUpdate.position - 1);
+            chatAdapter.notifyItemRangeInserted(chatUpdate.position, chatUpdate.count);
+            if (following) {
+                binding.chatRecyclerView.smoothScrollToPosition(chatAdapter.getItemCount() - 1);
+                followNextInsert = false;
+            } else {
+                showNewMessages(chatUpdate.count);
+            }
+        } else if (chatUpdate.type == ChatUpdate.TYPE_CHANGED) {
+            chatAdapter.notifyItemRangeChanged(chatUpdate.position, chatUpdate.count);
+        } else if (chatUpdate.type == ChatUpdate.TYPE_REMOVED) {
+            chatAdapter.notifyItemRangeRemoved(chatUpdate.position, chatUpdate.count);
+        }
+        displayedVersion = chatUpdate.version;
+        binding.chatRecyclerView.setVisibility(View.VISIBLE); // inflate the chatRecyclerView here
+    }
 
-        // add the actual message and time stamp of the message
-        message.put(Constants.KEY_MESSAGE, binding.inputMessage.getText().toString());
-        message.put(Constants.KEY_TIMESTAMP, new Date());
+    /**
+     * isNearBottom method to check if the user is looking at the newest messages
+     *
+     * @param lastPosition - the position of the newest message before the insert
+     *
+     * @return - true if the newest message is visible or only a few rows below the visible ones
+     */
+    private boolean isNearBottom(int lastPosition) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+        return layoutManager == null
+                || layoutManager.findLastVisibleItemPosition() >= lastPosition - NEAR_BOTTOM_ROWS;
+    }
 
-        // add this message to the firebase database
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message);
-        binding.inputMessage.setText(null); // reset the input message edit text box for the next message
+    /**
+     * showNewMessages method to count the messages inserted below the visible rows in the pill
+     *
+     * @param count - the number of inserted messages
+     */
+    private void showNewMessages(int count) {
+        unseenMessageCount += count;
+        binding.textNewMessages.setText(getResources().getQuantityString(
+                R.plurals.new_messages, unseenMessageCount, unseenMessageCount));
+        binding.textNewMessages.setVisibility(View.VISIBLE);
     }
 
     /**
-     * listenMessage method to differentiate between the sender and receiver messages
-     * understands what message comes from who
+     * hideNewMessages method to hide the pill once the user sees the newest messages
      */
-    private void listenMessage() {
-        // for messages coming from the sender
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,
-                preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id)
-                .addSnapshotListener(eventListener);
+    private void hideNewMessages() {
+        if (unseenMessageCount > 0) {
+            unseenMessageCount = 0;
+            binding.textNewMessages.setVisibility(View.GONE);
+        }
+    }
 
-        // for messages coming from the receiver
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID,
-                        receiverUser.id)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID,
-                        preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
+    /**
+     * onStart method overridden to listen to the conversation and mark it as read
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        chatViewModel.start();
     }
 
     /**
-     * EventListener for getting the query information from the current message in the firebase database
-     * initialize the chat message sender id, receiver id, message, date time, and date object
-     * added to the chatMessages list
+     * onStop method overridden to stop listening while the conversation is not visible
+     * the listener is kept across a configuration change, the recreated activity starts right away
      */
-    private final EventListener <QuerySnapshot> eventListener = ((value, error) -> {
-        // if error occur, end function
-        if (error != null) {
-            return;
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (!isChangingConfigurations()) {
+            chatViewModel.stop();
         }
-        // continue if value is present
-        if  (value != null) {
-            int count = chatMessages.size();
-            // for each DocumentChange in the value document changes
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
-                // if message has been added, we need to initialize the information here
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage(); // create new chatMessage
-                    // initialize sender id, receiver id, message, date time, and date object from firebase database
-                    chatMessage.senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime = getReadableDateTime(
-                            documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage);
+    }
+
+    /**
+     * sendMessages method to control the messages being sent from the user
+     * the messages will then be directed to the firebase database in real-time
+     */
+    private void sendMessages() {
+        followNextInsert = true;
+        chatViewModel.sendMessage(binding.inputMessage.getText().toString());
+        binding.inputMessage.setText(null); // reset the input message edit text box for the next message
+    }
+
+    /**
+     * ActivityResultLauncher class to send the image picked by the user
+     */
+    private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                if (result.getResultCode() == RESULT_OK && result.getData() != null
+                        && result.getData().getData() != null) {
+                    chatViewModel.sendImage(result.getData().getData());
                 }
             }
-            // sort the chatMessages based on the date object
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged(); // if no chat messages
-            } else {
-                chatAdapter.notifyItemRangeChanged(chatMessages.size(), chatMessages.size());
+    );
 
-                binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1);
+    /**
+     * ActivityResultLauncher class to export the conversation to the document created by the user
+     */
+    private final ActivityResultLauncher<String> createExport = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(ConversationExporter.MIME_TYPE),
+            uri -> {
+                if (uri != null && !chatViewModel.exportConversation(uri)) {
+                    showToast(getString(R.string.export_running)); // prompt the user
+                }
             }
-            binding.chatRecyclerView.setVisibility(View.VISIBLE); // inflate the chatRecyclerView here
-        }
-        binding.progressBar.setVisibility(View.GONE); // hide the progress bar
-    });
+    );
 
     /**
-     * getBitmapFromEncodedString method to convert the encodedImage to a bitmap
-     *
-     * @param encodedImage - the encodedImage that is being converted
+     * showToast method to prompt the user in a Toast pop up format
      *
-     * @return - the converted encodedImage in bitmap form
+     * @param message - the message in the Toast
      */
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT); // the bytes of the encodedImage
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length); // newly converted bitmap
+    private void showToast(String message) {
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
     }
 
     /**
@@ -191,16 +363,157 @@ public class ChatActivity extends AppCompatActivity {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
 
         binding.layoutSend.setOnClickListener(v -> sendMessages());
+
+        // pick an image to send when the user clicks the attach button
+        binding.layoutAttach.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            pickImage.launch(intent);
+        });
+
+        binding.imageSearch.setOnClickListener(v -> toggleSearch());
+
+        // let the user pick where the export is written, no storage permission is needed
+        binding.imageExport.setOnClickListener(v -> createExport.launch(chatViewModel.getExportFileName()));
+
+        binding.imageTimer.setOnClickListener(v -> showMessageTtlDialog());
+
+        // tell the user if the messages of this conversation are sealed, or sent in the clear
+        binding.imageInfo.setOnClickListener(v -> {
+            Boolean isEncrypted = chatViewModel.getEncrypted().getValue();
+            if (isEncrypted != null) {
+                showToast(isEncrypted ? getString(R.string.messages_encrypted)
+                        : getString(R.string.messages_not_encrypted, receiverUser.name));
+            }
+        });
+
+        // jump to the newest message, a smooth scroll over a long backlog would take many frames
+        binding.textNewMessages.setOnClickListener(v -> {
+            binding.chatRecyclerView.scrollToPosition(chatAdapter.getItemCount() - 1);
+            hideNewMessages();
+        });
+
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                chatViewModel.searchMessages(s.toString());
+            }
+        });
+    }
+
+    /**
+     * showMessageTtlDialog method to let the user choose how long the messages they send from now on last
+     */
+    private void showMessageTtlDialog() {
+        int checkedItem = 0;
+        for (int i = 0; i < MESSAGE_TTL_OPTIONS.length; i++) {
+            if (MESSAGE_TTL_OPTIONS[i] == chatViewModel.getMessageTtl()) {
+                checkedItem = i;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.disappearing_messages)
+                .setSingleChoiceItems(R.array.message_ttl_options, checkedItem, (dialog, which) -> {
+                    chatViewModel.setMessageTtl(MESSAGE_TTL_OPTIONS[which]);
+                    showMessageTtl();
+                    dialog.dismiss();
+                })
+                .show();
+    }
+
+    /**
+     * showMessageTtl method to show the timer icon dimmed while disappearing messages are off
+     */
+    private void showMessageTtl() {
+        binding.imageTimer.setAlpha(chatViewModel.getMessageTtl() > 0 ? 1f : 0.5f);
+    }
+
+    /**
+     * toggleSearch method to show or hide the message search bar
+     */
+    private void toggleSearch() {
+        if (binding.layoutSearch.getVisibility() == View.VISIBLE) {
+            binding.layoutSearch.setVisibility(View.GONE);
+            binding.inputSearch.setText(null);
+        } else {
+            binding.layoutSearch.setVisibility(View.VISIBLE);
+            binding.inputSearch.requestFocus();
+        }
+    }
+
+    /**
+     * onSearchResultClicked method for when the user clicks a message search result
+     * jumps to the position of the matching message in the chatRecyclerView
+     *
+     * @param searchResult - the search result that was clicked by the user
+     */
+    @Override
+    public void onSearchResultClicked(SearchResult searchResult) {
+        int position = chatViewModel.indexOfMessage(searchResult.messageId);
+        if (position >= 0) {
+            binding.chatRecyclerView.scrollToPosition(position);
+        }
+        toggleSearch(); // hide the search bar once the user picked a result
+    }
+
+    /**
+     * onMessageLongClicked method for when the user long clicks a message they sent
+     * text messages can be edited or unsent, image messages can only be unsent
+     *
+     * @param chatMessage - the chat message that was long clicked by the user
+     */
+    @Override
+    public void onMessageLongClicked(ChatMessage chatMessage) {
+        if (chatMessage.isPending) {
+            return; // not on the server yet, so nothing can be changed
+        }
+        if (chatMessage.isImage) {
+            new AlertDialog.Builder(this)
+                    .setItems(new CharSequence[] {getString(R.string.unsend_message)},
+                            (dialog, which) -> chatViewModel.unsendMessage(chatMessage))
+                    .show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setItems(new CharSequence[] {getString(R.string.edit_message), getString(R.string.unsend_message)},
+                        (dialog, which) -> {
+                            if (which == 0) {
+                                showEditDialog(chatMessage);
+                            } else {
+                                chatViewModel.unsendMessage(chatMessage);
+                            }
+                        })
+                .show();
     }
 
     /**
-     * getReadableDateTime method for getting the current local time of the chat message
+     * showEditDialog method to let the user change the text of a message they sent
      *
-     * @param date - the current local time in month, day, year, and time format
-     * @return - the new formatted local time
+     * @param chatMessage - the chat message being edited
      */
-    private String getReadableDateTime(Date date) {
-        return new SimpleDateFormat("MMM dd, yyyy - hh:mm a",
-                Locale.getDefault()).format(date);
+    private void showEditDialog(ChatMessage chatMessage) {
+        EditText inputEdit = new EditText(this);
+        String message = MessageCompression.getDisplayText(chatMessage);
+        inputEdit.setText(message);
+        inputEdit.setSelection(inputEdit.getText().length());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.edit_message)
+                .setView(inputEdit)
+                .setPositiveButton(R.string.save, (dialog, which) -> {
+                    String text = inputEdit.getText().toString();
+                    if (!text.trim().isEmpty() && !text.equals(message)) {
+                        chatViewModel.editMessage(chatMessage, text);
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,7 @@ package com.example.signinsignoutapp.activities;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.View;
 import android.widget.Toast;
 
@@ -18,10 +16,18 @@ import com.example.signinsignoutapp.R;
 import com.example.signinsignoutapp.activities.SignUpActivity;
 import com.example.signinsignoutapp.databinding.ActivityMainBinding;
 import com.example.signinsignoutapp.databinding.ActivitySignInBinding;
+import com.example.signinsignoutapp.firebase.ManagedSnapshotListener;
+import com.example.signinsignoutapp.firebase.SessionKeyStore;
 import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.repositories.BroadcastSender;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
 import com.example.signinsignoutapp.utilities.Constants;
 import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.example.signinsignoutapp.workers.CompactionWorker;
+import com.example.signinsignoutapp.workers.ExpiryWorker;
+import com.example.signinsignoutapp.workers.SyncWorker;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
@@ -53,6 +59,37 @@ public class MainActivity extends AppCompatActivity {
         loadUserDetails();
         getToken();
         setListener();
+        listenUnreadCounts();
+        SyncWorker.schedule(getApplicationContext()); // keep the local store warm while the app is idle
+        CompactionWorker.schedule(getApplicationContext());
+        ExpiryWorker.schedule(getApplicationContext()); // delete the disappearing messages this user sent
+        BroadcastSender.getInstance(getApplicationContext()).resume(); // finish a broadcast cut short last time
+        // other users can only send encrypted messages once the public key of this user is published
+        SessionKeyStore.getInstance(getApplicationContext())
+                .publishIdentity(preferenceManager.getString(Constants.KEY_USER_ID));
+    }
+
+    /**
+     * listenUnreadCounts method to display the total number of unread messages
+     * only the small unread counter documents of the current user are read, never the messages
+     */
+    private void listenUnreadCounts() {
+        FirebaseFirestore database = FirebaseFirestore.getInstance();
+        new ManagedSnapshotListener(this, () -> database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, preferenceManager.getString(Constants.KEY_USER_ID)),
+                (value, error) -> {
+                    if (value == null) {
+                        return;
+                    }
+                    long unreadCount = 0;
+                    for (DocumentSnapshot documentSnapshot : value.getDocuments()) {
+                        Long count = documentSnapshot.getLong(Constants.KEY_UNREAD_COUNT);
+                        unreadCount += count != null ? count : 0;
+                    }
+                    // display the unread badge on the new chat button
+                    binding.textUnreadCount.setText(unreadCount > 99 ? "99+" : String.valueOf(unreadCount));
+                    binding.textUnreadCount.setVisibility(unreadCount > 0 ? View.VISIBLE : View.GONE);
+                });
     }
 
     /**
@@ -71,8 +108,7 @@ public class MainActivity extends AppCompatActivity {
     private void loadUserDetails() {
         // set user name
         binding.textName.setText(preferenceManager.getString(Constants.KEY_FIRST_NAME));
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE), Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        Bitmap bitmap = ChatImageEncoder.decodeBase64Bitmap(preferenceManager.getString(Constants.KEY_IMAGE));
         binding.imageProfile.setImageBitmap(bitmap); // set user profile image
         binding.progressBar.setVisibility(View.GONE); // make progress bar invisible
     }
@@ -95,18 +131,26 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * updateToken method to update the user token in firebase database on real-time
+     * only a token that changed since the last launch is written, and the update time is left alone,
+     * the token is not shown in the directory, so it must not send the user to every directory delta
      *
      * @param token - the user firebase token
      */
     private void updateToken(String token) {
+        if (token.equals(preferenceManager.getString(Constants.KEY_FCM_TOKEN))) {
+            return; // already written by an earlier launch
+        }
         // initialize the firebase database
         FirebaseFirestore database = FirebaseFirestore.getInstance();
         // initialize a new DocumentReference connecting the database
         DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS)
                 .document(preferenceManager.getString(Constants.KEY_USER_ID));
-        documentReference.update(Constants.KEY_FCM_TOKEN,token)
+        documentReference.update(Constants.KEY_FCM_TOKEN, token)
                 // prompt the user with a Toast pop up message
-                .addOnSuccessListener(unused -> showToast("Token updated successfully"))
+                .addOnSuccessListener(unused -> {
+                    preferenceManager.putString(Constants.KEY_FCM_TOKEN, token);
+                    showToast("Token updated successfully");
+                })
                 .addOnFailureListener(e -> showToast("Unable to update Token"));
     }
 
@@ -125,6 +169,9 @@ public class MainActivity extends AppCompatActivity {
         updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete()); // add the user token to updates
         documentReference.update(updates)
                 .addOnSuccessListener(unused -> {
+                    SyncWorker.cancel(getApplicationContext());
+                    CompactionWorker.cancel(getApplicationContext());
+                    ExpiryWorker.cancel(getApplicationContext());
                     preferenceManager.clear();
                     startActivity(new Intent(getApplicationContext(), SignInActivity.class));
                     finish();
@@ -14,6 +14,7 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.signinsignoutapp.R;
 import com.example.signinsignoutapp.databinding.ActivitySignInBinding;
+import com.example.signinsignoutapp.utilities.ChatTrace;
 import com.example.signinsignoutapp.utilities.Constants;
 import com.example.signinsignoutapp.utilities.PreferenceManager;
 import com.google.firebase.firestore.DocumentChange;
@@ -81,13 +82,16 @@ public class SignInActivity extends AppCompatActivity {
     private void SignIn() {
         loading(true); // signal the user SignIn is loading
         FirebaseFirestore database = FirebaseFirestore.getInstance(); // connect to FireBase
+        String email = binding.inputEmail.getText().toString();
+        ChatTrace.beginAsync(ChatTrace.SIGN_IN, email); // the query round trip, shown on its own track
 
         // get access to the user email and password from the database
         database.collection(Constants.KEY_COLLECTION_USERS)
-                .whereEqualTo(Constants.KEY_EMAIL, binding.inputEmail.getText().toString())
+                .whereEqualTo(Constants.KEY_EMAIL, email)
                 .whereEqualTo(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString())
                 .get()
                 .addOnCompleteListener(task -> {
+                    ChatTrace.endAsync(ChatTrace.SIGN_IN, email);
                     // checking if successfully found the user email and password in the database
                     if (task.isSuccessful() && task.getResult() != null && task.getResult().getDocuments().size() > 0) {
                         // create a DocumentSnapshot for the user id and profile picture
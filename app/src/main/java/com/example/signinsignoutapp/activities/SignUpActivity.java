@@ -17,8 +17,10 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.view.menu.ShowableListMenu;
 
 import com.example.signinsignoutapp.databinding.ActivitySignUpBinding;
+import com.example.signinsignoutapp.utilities.ChatTrace;
 import com.example.signinsignoutapp.utilities.Constants;
 import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.io.ByteArrayOutputStream;
@@ -96,16 +98,20 @@ public class SignUpActivity extends AppCompatActivity {
         FirebaseFirestore database = FirebaseFirestore.getInstance(); // connect to FireBase
 
         // add user information into a hashmap to store key value pairs
-        HashMap<String, String> user = new HashMap<>();
+        HashMap<String, Object> user = new HashMap<>();
         user.put(Constants.KEY_FIRST_NAME,binding.inputFirstName.getText().toString());
         user.put(Constants.KEY_LAST_NAME,binding.inputLastName.getText().toString());
         user.put(Constants.KEY_EMAIL,binding.inputEmail.getText().toString());
         user.put(Constants.KEY_PASSWORD,binding.inputPassword.getText().toString());
         user.put(Constants.KEY_IMAGE,encodeImage);
+        user.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp()); // lets the directory sync read only changes
 
-        // post the user hashmap to the database collection
+        // post the user hashmap to the database collection, the write round trip is shown on its own track
+        String email = binding.inputEmail.getText().toString();
+        ChatTrace.beginAsync(ChatTrace.SIGN_UP, email);
         database.collection(Constants.KEY_COLLECTION_USERS)
                 .add(user)
+                .addOnCompleteListener(task -> ChatTrace.endAsync(ChatTrace.SIGN_UP, email))
                 // this code executes if successful post to database
                 .addOnSuccessListener(documentReference -> {
                     loading(false); // signal the user SignUp is not loading
@@ -5,30 +5,25 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
 
-import androidx.activity.EdgeToEdge;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.graphics.Insets;
-import androidx.core.view.ViewCompat;
-import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.ViewModelProvider;
 
-import com.example.signinsignoutapp.R;
 import com.example.signinsignoutapp.adapters.UsersAdapter;
+import com.example.signinsignoutapp.R;
 import com.example.signinsignoutapp.databinding.ActivityUserBinding;
 import com.example.signinsignoutapp.listeners.UserListener;
+import com.example.signinsignoutapp.models.BroadcastProgress;
 import com.example.signinsignoutapp.models.User;
 import com.example.signinsignoutapp.utilities.Constants;
-import com.example.signinsignoutapp.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.example.signinsignoutapp.viewmodels.UserViewModel;
 
 // UserActivity class extends AppCompatActivity and implements UserListener
+// the user directory lives in UserViewModel, so a rotation re-reads and re-decodes nothing
 public class UserActivity extends AppCompatActivity implements UserListener {
     private ActivityUserBinding binding;
-    private PreferenceManager preferenceManager;
+    private UserViewModel userViewModel;
+    private UsersAdapter usersAdapter;
+    private String runningBroadcastId; // the broadcast this screen has seen in progress, reported once it finishes
 
     /**
      * onCreate method overridden
@@ -42,11 +37,58 @@ public class UserActivity extends AppCompatActivity implements UserListener {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         binding = ActivityUserBinding.inflate(getLayoutInflater());
-        preferenceManager = new PreferenceManager(getApplicationContext());
         setContentView(binding.getRoot());
+        userViewModel = new ViewModelProvider(this).get(UserViewModel.class);
+        // one adapter for the lifetime of the activity, every directory change is diffed into it
+        usersAdapter = new UsersAdapter(userViewModel.getUnreadCounts(), userViewModel.getUserImages(), this);
+        binding.userRecyclerView.setAdapter(usersAdapter);
         // invoke the helper functions
         setListeners();
         getUsers();
+        listenUnreadCounts();
+        listenImagesRestored();
+        listenBroadcastProgress();
+        showSelection();
+    }
+
+    /**
+     * onStart method overridden to listen to the directory and the unread counters while it is visible
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        userViewModel.start();
+    }
+
+    /**
+     * onStop method overridden to stop listening while the directory is not visible
+     * the listener is kept across a configuration change
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (!isChangingConfigurations()) {
+            userViewModel.stop();
+        }
+    }
+
+    /**
+     * listenUnreadCounts method to keep the unread badge of each user row up to date
+     * only the rows whose counter changed are rebound
+     */
+    private void listenUnreadCounts() {
+        userViewModel.getUnreadCountChanges().observe(this, changedUserIds -> {
+            for (String userId : changedUserIds) {
+                usersAdapter.notifyUserChanged(userId);
+            }
+        });
+    }
+
+    /**
+     * listenImagesRestored method to rebind the user rows once the avatars are decoded again after a memory trim
+     */
+    private void listenImagesRestored() {
+        userViewModel.getImagesRestored().observe(this, restored -> usersAdapter.notifyImagesChanged());
     }
 
     /**
@@ -54,47 +96,108 @@ public class UserActivity extends AppCompatActivity implements UserListener {
      */
     private void setListeners() {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
+        binding.imageBroadcast.setOnClickListener(v -> {
+            userViewModel.setSelecting(!userViewModel.isSelecting());
+            showSelection();
+        });
+        binding.layoutSendBroadcast.setOnClickListener(v -> sendBroadcast());
+    }
+
+    /**
+     * showSelection method to show or hide the broadcast bar and the picked state of the user rows
+     */
+    private void showSelection() {
+        boolean isSelecting = userViewModel.isSelecting();
+        usersAdapter.setSelection(isSelecting ? userViewModel.getSelectedUserIds() : null);
+        binding.layoutBroadcast.setVisibility(isSelecting || runningBroadcastId != null ? View.VISIBLE : View.GONE);
+        if (isSelecting) {
+            showSelectedCount();
+        }
     }
 
     /**
-     * getUsers method to collect all information and data about all user accounts in the database
+     * showSelectedCount method to show how many users are picked for the broadcast
+     */
+    private void showSelectedCount() {
+        int selected = userViewModel.getSelectedUserIds().size();
+        binding.textBroadcastStatus.setText(getResources()
+                .getQuantityString(R.plurals.broadcast_selected, selected, selected));
+    }
+
+    /**
+     * sendBroadcast method to send the typed message to every picked user
+     */
+    private void sendBroadcast() {
+        String message = binding.inputBroadcast.getText().toString().trim();
+        if (message.isEmpty() || userViewModel.getSelectedUserIds().isEmpty()) {
+            return;
+        }
+        if (!userViewModel.sendBroadcast(message)) {
+            showToast(getString(R.string.broadcast_pending)); // prompt the user
+            return;
+        }
+        binding.inputBroadcast.setText(null);
+        userViewModel.setSelecting(false);
+        showSelection();
+    }
+
+    /**
+     * listenBroadcastProgress method to show how many recipients a running broadcast has reached
+     * the outcome is reported once, and only for a broadcast this screen saw running
+     */
+    private void listenBroadcastProgress() {
+        userViewModel.getBroadcastProgress().observe(this, progress -> {
+            if (!progress.isFinished) {
+                runningBroadcastId = progress.broadcastId;
+                binding.layoutBroadcast.setVisibility(View.VISIBLE);
+                if (!userViewModel.isSelecting()) {
+                    binding.textBroadcastStatus.setText(getBroadcastStatus(progress));
+                }
+            } else if (progress.broadcastId != null && progress.broadcastId.equals(runningBroadcastId)) {
+                runningBroadcastId = null;
+                showToast(getBroadcastStatus(progress)); // prompt the user
+                showSelection();
+            }
+        });
+    }
+
+    /**
+     * getBroadcastStatus method to describe the progress of a broadcast
+     *
+     * @param progress - the progress of the broadcast
+     *
+     * @return - the text shown to the user
+     */
+    private String getBroadcastStatus(BroadcastProgress progress) {
+        return getString(progress.failedChunks > 0 ? R.string.broadcast_failed : R.string.broadcast_sent,
+                progress.sentRecipients, progress.totalRecipients);
+    }
+
+    /**
+     * showToast method to prompt the user in a Toast pop up format
+     *
+     * @param message - the message in the Toast
+     */
+    private void showToast(String message) {
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * getUsers method to display all user accounts held by the userViewModel
+     * each published list is diffed against the shown one, so only the changed rows are rebound
      */
     private void getUsers() {
-        loading(true); // set loading to true
-        // initialize the firebase database
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        database.collection(Constants.KEY_COLLECTION_USERS).get()
-                .addOnCompleteListener(task -> {
-                    loading(false); // set loading to false
-                    String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        List<User> users  = new ArrayList<>(); // users list for holding all user accounts
-                        // for each query get the results
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            if (currentUserId.equals(queryDocumentSnapshot.getId())) {
-                                continue;
-                            }
-                            User user = new User(); // create a new User
-                            // set all the user information accordingly from the database
-                            user.name = queryDocumentSnapshot.getString(Constants.KEY_FIRST_NAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.id = queryDocumentSnapshot.getId();
-                            users.add(user); // add the users list
-                        }
-                        // check if no users added
-                        if (users.size() > 0) {
-                            UsersAdapter usersAdapter = new UsersAdapter(users, this);
-                            binding.userRecyclerView.setAdapter(usersAdapter);
-                            binding.userRecyclerView.setVisibility(View.VISIBLE);
-                        } else {
-                            showErrorMessage(); // prompt error message
-                        }
-                    } else {
-                        showErrorMessage(); // prompt error message
-                    }
-                });
+        userViewModel.getLoading().observe(this, this::loading);
+        userViewModel.getUsers().observe(this, users -> {
+            usersAdapter.submitList(users);
+            // check if no users added
+            if (users.size() > 0) {
+                binding.textErrorMessage.setVisibility(View.GONE);
+                binding.userRecyclerView.setVisibility(View.VISIBLE);
+            } else {
+                showErrorMessage(); // prompt error message
+            }
+        });
     }
 
     /**
@@ -125,6 +228,14 @@ public class UserActivity extends AppCompatActivity implements UserListener {
      */
     @Override
     public void onUserClicked(User user) {
+        if (userViewModel.isSelecting()) {
+            // while picking a broadcast, a click picks or unpicks the user instead of opening the chat
+            userViewModel.toggleSelected(user);
+            usersAdapter.notifyUserChanged(user.id);
+            showSelectedCount();
+            return;
+        }
+        userViewModel.onUserClicked(user);
         // initialize a new intent to switch to the ChatActivity class
         Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
         intent.putExtra(Constants.KEY_USER, user);
@@ -2,38 +2,61 @@ package com.example.signinsignoutapp.adapters;
 
 import android.graphics.Bitmap;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.signinsignoutapp.R;
+import com.example.signinsignoutapp.databinding.ItemContainerRecievedImageBinding;
 import com.example.signinsignoutapp.databinding.ItemContainerRecievedMessageBinding;
+import com.example.signinsignoutapp.databinding.ItemContainerSentImageBinding;
 import com.example.signinsignoutapp.databinding.ItemContainerSentMessageBinding;
+import com.example.signinsignoutapp.listeners.MessageListener;
 import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
+import com.example.signinsignoutapp.utilities.ChatImageLoader;
+import com.example.signinsignoutapp.utilities.ChatTrace;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+import com.example.signinsignoutapp.utilities.MessageTimeFormatter;
 
+import java.util.HashMap;
 import java.util.List;
 
 // ChatAdapter class extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private Bitmap receiverProfileBitmap;
     private final List<ChatMessage> chatMessages;
-    private final String sendId;
+    private final HashMap<String, Long> stableIds = new HashMap<>(); // message id to RecyclerView item id
+    private final ChatImageLoader chatImageLoader;
+    private final MessageListener messageListener;
     public static final int VIEW_TYPE_SENT = 1; // 1 resembles the sent view type
     public static final int VIEW_TYPE_RECEIVED = 2; // 2 resembles the sent view type
+    public static final int VIEW_TYPE_SENT_IMAGE = 3; // 3 resembles the sent image view type
+    public static final int VIEW_TYPE_RECEIVED_IMAGE = 4; // 4 resembles the received image view type
 
     /**
-     * ChatAdapter constructor to initialize chatMessages, receiverProfileBitmap, and sendId
+     * ChatAdapter constructor to initialize chatMessages and receiverProfileBitmap
+     * the adapter uses stable ids so RecyclerView can keep views of messages that did not change
      *
      * @param chatMessages - the list of chat messages that were sent by the user
      *
      * @param receiverProfileBitmap - the receiver user profile picture in a bitmap format
      *
-     * @param sendId - the sendId for the chat message
+     * @param chatImageLoader - the loader for the full images of image messages
+     *
+     * @param messageListener - the listener for long clicks on the messages sent by the user
      */
-    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileBitmap, String sendId) {
+    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileBitmap, ChatImageLoader chatImageLoader,
+                       MessageListener messageListener) {
         this.chatMessages = chatMessages;
         this.receiverProfileBitmap = receiverProfileBitmap;
-        this.sendId = sendId;
+        this.chatImageLoader = chatImageLoader;
+        this.messageListener = messageListener;
+        setHasStableIds(true);
     }
 
     /**
@@ -43,7 +66,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      *               an adapter position.
      * @param viewType The view type of the new View.
      *
-     * @return - the RecyclerView.ViewHolder of the current view type, either sent or received
+     * @return - the RecyclerView.ViewHolder of the current view type, sent or received, text or image
      */
     @NonNull
     @Override
@@ -52,6 +75,12 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         if (viewType == VIEW_TYPE_SENT) {
             return new SentMessageViewHolder(ItemContainerSentMessageBinding
                     .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+        } else if (viewType == VIEW_TYPE_SENT_IMAGE) { // for sent image view types, return a new SentImageViewHolder
+            return new SentImageViewHolder(ItemContainerSentImageBinding
+                    .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+        } else if (viewType == VIEW_TYPE_RECEIVED_IMAGE) { // for received image view types
+            return new ReceiverImageViewHolder(ItemContainerRecievedImageBinding
+                    .inflate(LayoutInflater.from(parent.getContext()), parent, false));
         } else { // for received view types, return a new ReceiverMessageViewHolder
             return new ReceiverMessageViewHolder(ItemContainerRecievedMessageBinding
                     .inflate(LayoutInflater.from(parent.getContext()), parent, false));
@@ -67,12 +96,33 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        ChatTrace.begin(ChatTrace.BIND_MESSAGE);
+        int viewType = getItemViewType(position);
         // for sent view types
-        if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder)holder).setData(chatMessages.get(position));
+        if (viewType == VIEW_TYPE_SENT) {
+            ((SentMessageViewHolder)holder).setData(chatMessages.get(position), messageListener);
+        } else if (viewType == VIEW_TYPE_SENT_IMAGE) { // for sent image view types
+            ((SentImageViewHolder)holder).setData(chatMessages.get(position), chatImageLoader, messageListener);
+        } else if (viewType == VIEW_TYPE_RECEIVED_IMAGE) { // for received image view types
+            ((ReceiverImageViewHolder)holder).setData(chatMessages.get(position), receiverProfileBitmap, chatImageLoader);
         } else { // for received view types
             ((ReceiverMessageViewHolder)holder).setData(chatMessages.get(position), receiverProfileBitmap);
         }
+        ChatTrace.end();
+    }
+
+    /**
+     * onViewRecycled method overridden to cancel the image download of a recycled image message
+     *
+     * @param holder The ViewHolder for the view being recycled
+     */
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof SentImageViewHolder) {
+            ((SentImageViewHolder)holder).cancelImageRequest();
+        } else if (holder instanceof ReceiverImageViewHolder) {
+            ((ReceiverImageViewHolder)holder).cancelImageRequest();
+        }
     }
 
     /**
@@ -85,19 +135,41 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         return chatMessages.size();
     }
 
+    /**
+     * getItemId method overridden
+     * each message id is mapped to a long the first time it is seen, so the id never changes
+     *
+     * @param position Adapter position to query
+     *
+     * @return - the stable id of the chat message at position
+     */
+    @Override
+    public long getItemId(int position) {
+        String messageId = chatMessages.get(position).id;
+        Long stableId = stableIds.get(messageId);
+        if (stableId == null) {
+            stableId = (long) stableIds.size();
+            stableIds.put(messageId, stableId);
+        }
+        return stableId;
+    }
+
     /**
      * getItemViewType method overridden
      *
      * @param position position to query
      *
-     * @return - the current view type, either 1 or 2
+     * @return - the current view type, either 1, 2, 3, or 4
      */
     @Override
     public int getItemViewType(int position) {
-        if (chatMessages.get(position).senderId.equals(sendId)) {
-            return VIEW_TYPE_SENT; // returns a 1 for sent view type
+        ChatMessage chatMessage = chatMessages.get(position);
+        if (chatMessage.isSent) {
+            // returns a 3 for sent image view type, 1 for sent view type
+            return chatMessage.isImage ? VIEW_TYPE_SENT_IMAGE : VIEW_TYPE_SENT;
         } else {
-            return VIEW_TYPE_RECEIVED; // returns a 2 for received view type
+            // returns a 4 for received image view type, 2 for received view type
+            return chatMessage.isImage ? VIEW_TYPE_RECEIVED_IMAGE : VIEW_TYPE_RECEIVED;
         }
     }
 
@@ -119,10 +191,13 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
          * setData method to update the chat message text and date time
          *
          * @param chatMessage - the chat message that needs to be updated
+         *
+         * @param messageListener - the listener for long clicks, to edit or unsend the message
          */
-        void setData(ChatMessage chatMessage) {
-            binding.textMessage.setText(chatMessage.message); // the text of the chat message
-            binding.textDateTime.setText(chatMessage.dateTime); // the date time of the chat message
+        void setData(ChatMessage chatMessage, MessageListener messageListener) {
+            setMessageText(binding.textMessage, chatMessage); // the text of the chat message
+            binding.textDateTime.setText(MessageTimeFormatter.getDateTime(chatMessage)); // the date time of the chat message
+            setLongClickListener(binding.getRoot(), chatMessage, messageListener);
         }
     }
 
@@ -148,10 +223,155 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
          * @param receiverProfileBitmap - the receiver profile picture in a bitmap format
          */
         void setData(ChatMessage chatMessage, Bitmap receiverProfileBitmap) {
-            binding.textMessage.setText(chatMessage.message); // the text of the chat message
-            binding.textDateTime.setText(chatMessage.dateTime); // the date time of the chat message
+            setMessageText(binding.textMessage, chatMessage); // the text of the chat message
+            binding.textDateTime.setText(MessageTimeFormatter.getDateTime(chatMessage)); // the date time of the chat message
+
+            binding.imageProfile.setImageBitmap(receiverProfileBitmap); // the image profile picture of the receiver profile
+        }
+    }
+
+    // SentImageViewHolder class extends RecyclerView.ViewHolder
+    static class SentImageViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerSentImageBinding binding;
+        private ChatImageLoader.Request imageRequest;
+
+        /**
+         * SentImageViewHolder constructor to initialize the binding as the itemContainerSentImageBinding
+         *
+         * @param itemContainerSentImageBinding - the item container binding for the sent image
+         */
+        public SentImageViewHolder(ItemContainerSentImageBinding itemContainerSentImageBinding) {
+            super(itemContainerSentImageBinding.getRoot());
+            binding = itemContainerSentImageBinding; // initialize binding here
+        }
+
+        /**
+         * setData method to update the image and date time of the chat message
+         *
+         * @param chatMessage - the chat message that needs to be updated
+         *
+         * @param chatImageLoader - the loader for the full image
+         *
+         * @param messageListener - the listener for long clicks, to unsend the message
+         */
+        void setData(ChatMessage chatMessage, ChatImageLoader chatImageLoader, MessageListener messageListener) {
+            cancelImageRequest();
+            imageRequest = chatImageLoader.load(chatMessage.imagePath, getThumbnailBitmap(chatMessage), binding.imageMessage);
+            binding.textDateTime.setText(MessageTimeFormatter.getDateTime(chatMessage)); // the date time of the chat message
+            setLongClickListener(binding.getRoot(), chatMessage, messageListener);
+        }
+
+        /**
+         * cancelImageRequest method to stop loading the image of the previous message
+         */
+        void cancelImageRequest() {
+            if (imageRequest != null) {
+                imageRequest.cancel();
+                imageRequest = null;
+            }
+        }
+    }
+
+    // ReceiverImageViewHolder class extends RecyclerView.ViewHolder
+    static class ReceiverImageViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerRecievedImageBinding binding;
+        private ChatImageLoader.Request imageRequest;
+
+        /**
+         * ReceiverImageViewHolder constructor to initialize the binding as the itemContainerRecievedImageBinding
+         *
+         * @param itemContainerRecievedImageBinding - the item container binding for the received image
+         */
+        public ReceiverImageViewHolder(ItemContainerRecievedImageBinding itemContainerRecievedImageBinding) {
+            super(itemContainerRecievedImageBinding.getRoot());
+            binding = itemContainerRecievedImageBinding; // initialize binding here
+        }
+
+        /**
+         * setData method to update the image and date time of the chat message
+         *
+         * @param chatMessage - the chat message that needs to be updated
+         *
+         * @param receiverProfileBitmap - the receiver profile picture in a bitmap format
+         *
+         * @param chatImageLoader - the loader for the full image
+         */
+        void setData(ChatMessage chatMessage, Bitmap receiverProfileBitmap, ChatImageLoader chatImageLoader) {
+            cancelImageRequest();
+            imageRequest = chatImageLoader.load(chatMessage.imagePath, getThumbnailBitmap(chatMessage), binding.imageMessage);
+            binding.textDateTime.setText(MessageTimeFormatter.getDateTime(chatMessage)); // the date time of the chat message
 
             binding.imageProfile.setImageBitmap(receiverProfileBitmap); // the image profile picture of the receiver profile
         }
+
+        /**
+         * cancelImageRequest method to stop loading the image of the previous message
+         */
+        void cancelImageRequest() {
+            if (imageRequest != null) {
+                imageRequest.cancel();
+                imageRequest = null;
+            }
+        }
+    }
+
+    /**
+     * setLongClickListener method to report long clicks on a sent message to the messageListener
+     *
+     * @param view - the root view of the message item
+     *
+     * @param chatMessage - the chat message being bound
+     *
+     * @param messageListener - the listener for long clicks, may be null
+     */
+    private static void setLongClickListener(View view, ChatMessage chatMessage, MessageListener messageListener) {
+        if (messageListener == null) {
+            view.setOnLongClickListener(null);
+            return;
+        }
+        view.setOnLongClickListener(v -> {
+            messageListener.onMessageLongClicked(chatMessage);
+            return true;
+        });
+    }
+
+    /**
+     * getThumbnailBitmap method to get the decoded inline thumbnail of an image message
+     * thumbnails are decoded before binding, only one dropped under memory pressure is decoded here again
+     *
+     * @param chatMessage - the image message being bound
+     *
+     * @return - the thumbnail, null if the message has none
+     */
+    private static Bitmap getThumbnailBitmap(ChatMessage chatMessage) {
+        if (chatMessage.thumbnailBitmap == null && chatMessage.thumbnail != null) {
+            chatMessage.thumbnailBitmap = ChatImageEncoder.decodeBase64Bitmap(chatMessage.thumbnail);
+        }
+        return chatMessage.thumbnailBitmap;
+    }
+
+    /**
+     * setMessageText method to assign the chat message text to the TextView
+     * uses the layout measured in the background when the text metrics match, otherwise plain text
+     *
+     * @param textView - the TextView of the message item
+     *
+     * @param chatMessage - the chat message being bound
+     */
+    private static void setMessageText(TextView textView, ChatMessage chatMessage) {
+        if (chatMessage.precomputedMessage != null) {
+            try {
+                TextViewCompat.setPrecomputedText(textView, chatMessage.precomputedMessage);
+                return;
+            } catch (IllegalArgumentException e) {
+                // text metrics of this TextView differ from the precomputed ones, fall back below
+            }
+        }
+        String text = MessageCompression.getDisplayText(chatMessage); // inflated on the first bind only
+        if (text == null && chatMessage.encryptedMessage != null) {
+            textView.setText(R.string.encrypted_message); // sealed under a key this device does not hold
+            return;
+        }
+        textView.setText(text);
     }
 }
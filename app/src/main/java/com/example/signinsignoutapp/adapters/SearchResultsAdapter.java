@@ -0,0 +1,140 @@
+package com.example.signinsignoutapp.adapters;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.databinding.ItemContainerSearchResultBinding;
+import com.example.signinsignoutapp.listeners.SearchResultListener;
+import com.example.signinsignoutapp.models.SearchResult;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// SearchResultsAdapter class extends RecyclerView.Adapter<SearchResultsAdapter.SearchResultViewHolder>
+public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdapter.SearchResultViewHolder> {
+    private final List<SearchResult> searchResults = new ArrayList<>();
+    private final SearchResultListener searchResultListener;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy - hh:mm a", Locale.getDefault());
+
+    /**
+     * SearchResultsAdapter constructor to initialize the searchResultListener
+     *
+     * @param searchResultListener - the listener for clicks on a search result
+     */
+    public SearchResultsAdapter(SearchResultListener searchResultListener) {
+        this.searchResultListener = searchResultListener;
+    }
+
+    /**
+     * setSearchResults method to replace the displayed search results
+     *
+     * @param searchResults - the new ranked search results
+     */
+    public void setSearchResults(List<SearchResult> searchResults) {
+        this.searchResults.clear();
+        this.searchResults.addAll(searchResults);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * onCreateViewHolder method overridden
+     *
+     * @param parent The ViewGroup into which the new View will be added after it is bound to
+     *               an adapter position.
+     * @param viewType The view type of the new View.
+     *
+     * @return - the SearchResultViewHolder of the itemContainerSearchResultBinding
+     */
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new SearchResultViewHolder(ItemContainerSearchResultBinding
+                .inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    /**
+     * onBindViewHolder method overridden
+     *
+     * @param holder The ViewHolder which should be updated to represent the contents of the
+     *        item at the given position in the data set.
+     * @param position The position of the item within the adapter's data set.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        holder.setData(searchResults.get(position));
+    }
+
+    /**
+     * getItemCount method overridden
+     *
+     * @return - the number of search results
+     */
+    @Override
+    public int getItemCount() {
+        return searchResults.size();
+    }
+
+    // SearchResultViewHolder class extends RecyclerView.ViewHolder
+    class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        private final ItemContainerSearchResultBinding binding;
+
+        /**
+         * SearchResultViewHolder constructor to initialize the binding as the itemContainerSearchResultBinding
+         *
+         * @param itemContainerSearchResultBinding - the item container binding for the search result
+         */
+        SearchResultViewHolder(ItemContainerSearchResultBinding itemContainerSearchResultBinding) {
+            super(itemContainerSearchResultBinding.getRoot());
+            binding = itemContainerSearchResultBinding; // initialize binding here
+        }
+
+        /**
+         * setData method to display the highlighted snippet and date time of the search result
+         *
+         * @param searchResult - the search result to display
+         */
+        void setData(SearchResult searchResult) {
+            binding.textSnippet.setText(highlightSnippet(searchResult.snippet));
+            binding.textDateTime.setText(dateFormat.format(new Date(searchResult.timestamp)));
+            binding.getRoot().setOnClickListener(v -> searchResultListener.onSearchResultClicked(searchResult));
+        }
+    }
+
+    /**
+     * highlightSnippet method to turn the snippet markers into bold text
+     *
+     * @param snippet - the snippet with the matching words wrapped in markers
+     *
+     * @return - the snippet text with the matching words in bold
+     */
+    private static CharSequence highlightSnippet(String snippet) {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == ChatDatabase.SNIPPET_START) {
+                start = builder.length();
+            } else if (c == ChatDatabase.SNIPPET_END) {
+                if (start != -1) {
+                    builder.setSpan(new StyleSpan(Typeface.BOLD), start, builder.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                start = -1;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder;
+    }
+}
@@ -1,37 +1,110 @@
 package com.example.signinsignoutapp.adapters;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.signinsignoutapp.databinding.ItemContainerUserBinding;
 import com.example.signinsignoutapp.listeners.UserListener;
 import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.ChatTrace;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 // UsersAdapter class extends RecyclerView.Adapter<UsersAdapter.UserViewHolder>
 public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder> {
-    private final List<User> users;
+
+    // users are the same row if they have the same id, and need a rebind only if what the row shows changed
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return oldItem.id.equals(newItem.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return Objects.equals(oldItem.name, newItem.name)
+                    && Objects.equals(oldItem.email, newItem.email)
+                    && Objects.equals(oldItem.image, newItem.image);
+        }
+    };
+
+    // diffs each submitted list against the shown one on a background thread
+    private final AsyncListDiffer<User> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final Map<String, Long> unreadCounts; // user id to the number of unread messages from them
+    private final Map<String, Bitmap> userImages; // user id to the avatar, decoded once by UserRepository
     private final UserListener userListener;
+    private Set<String> selectedUserIds; // ids of the users picked for a broadcast, null when not picking
 
     /**
-     * UsersAdapter constructor to initialize the users list and userListeners
+     * UsersAdapter constructor to initialize the unread counts, user images, and userListeners
+     * the users are set with submitList
+     *
+     * @param unreadCounts - the number of unread messages from each user, by user id
      *
-     * @param users - the list of Users that are in the chat application
+     * @param userImages - the decoded avatar of each user, by user id
      *
      * @param userListener - the userListener in the chat application
      */
-    public UsersAdapter(List<User> users, UserListener userListener) {
-        this.users = users;
+    public UsersAdapter(Map<String, Long> unreadCounts, Map<String, Bitmap> userImages, UserListener userListener) {
+        this.unreadCounts = unreadCounts;
+        this.userImages = userImages;
         this.userListener = userListener;
     }
 
+    /**
+     * submitList method to show a new list of users
+     * only the rows of users that were added, removed, or changed are notified, once the diff is done
+     *
+     * @param users - the users to show, must not be modified after it is submitted
+     */
+    public void submitList(List<User> users) {
+        differ.submitList(users);
+    }
+
+    /**
+     * setSelection method to start or stop showing which users are picked
+     * every shown row is rebound, as each of them gains or loses its picked state
+     *
+     * @param selectedUserIds - the ids of the picked users, kept up to date by the caller, or null to stop picking
+     */
+    public void setSelection(Set<String> selectedUserIds) {
+        this.selectedUserIds = selectedUserIds;
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    /**
+     * notifyUserChanged method to rebind only the row of the user whose unread count or picked state changed
+     *
+     * @param userId - the id of the user whose row changed
+     */
+    public void notifyUserChanged(String userId) {
+        List<User> users = differ.getCurrentList();
+        for (int i = 0; i < users.size(); i++) {
+            if (users.get(i).id.equals(userId)) {
+                notifyItemChanged(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * notifyImagesChanged method to rebind every row with the avatars decoded again after a memory trim
+     * only the rows on screen are bound, the others pick the avatars up when scrolled to
+     */
+    public void notifyImagesChanged() {
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
     /**
      * onCreateViewHolder method overridden
      *
@@ -59,7 +132,9 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
      */
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
-        holder.setUserData(users.get(position));
+        ChatTrace.begin(ChatTrace.BIND_USER);
+        holder.setUserData(differ.getCurrentList().get(position));
+        ChatTrace.end();
     }
 
     /**
@@ -69,7 +144,7 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
      */
     @Override
     public int getItemCount() {
-        return users.size();
+        return differ.getCurrentList().size();
     }
 
     // UserViewHolder class extends RecyclerView.ViewHolder
@@ -95,21 +170,19 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         void setUserData(User user) {
             binding.textName.setText(user.name); // current user name
             binding.textEmail.setText(user.email); // current user email
-            binding.imageProfile.setImageBitmap(getUserImage(user.image)); // current user profile picture
+            binding.imageProfile.setImageBitmap(userImages.get(user.id)); // current user profile picture
+            // number of unread messages from the current user
+            Long unreadCount = unreadCounts.get(user.id);
+            if (unreadCount != null && unreadCount > 0) {
+                binding.textUnreadCount.setText(unreadCount > 99 ? "99+" : String.valueOf(unreadCount));
+                binding.textUnreadCount.setVisibility(View.VISIBLE);
+            } else {
+                binding.textUnreadCount.setVisibility(View.GONE);
+            }
+            // highlight the users picked for a broadcast
+            binding.getRoot().setActivated(selectedUserIds != null && selectedUserIds.contains(user.id));
             // enable on click listener for clicking on a user
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
     }
-
-    /**
-     * getUserImage method to convert the encodedImage to a bitmap
-     *
-     * @param encodeImage - the encodedImage that is being converted
-     *
-     * @return - the converted encodedImage in bitmap form
-     */
-    private Bitmap getUserImage(String encodeImage) {
-        byte[] bytes = Base64.decode(encodeImage, Base64.DEFAULT); // the bytes of the encodedImage
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length); // newly converted bitmap
-    }
 }
@@ -0,0 +1,680 @@
+package com.example.signinsignoutapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationStats;
+import com.example.signinsignoutapp.models.ConversationSummary;
+import com.example.signinsignoutapp.models.SearchResult;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ChatDatabase class extends SQLiteOpenHelper
+public class ChatDatabase extends SQLiteOpenHelper {
+
+    // markers placed around the matching words of a search snippet
+    public static final char SNIPPET_START = '\u0002';
+    public static final char SNIPPET_END = '\u0003';
+
+    private static final String DATABASE_NAME = "chat.db";
+    private static final int DATABASE_VERSION = 6;
+
+    // final constants for the messages table and its full-text index
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_MESSAGES_FTS = "messages_fts";
+    private static final String COLUMN_ROW_ID = "_id";
+    private static final String COLUMN_MESSAGE_ID = "message_id";
+    private static final String COLUMN_CONVERSATION_ID = "conversation_id";
+    private static final String COLUMN_SENDER_ID = "sender_id";
+    private static final String COLUMN_RECEIVER_ID = "receiver_id";
+    private static final String COLUMN_MESSAGE = "message";
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_MESSAGE_TYPE = "message_type";
+    private static final String COLUMN_IMAGE_PATH = "image_path";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_EDITED = "edited";
+    private static final String COLUMN_EXPIRES_AT = "expires_at"; // 0 for messages that never disappear
+    // the columns of the full-text index, the message text first so snippets are taken from column 0
+    private static final String INDEXED_COLUMNS = COLUMN_MESSAGE + ", " + COLUMN_CONVERSATION_ID;
+    // the columns read back into a ChatMessage, in the order readMessage expects
+    private static final String[] MESSAGE_COLUMNS = {COLUMN_MESSAGE_ID, COLUMN_SENDER_ID, COLUMN_MESSAGE,
+            COLUMN_TIMESTAMP, COLUMN_MESSAGE_TYPE, COLUMN_IMAGE_PATH, COLUMN_THUMBNAIL, COLUMN_EDITED, COLUMN_EXPIRES_AT};
+
+    // final constants for the user directory and conversation summary tables
+    private static final String TABLE_USERS = "users";
+    private static final String TABLE_CONVERSATIONS = "conversations";
+    private static final String COLUMN_USER_ID = "user_id";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_EMAIL = "email";
+    private static final String COLUMN_IMAGE = "image";
+    private static final String COLUMN_TOKEN = "token";
+    private static final String COLUMN_UPDATED_AT = "updated_at";
+    private static final String COLUMN_UNREAD_COUNT = "unread_count";
+
+    private static ChatDatabase instance;
+
+    /**
+     * getInstance method to get the single ChatDatabase of the application
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the ChatDatabase
+     */
+    public static synchronized ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * ChatDatabase constructor
+     *
+     * @param context - the application context
+     */
+    private ChatDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * onCreate method overridden to create the messages table and its full-text index
+     *
+     * @param db The database.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COLUMN_ROW_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_MESSAGE_ID + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_CONVERSATION_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER, "
+                + COLUMN_MESSAGE_TYPE + " TEXT, "
+                + COLUMN_IMAGE_PATH + " TEXT, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_EDITED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_EXPIRES_AT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX messages_conversation ON " + TABLE_MESSAGES
+                + " (" + COLUMN_CONVERSATION_ID + ", " + COLUMN_TIMESTAMP + ")");
+        createExpiryIndex(db);
+        createMessageIndex(db);
+        createDirectoryTables(db);
+    }
+
+    /**
+     * createMessageIndex method to create the full-text index of the messages
+     * the index is an external content FTS4 table, so the message text is only stored once
+     * the conversation id is indexed too, so a search is limited to one conversation inside MATCH
+     * instead of matching every conversation and filtering the hits afterwards
+     *
+     * @param db The database.
+     */
+    private static void createMessageIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts4("
+                + "content=\"" + TABLE_MESSAGES + "\", " + INDEXED_COLUMNS + ")");
+    }
+
+    /**
+     * createExpiryIndex method to index the disappearing messages by expiry time
+     * a partial index, so the messages that never disappear cost nothing in it
+     *
+     * @param db The database.
+     */
+    private static void createExpiryIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX messages_expiry ON " + TABLE_MESSAGES + " (" + COLUMN_EXPIRES_AT + ") "
+                + "WHERE " + COLUMN_EXPIRES_AT + " > 0");
+    }
+
+    /**
+     * createDirectoryTables method to create the user directory and conversation summary tables
+     *
+     * @param db The database.
+     */
+    private static void createDirectoryTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + COLUMN_USER_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_EMAIL + " TEXT, "
+                + COLUMN_IMAGE + " TEXT, "
+                + COLUMN_TOKEN + " TEXT, "
+                + COLUMN_UPDATED_AT + " INTEGER)");
+        db.execSQL("CREATE TABLE " + TABLE_CONVERSATIONS + " ("
+                + COLUMN_CONVERSATION_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_UNREAD_COUNT + " INTEGER)");
+    }
+
+    /**
+     * onUpgrade method overridden
+     *
+     * @param db The database.
+     * @param oldVersion The old database version.
+     * @param newVersion The new database version.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // version 2 keeps image messages so the whole conversation can be shown from the local store
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_MESSAGE_TYPE + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_IMAGE_PATH + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_THUMBNAIL + " TEXT");
+        }
+        // version 3 keeps the user directory and conversation summaries refreshed by the background sync
+        if (oldVersion < 3) {
+            createDirectoryTables(db);
+        }
+        // version 4 marks the messages whose text was edited after sending
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_EDITED + " INTEGER NOT NULL DEFAULT 0");
+        }
+        // version 5 keeps the expiry time of disappearing messages
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_EXPIRES_AT + " INTEGER NOT NULL DEFAULT 0");
+            createExpiryIndex(db);
+        }
+        // version 6 indexes the conversation id, the index is built again from the stored messages
+        if (oldVersion < 6) {
+            db.execSQL("DROP TABLE " + TABLE_MESSAGES_FTS);
+            createMessageIndex(db);
+            db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (" + TABLE_MESSAGES_FTS + ") VALUES ('rebuild')");
+        }
+    }
+
+    /**
+     * insertMessages method to store and index the chat messages of a conversation
+     * messages that are already stored are skipped, so the same snapshot can be ingested twice
+     *
+     * @param conversationId - the id of the conversation the messages belong to
+     *
+     * @param chatMessages - the chat messages to store
+     */
+    public void insertMessages(String conversationId, List<ChatMessage> chatMessages) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            ContentValues ftsValues = new ContentValues();
+            for (ChatMessage chatMessage : chatMessages) {
+                String message = MessageCompression.getText(chatMessage); // stored inflated, for the search index
+                values.clear();
+                values.put(COLUMN_MESSAGE_ID, chatMessage.id);
+                values.put(COLUMN_CONVERSATION_ID, conversationId);
+                values.put(COLUMN_SENDER_ID, chatMessage.senderId);
+                values.put(COLUMN_RECEIVER_ID, chatMessage.senderId != null
+                        ? ConversationUtils.getOtherUserId(conversationId, chatMessage.senderId) : null);
+                values.put(COLUMN_MESSAGE, message);
+                values.put(COLUMN_TIMESTAMP, chatMessage.timestamp);
+                values.put(COLUMN_MESSAGE_TYPE, chatMessage.isImage
+                        ? Constants.MESSAGE_TYPE_IMAGE : Constants.MESSAGE_TYPE_TEXT);
+                values.put(COLUMN_IMAGE_PATH, chatMessage.imagePath);
+                values.put(COLUMN_THUMBNAIL, chatMessage.thumbnail);
+                values.put(COLUMN_EDITED, chatMessage.isEdited ? 1 : 0);
+                values.put(COLUMN_EXPIRES_AT, chatMessage.expiresAt);
+                long rowId = db.insertWithOnConflict(TABLE_MESSAGES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                // only index messages that were not stored before
+                if (rowId != -1) {
+                    ftsValues.clear();
+                    ftsValues.put("docid", rowId);
+                    ftsValues.put(COLUMN_MESSAGE, message);
+                    ftsValues.put(COLUMN_CONVERSATION_ID, conversationId);
+                    db.insert(TABLE_MESSAGES_FTS, null, ftsValues);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * updateMessageText method to store the edited text of a message and index it again
+     * the external content index needs the old text to remove the old words
+     *
+     * @param messageId - the id of the edited message
+     *
+     * @param message - the new text of the message
+     */
+    public void updateMessageText(String messageId, String message) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long rowId = removeFromIndex(db, messageId);
+            if (rowId != -1) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_MESSAGE, message);
+                values.put(COLUMN_EDITED, 1);
+                db.update(TABLE_MESSAGES, values, COLUMN_ROW_ID + " = ?", new String[] {String.valueOf(rowId)});
+                // indexed from the stored row, which also holds the conversation id
+                db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (docid, " + INDEXED_COLUMNS + ") SELECT "
+                        + COLUMN_ROW_ID + ", " + INDEXED_COLUMNS + " FROM " + TABLE_MESSAGES
+                        + " WHERE " + COLUMN_ROW_ID + " = ?", new Object[] {rowId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * deleteMessage method to remove an unsent message and its words from the index
+     *
+     * @param messageId - the id of the unsent message
+     */
+    public void deleteMessage(String messageId) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long rowId = removeFromIndex(db, messageId);
+            if (rowId != -1) {
+                db.delete(TABLE_MESSAGES, COLUMN_ROW_ID + " = ?", new String[] {String.valueOf(rowId)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * deleteExpiredMessages method to remove the disappearing messages whose time is over, and their words
+     * only the expired rows are visited, through the expiry index
+     *
+     * @param now - the current time in epoch milliseconds
+     *
+     * @return - the number of messages removed
+     */
+    public int deleteExpiredMessages(long now) {
+        SQLiteDatabase db = getWritableDatabase();
+        String selection = COLUMN_EXPIRES_AT + " > 0 AND " + COLUMN_EXPIRES_AT + " <= ?";
+        String[] selectionArgs = {String.valueOf(now)};
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.query(TABLE_MESSAGES,
+                    new String[] {COLUMN_ROW_ID, COLUMN_MESSAGE, COLUMN_CONVERSATION_ID},
+                    selection, selectionArgs, null, null, null)) {
+                while (cursor.moveToNext()) {
+                    db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (" + TABLE_MESSAGES_FTS + ", docid, "
+                            + INDEXED_COLUMNS + ") VALUES ('delete', ?, ?, ?)",
+                            new Object[] {cursor.getLong(0), cursor.getString(1), cursor.getString(2)});
+                }
+            }
+            int deleted = db.delete(TABLE_MESSAGES, selection, selectionArgs);
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * removeFromIndex method to remove the words of a stored message from the full-text index
+     *
+     * @param db - the writable database, inside a transaction
+     *
+     * @param messageId - the id of the message
+     *
+     * @return - the row id of the message, or -1 if it is not stored
+     */
+    private static long removeFromIndex(SQLiteDatabase db, String messageId) {
+        try (Cursor cursor = db.query(TABLE_MESSAGES,
+                new String[] {COLUMN_ROW_ID, COLUMN_MESSAGE, COLUMN_CONVERSATION_ID},
+                COLUMN_MESSAGE_ID + " = ?", new String[] {messageId}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            long rowId = cursor.getLong(0);
+            db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (" + TABLE_MESSAGES_FTS + ", docid, " + INDEXED_COLUMNS
+                    + ") VALUES ('delete', ?, ?, ?)", new Object[] {rowId, cursor.getString(1), cursor.getString(2)});
+            return rowId;
+        }
+    }
+
+    /**
+     * getMessages method to read the locally held history of a conversation, oldest first
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @return - the stored chat messages, the sent flag is left for the caller
+     */
+    public List<ChatMessage> getMessages(String conversationId) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, MESSAGE_COLUMNS,
+                COLUMN_CONVERSATION_ID + " = ?", new String[] {conversationId},
+                null, null, COLUMN_TIMESTAMP + ", " + COLUMN_MESSAGE_ID)) {
+            while (cursor.moveToNext()) {
+                chatMessages.add(readMessage(cursor));
+            }
+        }
+        return chatMessages;
+    }
+
+    /**
+     * getMessagesPage method to read the next page of the locally held history of a conversation, oldest first
+     * pages are keyed on the last message of the previous page, so each page is a short index range scan
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param afterTimestamp - the timestamp of the last message of the previous page
+     *
+     * @param afterMessageId - the id of the last message of the previous page, null for the first page
+     *
+     * @param limit - the maximum number of messages in the page
+     *
+     * @return - the stored chat messages after the given one, the sent flag is left for the caller
+     */
+    public List<ChatMessage> getMessagesPage(String conversationId, long afterTimestamp, String afterMessageId,
+                                             int limit) {
+        String selection = COLUMN_CONVERSATION_ID + " = ?";
+        String[] selectionArgs = {conversationId};
+        if (afterMessageId != null) {
+            selection += " AND (" + COLUMN_TIMESTAMP + " > ? OR (" + COLUMN_TIMESTAMP + " = ? AND "
+                    + COLUMN_MESSAGE_ID + " > ?))";
+            selectionArgs = new String[] {conversationId, String.valueOf(afterTimestamp),
+                    String.valueOf(afterTimestamp), afterMessageId};
+        }
+        List<ChatMessage> chatMessages = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, MESSAGE_COLUMNS, selection, selectionArgs,
+                null, null, COLUMN_TIMESTAMP + ", " + COLUMN_MESSAGE_ID, String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                chatMessages.add(readMessage(cursor));
+            }
+        }
+        return chatMessages;
+    }
+
+    /**
+     * countMessages method to count the locally held messages of a conversation
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @return - the number of stored messages
+     */
+    public long countMessages(String conversationId) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_MESSAGES,
+                COLUMN_CONVERSATION_ID + " = ?", new String[] {conversationId});
+    }
+
+    /**
+     * readMessage method to map the current row of a MESSAGE_COLUMNS cursor to a ChatMessage
+     *
+     * @param cursor - the cursor positioned on a message row
+     *
+     * @return - the chat message
+     */
+    private static ChatMessage readMessage(Cursor cursor) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = cursor.getString(0);
+        chatMessage.senderId = ConversationUtils.internUserId(cursor.getString(1));
+        chatMessage.message = cursor.getString(2);
+        chatMessage.timestamp = cursor.getLong(3);
+        chatMessage.isImage = Constants.MESSAGE_TYPE_IMAGE.equals(cursor.getString(4));
+        chatMessage.imagePath = cursor.getString(5);
+        chatMessage.thumbnail = cursor.getString(6);
+        chatMessage.isEdited = cursor.getInt(7) != 0;
+        chatMessage.expiresAt = cursor.getLong(8);
+        return chatMessage;
+    }
+
+    /**
+     * getConversationStats method to read how often and how recently each stored conversation was used
+     *
+     * @return - the message count and newest timestamp of every stored conversation
+     */
+    public List<ConversationStats> getConversationStats() {
+        List<ConversationStats> conversationStats = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES,
+                new String[] {COLUMN_CONVERSATION_ID, "COUNT(*)", "MAX(" + COLUMN_TIMESTAMP + ")"},
+                null, null, COLUMN_CONVERSATION_ID, null, null)) {
+            while (cursor.moveToNext()) {
+                ConversationStats stats = new ConversationStats();
+                stats.conversationId = cursor.getString(0);
+                stats.messageCount = cursor.getInt(1);
+                stats.lastTimestamp = cursor.getLong(2);
+                conversationStats.add(stats);
+            }
+        }
+        return conversationStats;
+    }
+
+    /**
+     * upsertUsers method to store the user documents, replacing older copies of the same users
+     *
+     * @param users - the users to store
+     */
+    public void upsertUsers(List<User> users) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (User user : users) {
+                values.clear();
+                values.put(COLUMN_USER_ID, user.id);
+                values.put(COLUMN_NAME, user.name);
+                values.put(COLUMN_EMAIL, user.email);
+                values.put(COLUMN_IMAGE, user.image);
+                values.put(COLUMN_TOKEN, user.token);
+                values.put(COLUMN_UPDATED_AT, user.updatedAt);
+                db.insertWithOnConflict(TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * deleteUser method to remove a user whose document was deleted
+     *
+     * @param userId - the id of the user
+     */
+    public void deleteUser(String userId) {
+        getWritableDatabase().delete(TABLE_USERS, COLUMN_USER_ID + " = ?", new String[] {userId});
+    }
+
+    /**
+     * getUsers method to read the stored user directory
+     *
+     * @return - the stored users, by name
+     */
+    public List<User> getUsers() {
+        List<User> users = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_USERS,
+                new String[] {COLUMN_USER_ID, COLUMN_NAME, COLUMN_EMAIL, COLUMN_IMAGE, COLUMN_TOKEN, COLUMN_UPDATED_AT},
+                null, null, null, null, COLUMN_NAME + " COLLATE NOCASE")) {
+            while (cursor.moveToNext()) {
+                User user = new User();
+                user.id = cursor.getString(0);
+                user.name = cursor.getString(1);
+                user.email = cursor.getString(2);
+                user.image = cursor.getString(3);
+                user.token = cursor.getString(4);
+                user.updatedAt = cursor.getLong(5);
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * putConversationSummaries method to store the latest unread count of each conversation
+     *
+     * @param conversationSummaries - the conversation summaries to store
+     */
+    public void putConversationSummaries(List<ConversationSummary> conversationSummaries) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (ConversationSummary conversationSummary : conversationSummaries) {
+                values.clear();
+                values.put(COLUMN_CONVERSATION_ID, conversationSummary.conversationId);
+                values.put(COLUMN_SENDER_ID, conversationSummary.senderId);
+                values.put(COLUMN_UNREAD_COUNT, conversationSummary.unreadCount);
+                db.insertWithOnConflict(TABLE_CONVERSATIONS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * getUnreadCounts method to read the stored unread count of each conversation
+     *
+     * @return - the unread count of each stored conversation, by conversation id
+     */
+    public Map<String, Long> getUnreadCounts() {
+        Map<String, Long> unreadCounts = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_CONVERSATIONS,
+                new String[] {COLUMN_CONVERSATION_ID, COLUMN_UNREAD_COUNT}, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                unreadCounts.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return unreadCounts;
+    }
+
+    /**
+     * searchMessages method to search the stored messages of a conversation
+     * results are ranked by the number of matching words, newest first on ties
+     * the conversation is a column filter of the MATCH, so only its messages are ever matched
+     * the hits are ranked from matchinfo, which reads the hit counts of the index, and only the kept results
+     * pay for a snippet, which reads and tokenizes the message text
+     *
+     * @param conversationId - the id of the conversation to search
+     *
+     * @param query - the words typed by the user, each word is matched as a prefix
+     *
+     * @param limit - the maximum number of results
+     *
+     * @return - the ranked search results, with the matching words wrapped in the snippet markers
+     */
+    public List<SearchResult> searchMessages(String conversationId, String query, int limit) {
+        List<SearchResult> searchResults = new ArrayList<>();
+        String matchQuery = toMatchQuery(query);
+        if (matchQuery.isEmpty()) {
+            return searchResults;
+        }
+        matchQuery += " " + toConversationFilter(conversationId);
+        SQLiteDatabase db = getReadableDatabase();
+        // the tokenizer folds case, so the exact conversation id is checked on the joined row as well
+        String sql = "SELECT " + TABLE_MESSAGES_FTS + ".docid, m." + COLUMN_TIMESTAMP + ", "
+                + "matchinfo(" + TABLE_MESSAGES_FTS + ", 'y') "
+                + "FROM " + TABLE_MESSAGES_FTS + " JOIN " + TABLE_MESSAGES + " m "
+                + "ON m." + COLUMN_ROW_ID + " = " + TABLE_MESSAGES_FTS + ".docid "
+                + "WHERE " + TABLE_MESSAGES_FTS + " MATCH ? AND m." + COLUMN_CONVERSATION_ID + " = ?";
+        List<long[]> hits = new ArrayList<>(); // row id, timestamp, number of matching words
+        try (Cursor cursor = db.rawQuery(sql, new String[] {matchQuery, conversationId})) {
+            while (cursor.moveToNext()) {
+                hits.add(new long[] {cursor.getLong(0), cursor.getLong(1), countMatches(cursor.getBlob(2))});
+            }
+        }
+        if (hits.isEmpty()) {
+            return searchResults;
+        }
+        Collections.sort(hits, (obj1, obj2) -> obj1[2] != obj2[2]
+                ? Long.compare(obj2[2], obj1[2]) : Long.compare(obj2[1], obj1[1]));
+        List<long[]> kept = hits.subList(0, Math.min(limit, hits.size()));
+
+        // snippets of the kept results only, read back by row id and put in ranked order
+        StringBuilder rowIds = new StringBuilder();
+        Map<Long, SearchResult> resultsByRowId = new HashMap<>();
+        for (long[] hit : kept) {
+            rowIds.append(rowIds.length() == 0 ? "" : ", ").append(hit[0]);
+        }
+        sql = "SELECT " + TABLE_MESSAGES_FTS + ".docid, m." + COLUMN_MESSAGE_ID + ", "
+                + "snippet(" + TABLE_MESSAGES_FTS + ", ?, ?, '…', 0, 12) "
+                + "FROM " + TABLE_MESSAGES_FTS + " JOIN " + TABLE_MESSAGES + " m "
+                + "ON m." + COLUMN_ROW_ID + " = " + TABLE_MESSAGES_FTS + ".docid "
+                + "WHERE " + TABLE_MESSAGES_FTS + " MATCH ? AND " + TABLE_MESSAGES_FTS + ".docid IN (" + rowIds + ")";
+        try (Cursor cursor = db.rawQuery(sql, new String[] {
+                String.valueOf(SNIPPET_START), String.valueOf(SNIPPET_END), matchQuery})) {
+            while (cursor.moveToNext()) {
+                SearchResult searchResult = new SearchResult();
+                searchResult.messageId = cursor.getString(1);
+                searchResult.snippet = cursor.getString(2);
+                resultsByRowId.put(cursor.getLong(0), searchResult);
+            }
+        }
+        for (long[] hit : kept) {
+            SearchResult searchResult = resultsByRowId.get(hit[0]);
+            if (searchResult != null) {
+                searchResult.timestamp = hit[1];
+                searchResults.add(searchResult);
+            }
+        }
+        return searchResults;
+    }
+
+    /**
+     * countMatches method to count the matching words of a row from its matchinfo
+     *
+     * @param matchInfo - the matchinfo blob of the row in the 'y' format, one 32-bit count of the hits
+     *                  of every phrase in every column, in the byte order of the device
+     *
+     * @return - the number of matching words in the row
+     */
+    private static long countMatches(byte[] matchInfo) {
+        IntBuffer counts = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        long matches = 0;
+        while (counts.hasRemaining()) {
+            matches += counts.get(); // the conversation filter adds the same count to every row
+        }
+        return matches;
+    }
+
+    /**
+     * toConversationFilter method to limit an FTS query to the indexed conversation id
+     * the id is matched as a phrase of its tokens in the conversation id column
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @return - the column filter to append to the FTS query
+     */
+    private static String toConversationFilter(String conversationId) {
+        StringBuilder phrase = new StringBuilder();
+        for (String token : conversationId.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                phrase.append(phrase.length() == 0 ? "" : " ").append(token);
+            }
+        }
+        return COLUMN_CONVERSATION_ID + ":\"" + phrase + "\"";
+    }
+
+    /**
+     * toMatchQuery method to turn the words typed by the user into an FTS prefix query
+     * punctuation is dropped so the user can never type an invalid query
+     * every word is matched in the message text only, never in the indexed conversation id
+     *
+     * @param query - the words typed by the user
+     *
+     * @return - the FTS query, empty if the user typed no words
+     */
+    private static String toMatchQuery(String query) {
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                matchQuery.append(matchQuery.length() == 0 ? "" : " ")
+                        .append(COLUMN_MESSAGE).append(':').append(word).append('*');
+            }
+        }
+        return matchQuery.toString();
+    }
+}
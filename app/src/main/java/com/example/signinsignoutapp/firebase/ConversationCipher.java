@@ -0,0 +1,149 @@
+package com.example.signinsignoutapp.firebase;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.MessageCipher;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.SecretKey;
+
+// ConversationCipher class to seal and open the message text of one one-to-one conversation
+// the key of each epoch is derived from the same static ECDH secret of the two users, the epoch is only a label,
+// so the keys are not rotated and a leaked identity key opens every message of the conversation, past or future
+// both methods may read a public key from the firebase database once, and must not be called on the main thread
+public class ConversationCipher {
+    private final SessionKeyStore sessionKeyStore;
+    private final String currentUserId;
+    private final String peerId;
+
+    /**
+     * ConversationCipher constructor
+     *
+     * @param sessionKeyStore - the keys of the signed in user
+     *
+     * @param currentUserId - the id of the signed in user
+     *
+     * @param peerId - the id of the other user of the conversation
+     */
+    public ConversationCipher(SessionKeyStore sessionKeyStore, String currentUserId, String peerId) {
+        this.sessionKeyStore = sessionKeyStore;
+        this.currentUserId = currentUserId;
+        this.peerId = peerId;
+    }
+
+    /**
+     * refresh method to pick up a new public key of the other user, e.g. after they reinstalled
+     */
+    public void refresh() {
+        sessionKeyStore.refreshPeerKey(peerId);
+    }
+
+    /**
+     * canSeal method to check if the text sent now would be sealed
+     *
+     * @return - true if both users have an identity key, false if the text would be sent in the clear
+     */
+    public boolean canSeal() {
+        int epoch = SessionKeyStore.getEpoch(System.currentTimeMillis());
+        return sessionKeyStore.getSessionKey(currentUserId, peerId, epoch) != null;
+    }
+
+    /**
+     * seal method to encrypt the text of a new message or edit with the session key of the current epoch
+     * long text is compressed before it is sealed, since ciphertext does not compress
+     *
+     * @param text - the text of the message
+     *
+     * @return - the sealed text, or null if the other user cannot read encrypted messages
+     */
+    public byte[] seal(String text) {
+        int epoch = SessionKeyStore.getEpoch(System.currentTimeMillis());
+        SecretKey sessionKey = sessionKeyStore.getSessionKey(currentUserId, peerId, epoch);
+        if (sessionKey == null) {
+            return null;
+        }
+        byte[] compressed = MessageCompression.compressIfLarge(text);
+        return MessageCipher.seal(sessionKey, epoch, compressed != null ? compressed
+                : text.getBytes(StandardCharsets.UTF_8), compressed != null);
+    }
+
+    /**
+     * open method to decrypt the sealed text of a chat message in place
+     * compressed text is kept compressed, it is only inflated when the message is bound
+     * safe to call from several threads, the text is opened once
+     *
+     * @param chatMessage - the chat message, does nothing if its text is not sealed
+     *
+     * @return - false if the text could not be opened, it then stays sealed
+     */
+    public boolean open(ChatMessage chatMessage) {
+        synchronized (chatMessage) {
+            byte[] sealed = chatMessage.encryptedMessage;
+            if (sealed == null) {
+                return true;
+            }
+            byte[] plaintext = openBytes(sealed);
+            if (plaintext == null) {
+                return false;
+            }
+            if (MessageCipher.isDeflated(sealed)) {
+                chatMessage.compressedMessage = plaintext;
+            } else {
+                chatMessage.message = new String(plaintext, StandardCharsets.UTF_8);
+            }
+            chatMessage.encryptedMessage = null;
+            return true;
+        }
+    }
+
+    /**
+     * open method to decrypt sealed text read from a document, e.g. an edit
+     *
+     * @param sealed - the sealed text
+     *
+     * @return - the text, or null if it could not be opened
+     */
+    public String open(byte[] sealed) {
+        byte[] plaintext = openBytes(sealed);
+        if (plaintext == null) {
+            return null;
+        }
+        return MessageCipher.isDeflated(sealed)
+                ? MessageCompression.inflate(plaintext) : new String(plaintext, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * openBytes method to decrypt sealed text with the session key of its epoch
+     *
+     * @param sealed - the sealed text
+     *
+     * @return - the plaintext bytes, or null if the text is malformed or sealed under an unknown key
+     */
+    private byte[] openBytes(byte[] sealed) {
+        int epoch = MessageCipher.getEpoch(sealed);
+        if (epoch < 0) {
+            return null;
+        }
+        byte[] plaintext = openBytes(sealed, epoch);
+        if (plaintext == null && sessionKeyStore.recheckPeerKey(peerId)) {
+            // the other user published a key, or a new one, since it was last read
+            plaintext = openBytes(sealed, epoch);
+        }
+        return plaintext;
+    }
+
+    /**
+     * openBytes method to decrypt sealed text with the currently known session key of its epoch
+     *
+     * @param sealed - the sealed text
+     *
+     * @param epoch - the epoch the text was sealed in
+     *
+     * @return - the plaintext bytes, or null if there is no session key or it does not open the text
+     */
+    private byte[] openBytes(byte[] sealed, int epoch) {
+        SecretKey sessionKey = sessionKeyStore.getSessionKey(currentUserId, peerId, epoch);
+        return sessionKey != null ? MessageCipher.open(sessionKey, sealed) : null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.signinsignoutapp.firebase;
+
+import android.util.Log;
+
+import com.example.signinsignoutapp.utilities.Constants;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.storage.FirebaseStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ExpiredMessageCleaner class to delete the disappearing messages of a user from the firebase database
+// each user deletes the messages they sent, once expired, in chunks that each fit in one batch
+// clients already hide expired messages on their own, so a late cleanup only delays the server copy going away
+// all methods block and must run off the main thread
+public class ExpiredMessageCleaner {
+    private static final String TAG = "ExpiredMessageCleaner";
+    // one chunk of deletes stays under the 500 operation limit of a batch
+    public static final int DELETE_CHUNK_SIZE = 400;
+
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+
+    /**
+     * deleteExpired method to delete the expired messages sent by a user, one chunk per batch
+     * a chunk is committed before the next one is read, so a failure keeps the chunks already deleted
+     *
+     * @param senderId - the id of the user whose messages are deleted
+     *
+     * @param maxChunks - the maximum number of chunks deleted by this call
+     *
+     * @return - the number of messages deleted
+     */
+    public int deleteExpired(String senderId, int maxChunks) throws Exception {
+        Timestamp now = Timestamp.now();
+        int deleted = 0;
+        for (int chunk = 0; chunk < maxChunks; chunk++) {
+            QuerySnapshot value = Tasks.await(database.collection(Constants.KEY_COLLECTION_CHAT)
+                    .whereEqualTo(MessageSchema.FIELD_SENDER_ID, senderId)
+                    .whereLessThanOrEqualTo(MessageSchema.FIELD_EXPIRES_AT, now)
+                    .limit(DELETE_CHUNK_SIZE)
+                    .get(Source.SERVER));
+            if (value.isEmpty()) {
+                break;
+            }
+            WriteBatch batch = database.batch();
+            List<String> imagePaths = new ArrayList<>();
+            for (DocumentSnapshot document : value.getDocuments()) {
+                batch.delete(document.getReference());
+                String imagePath = document.getString(MessageSchema.FIELD_IMAGE_PATH);
+                if (imagePath != null) {
+                    imagePaths.add(imagePath);
+                }
+            }
+            Tasks.await(batch.commit());
+            deleted += value.size();
+            deleteImages(imagePaths);
+            if (value.size() < DELETE_CHUNK_SIZE) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * deleteImages method to delete the full images of the deleted image messages from firebase storage
+     * an image that can not be deleted is only logged, its message is already gone
+     *
+     * @param imagePaths - the firebase storage paths of the full images
+     */
+    private static void deleteImages(List<String> imagePaths) {
+        for (String imagePath : imagePaths) {
+            try {
+                Tasks.await(FirebaseStorage.getInstance().getReference(imagePath).delete());
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to delete " + imagePath, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.signinsignoutapp.firebase;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationSummary;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.workers.SyncDataSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// FirestoreSyncDataSource class implements SyncDataSource with blocking firestore server reads
+public class FirestoreSyncDataSource implements SyncDataSource {
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+    private final SessionKeyStore sessionKeyStore;
+    private final String currentUserId;
+
+    /**
+     * FirestoreSyncDataSource constructor
+     *
+     * @param sessionKeyStore - opens the end-to-end encrypted text of the read messages
+     *
+     * @param currentUserId - the id of the signed in user
+     */
+    public FirestoreSyncDataSource(SessionKeyStore sessionKeyStore, String currentUserId) {
+        this.sessionKeyStore = sessionKeyStore;
+        this.currentUserId = currentUserId;
+    }
+
+    @Override
+    public List<ConversationSummary> fetchConversationSummaries(int limit) throws Exception {
+        List<ConversationSummary> conversationSummaries = new ArrayList<>();
+        for (DocumentSnapshot document : get(database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, currentUserId)
+                .limit(limit)).getDocuments()) {
+            ConversationSummary conversationSummary = new ConversationSummary();
+            conversationSummary.senderId = document.getString(Constants.KEY_SENDER_ID);
+            conversationSummary.conversationId = ConversationUtils.getConversationId(
+                    currentUserId, conversationSummary.senderId);
+            Long count = document.getLong(Constants.KEY_UNREAD_COUNT);
+            conversationSummary.unreadCount = count != null ? count : 0;
+            conversationSummaries.add(conversationSummary);
+        }
+        return conversationSummaries;
+    }
+
+    @Override
+    public List<ChatMessage> fetchMessagesAfter(String conversationId, long afterTimestamp, int afterNanos,
+                                                String afterMessageId, int limit) throws Exception {
+        return toChatMessages(conversationId, get(database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                .orderBy(MessageSchema.FIELD_TIMESTAMP)
+                .orderBy(FieldPath.documentId())
+                .startAfter(MessageSchema.toTimestamp(afterTimestamp, afterNanos), afterMessageId)
+                .limit(limit)));
+    }
+
+    @Override
+    public List<ChatMessage> fetchNewestMessages(String conversationId, int limit) throws Exception {
+        return toChatMessages(conversationId, get(database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                .orderBy(MessageSchema.FIELD_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit)));
+    }
+
+    @Override
+    public List<User> fetchUsersAfterId(String afterUserId, int limit) throws Exception {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS).orderBy(FieldPath.documentId());
+        if (afterUserId != null) {
+            query = query.startAfter(afterUserId);
+        }
+        return toUsers(get(query.limit(limit)));
+    }
+
+    @Override
+    public List<User> fetchUsersUpdatedAfter(long updatedAfter, int updatedAfterNanos, String afterUserId, int limit)
+            throws Exception {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .orderBy(Constants.KEY_UPDATED_AT)
+                .orderBy(FieldPath.documentId());
+        Timestamp after = MessageSchema.toTimestamp(updatedAfter, updatedAfterNanos);
+        query = afterUserId != null ? query.startAfter(after, afterUserId) : query.startAfter(after);
+        return toUsers(get(query.limit(limit)));
+    }
+
+    /**
+     * get method to read a query from the server, blocking the calling thread
+     * the server is asked directly, so an offline cache never passes for fresh data
+     *
+     * @param query - the query to read
+     *
+     * @return - the query results
+     */
+    private static QuerySnapshot get(Query query) throws Exception {
+        return Tasks.await(query.get(Source.SERVER));
+    }
+
+    /**
+     * toChatMessages method to map the read documents to ChatMessages, opening sealed text in the same pass
+     * the messages are stored as read, so their text must be readable before they are returned
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param value - the read documents
+     *
+     * @return - the chat messages
+     */
+    private List<ChatMessage> toChatMessages(String conversationId, QuerySnapshot value) {
+        ConversationCipher conversationCipher = new ConversationCipher(sessionKeyStore, currentUserId,
+                ConversationUtils.getOtherUserId(conversationId, currentUserId));
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (DocumentSnapshot document : value.getDocuments()) {
+            ChatMessage chatMessage = MessageSchema.toChatMessage(document, currentUserId);
+            conversationCipher.open(chatMessage);
+            chatMessages.add(chatMessage);
+        }
+        return chatMessages;
+    }
+
+    private static List<User> toUsers(QuerySnapshot value) {
+        List<User> users = new ArrayList<>();
+        for (DocumentSnapshot document : value.getDocuments()) {
+            users.add(UserSchema.toUser(document));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.signinsignoutapp.firebase;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.signinsignoutapp.utilities.ChatTrace;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ManagedSnapshotListener class implements DefaultLifecycleObserver
+public class ManagedSnapshotListener implements DefaultLifecycleObserver {
+
+    private static final String TAG = "SnapshotListener";
+    private static final long BASE_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+    // the number of snapshot listeners currently registered with firestore, across the application
+    private static final AtomicInteger activeListenerCount = new AtomicInteger();
+
+    private final QueryProvider queryProvider;
+    private final EventListener<QuerySnapshot> eventListener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Runnable reconnect = this::attach;
+    private ListenerRegistration listenerRegistration;
+    private int retryAttempt;
+
+    // QueryProvider interface for building the query each time the listener is attached
+    public interface QueryProvider {
+        /**
+         * getQuery method to build the query to listen to
+         * called on every attach, so the query can resume from the last-seen document
+         *
+         * @return - the query to listen to
+         */
+        Query getQuery();
+    }
+
+    /**
+     * ManagedSnapshotListener constructor
+     * the listener is attached in onStart and removed in onStop of the lifecycleOwner
+     *
+     * @param lifecycleOwner - the activity the listener is tied to
+     *
+     * @param queryProvider - the provider of the query to listen to
+     *
+     * @param eventListener - the listener receiving the snapshots, errors are handled here instead
+     */
+    public ManagedSnapshotListener(LifecycleOwner lifecycleOwner, QueryProvider queryProvider,
+                                   EventListener<QuerySnapshot> eventListener) {
+        this(queryProvider, eventListener);
+        lifecycleOwner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * ManagedSnapshotListener constructor for an owner that outlives the activity, such as a repository
+     * the owner calls start and stop itself
+     *
+     * @param queryProvider - the provider of the query to listen to
+     *
+     * @param eventListener - the listener receiving the snapshots, errors are handled here instead
+     */
+    public ManagedSnapshotListener(QueryProvider queryProvider, EventListener<QuerySnapshot> eventListener) {
+        this.queryProvider = queryProvider;
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * getActiveListenerCount method for diagnostics
+     *
+     * @return - the number of snapshot listeners currently registered with firestore
+     */
+    public static int getActiveListenerCount() {
+        return activeListenerCount.get();
+    }
+
+    /**
+     * onStart method overridden to attach the listener
+     *
+     * @param owner the component, whose state was changed
+     */
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        start();
+    }
+
+    /**
+     * onStop method overridden to remove the listener and any pending reconnect
+     *
+     * @param owner the component, whose state was changed
+     */
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        stop();
+    }
+
+    /**
+     * onDestroy method overridden to stop observing the lifecycle
+     *
+     * @param owner the component, whose state was changed
+     */
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+    }
+
+    /**
+     * start method to attach the listener, does nothing if it is already attached
+     */
+    public void start() {
+        retryAttempt = 0;
+        attach();
+    }
+
+    /**
+     * stop method to remove the listener and any pending reconnect
+     */
+    public void stop() {
+        handler.removeCallbacks(reconnect);
+        detach();
+    }
+
+    /**
+     * attach method to register the snapshot listener with firestore
+     */
+    private void attach() {
+        if (listenerRegistration != null) {
+            return;
+        }
+        listenerRegistration = queryProvider.getQuery().addSnapshotListener((value, error) -> {
+            if (error != null) {
+                // firestore removes a listener after an error, so register it again later
+                Log.w(TAG, "Snapshot listener failed", error);
+                detach();
+                scheduleReconnect();
+                return;
+            }
+            retryAttempt = 0;
+            ChatTrace.begin(ChatTrace.SNAPSHOT);
+            try {
+                eventListener.onEvent(value, null);
+            } finally {
+                ChatTrace.end();
+            }
+        });
+        Log.d(TAG, "Active snapshot listeners: " + activeListenerCount.incrementAndGet());
+    }
+
+    /**
+     * detach method to remove the snapshot listener from firestore
+     */
+    private void detach() {
+        if (listenerRegistration != null) {
+            listenerRegistration.remove();
+            listenerRegistration = null;
+            Log.d(TAG, "Active snapshot listeners: " + activeListenerCount.decrementAndGet());
+        }
+    }
+
+    /**
+     * scheduleReconnect method to attach the listener again after an exponential backoff
+     * the delay is picked at random below the backoff, so clients do not reconnect in lockstep
+     */
+    private void scheduleReconnect() {
+        long backoff = Math.min(MAX_RETRY_DELAY_MILLIS, BASE_RETRY_DELAY_MILLIS << Math.min(retryAttempt, 16));
+        retryAttempt++;
+        long delay = (long) (random.nextDouble() * backoff);
+        handler.postDelayed(reconnect, delay);
+    }
+}
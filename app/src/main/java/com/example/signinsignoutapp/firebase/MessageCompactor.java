@@ -0,0 +1,117 @@
+package com.example.signinsignoutapp.firebase;
+
+import com.example.signinsignoutapp.utilities.Constants;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+// MessageCompactor class to move the old messages of a conversation into bucket documents
+// one bucket is read instead of hundreds of message documents, recent messages stay individual
+// so real-time delivery is unchanged, all methods block and must run off the main thread
+public class MessageCompactor {
+
+    // messages older than this are compacted, anything newer is never touched
+    public static final long COMPACTION_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+    // one bucket write plus its deletes stays under the 500 operation limit of a batch
+    public static final int MAX_BUCKET_MESSAGES = 400;
+    private static final int MIN_BUCKET_MESSAGES = 100; // fewer old messages are not worth a bucket
+    private static final int MAX_BUCKET_BYTES = 800 * 1024; // well under the 1 MiB document limit
+    private static final int ENTRY_OVERHEAD_BYTES = 64; // field names, timestamp and map overhead of an entry
+
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+
+    /**
+     * compact method to move the old messages of a conversation into buckets
+     * each bucket is written and its messages deleted in the same batch, so no message is lost or doubled
+     * the bucket id is derived from its first message, so a retried batch rewrites the same bucket
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param maxBuckets - the maximum number of buckets written by this call
+     *
+     * @return - the number of messages compacted
+     */
+    public int compact(String conversationId, int maxBuckets) throws Exception {
+        Date cutoff = new Date(System.currentTimeMillis() - COMPACTION_AGE_MS);
+        int compacted = 0;
+        for (int bucket = 0; bucket < maxBuckets; bucket++) {
+            QuerySnapshot value = Tasks.await(database.collection(Constants.KEY_COLLECTION_CHAT)
+                    .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                    .whereLessThan(MessageSchema.FIELD_TIMESTAMP, new Timestamp(cutoff))
+                    .orderBy(MessageSchema.FIELD_TIMESTAMP)
+                    .orderBy(FieldPath.documentId())
+                    .limit(MAX_BUCKET_MESSAGES)
+                    .get(Source.SERVER));
+            if (value.size() < MIN_BUCKET_MESSAGES) {
+                break;
+            }
+            List<HashMap<String, Object>> entries = new ArrayList<>();
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            List<DocumentSnapshot> tombstones = new ArrayList<>();
+            int bytes = 0;
+            for (DocumentSnapshot document : value.getDocuments()) {
+                if (MessageSchema.isDeleted(document) || MessageSchema.isExpiring(document)) {
+                    // unsent messages are dropped instead of compacted, and so are disappearing ones,
+                    // the longest time to live is shorter than the compaction age, so they have expired
+                    tombstones.add(document);
+                    continue;
+                }
+                HashMap<String, Object> entry = MessageSchema.toBucketEntry(document);
+                bytes += estimateSize(entry);
+                if (bytes > MAX_BUCKET_BYTES && !entries.isEmpty()) {
+                    break; // the rest goes into the next bucket
+                }
+                entries.add(entry);
+                documents.add(document);
+            }
+            WriteBatch batch = database.batch();
+            for (DocumentSnapshot document : tombstones) {
+                batch.delete(document.getReference());
+            }
+            if (entries.isEmpty()) {
+                Tasks.await(batch.commit());
+                continue;
+            }
+            batch.set(database.collection(Constants.KEY_COLLECTION_CHAT_BUCKETS)
+                    .document(conversationId + "_" + documents.get(0).getId()),
+                    MessageSchema.newBucket(conversationId, entries));
+            for (DocumentSnapshot document : documents) {
+                batch.delete(document.getReference());
+            }
+            Tasks.await(batch.commit());
+            compacted += documents.size();
+        }
+        return compacted;
+    }
+
+    /**
+     * estimateSize method to estimate the stored size of a bucket entry
+     *
+     * @param entry - the bucket entry
+     *
+     * @return - the estimated size in bytes
+     */
+    private static int estimateSize(HashMap<String, Object> entry) {
+        int size = ENTRY_OVERHEAD_BYTES;
+        for (Object value : entry.values()) {
+            if (value instanceof String) {
+                size += ((String) value).getBytes(StandardCharsets.UTF_8).length;
+            } else if (value instanceof Blob) {
+                size += ((Blob) value).toBytes().length; // compressed text
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,448 @@
+package com.example.signinsignoutapp.firebase;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.ChatTrace;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageCipher;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// MessageSchema class for reading and writing chat message documents
+public class MessageSchema {
+
+    // version 2 chat documents use single letter field names to keep every snapshot small
+    public static final long VERSION = 2;
+    public static final String FIELD_VERSION = "v";
+    public static final String FIELD_CONVERSATION_ID = "c";
+    public static final String FIELD_SENDER_ID = "s";
+    public static final String FIELD_MESSAGE = "m";
+    public static final String FIELD_TIMESTAMP = "t"; // assigned by the server, never by the client clock
+    public static final String FIELD_MESSAGE_TYPE = "k"; // only present on image messages
+    public static final String FIELD_IMAGE_PATH = "p";
+    public static final String FIELD_THUMBNAIL = "b";
+    public static final String FIELD_EDITED_AT = "d"; // assigned by the server on every edit or unsend
+    public static final String FIELD_DELETED = "x"; // only present on unsent messages, whose content is cleared
+    public static final String FIELD_CODEC = "z"; // only present on long or sealed messages, whose text is then a blob
+    public static final String FIELD_EXPIRES_AT = "y"; // only present on disappearing messages, never compacted
+
+    // bucket documents hold many compacted version 2 messages, each entry keeps the message field names
+    public static final String FIELD_MESSAGE_ID = "i"; // only present on bucket entries
+    public static final String FIELD_BUCKET_FIRST = "f"; // timestamp of the oldest message in the bucket
+    public static final String FIELD_BUCKET_LAST = "l"; // timestamp of the newest message in the bucket
+    public static final String FIELD_BUCKET_COUNT = "n";
+    public static final String FIELD_BUCKET_MESSAGES = "e";
+
+    /**
+     * newTextMessage method to create a version 2 text message document
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param senderId - the id of the user sending the message
+     *
+     * @param message - the text of the message
+     *
+     * @return - the message made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newTextMessage(String conversationId, String senderId, String message) {
+        return newTextMessage(conversationId, senderId, message, null);
+    }
+
+    /**
+     * newTextMessage method to create a version 2 text message document, end-to-end encrypted if sealed is given
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param senderId - the id of the user sending the message
+     *
+     * @param message - the text of the message
+     *
+     * @param sealed - the text sealed by the ConversationCipher, or null to send it unencrypted
+     *
+     * @return - the message made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newTextMessage(String conversationId, String senderId, String message,
+                                                         byte[] sealed) {
+        HashMap<String, Object> document = new HashMap<>();
+        document.put(FIELD_VERSION, VERSION);
+        document.put(FIELD_CONVERSATION_ID, conversationId);
+        document.put(FIELD_SENDER_ID, senderId);
+        putText(document, message, sealed, false);
+        document.put(FIELD_TIMESTAMP, FieldValue.serverTimestamp());
+        return document;
+    }
+
+    /**
+     * newImageMessage method to create a version 2 image message document
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param senderId - the id of the user sending the message
+     *
+     * @param imagePath - the firebase storage path of the full image
+     *
+     * @param thumbnail - the Base64 thumbnail of the image
+     *
+     * @return - the message made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newImageMessage(String conversationId, String senderId,
+                                                          String imagePath, String thumbnail) {
+        HashMap<String, Object> document = newTextMessage(conversationId, senderId, "");
+        document.put(FIELD_MESSAGE_TYPE, Constants.MESSAGE_TYPE_IMAGE);
+        document.put(FIELD_IMAGE_PATH, imagePath);
+        document.put(FIELD_THUMBNAIL, thumbnail);
+        return document;
+    }
+
+    /**
+     * newEdit method to create the changes of a message edit
+     *
+     * @param message - the new text of the message
+     *
+     * @param sealed - the new text sealed by the ConversationCipher, or null to store it unencrypted
+     *
+     * @return - the changed fields made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newEdit(String message, byte[] sealed) {
+        HashMap<String, Object> changes = new HashMap<>();
+        putText(changes, message, sealed, true);
+        changes.put(FIELD_EDITED_AT, FieldValue.serverTimestamp());
+        return changes;
+    }
+
+    /**
+     * newTombstone method to create the changes that unsend a message
+     * the document is kept with its content cleared, so listeners that only see changes after a
+     * watermark still learn about the unsend
+     *
+     * @return - the changed fields made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newTombstone() {
+        HashMap<String, Object> changes = new HashMap<>();
+        changes.put(FIELD_MESSAGE, "");
+        changes.put(FIELD_CODEC, FieldValue.delete());
+        changes.put(FIELD_DELETED, true);
+        changes.put(FIELD_EDITED_AT, FieldValue.serverTimestamp());
+        changes.put(FIELD_MESSAGE_TYPE, FieldValue.delete());
+        changes.put(FIELD_IMAGE_PATH, FieldValue.delete());
+        changes.put(FIELD_THUMBNAIL, FieldValue.delete());
+        return changes;
+    }
+
+    /**
+     * putText method to put the text of a message, sealed if a sealed copy is given, else deflate-compressed if long
+     *
+     * @param document - the document or changes to put the text into
+     *
+     * @param message - the text of the message
+     *
+     * @param sealed - the sealed text, or null
+     *
+     * @param replacing - true if the text replaces older text, whose codec marker must then be removed
+     */
+    private static void putText(HashMap<String, Object> document, String message, byte[] sealed, boolean replacing) {
+        if (sealed != null) {
+            document.put(FIELD_MESSAGE, Blob.fromBytes(sealed));
+            document.put(FIELD_CODEC, MessageCipher.CODEC_SEALED);
+            return;
+        }
+        byte[] compressed = MessageCompression.compressIfLarge(message);
+        if (compressed != null) {
+            document.put(FIELD_MESSAGE, Blob.fromBytes(compressed));
+            document.put(FIELD_CODEC, MessageCompression.CODEC_DEFLATE);
+        } else {
+            document.put(FIELD_MESSAGE, message);
+            if (replacing) {
+                document.put(FIELD_CODEC, FieldValue.delete());
+            }
+        }
+    }
+
+    /**
+     * readText method to read the text of a version 2 message document, inflating it if compressed
+     *
+     * @param document - the chat document
+     *
+     * @return - the text of the message, null if it is sealed
+     */
+    public static String readText(DocumentSnapshot document) {
+        Object message = document.get(FIELD_MESSAGE);
+        if (isSealed(document)) {
+            return null; // opened with readSealedText and the ConversationCipher, off the main thread
+        }
+        return message instanceof Blob ? MessageCompression.inflate(((Blob) message).toBytes()) : (String) message;
+    }
+
+    /**
+     * isSealed method
+     *
+     * @param document - the chat document
+     *
+     * @return - true if the text of the message is end-to-end encrypted
+     */
+    public static boolean isSealed(DocumentSnapshot document) {
+        return MessageCipher.CODEC_SEALED.equals(document.getString(FIELD_CODEC));
+    }
+
+    /**
+     * readSealedText method to read the end-to-end encrypted text of a version 2 message document
+     *
+     * @param document - the chat document
+     *
+     * @return - the sealed text, or null if the text is not sealed
+     */
+    public static byte[] readSealedText(DocumentSnapshot document) {
+        Object message = document.get(FIELD_MESSAGE);
+        return isSealed(document) && message instanceof Blob ? ((Blob) message).toBytes() : null;
+    }
+
+    /**
+     * setText method to set the text of a chat message from the stored field
+     * compressed text is kept compressed, it is only inflated when the message is bound,
+     * and sealed text is kept sealed, it is opened with the text measurement off the main thread
+     *
+     * @param chatMessage - the chat message
+     *
+     * @param message - the stored text field, a String or a compressed or sealed Blob
+     *
+     * @param codec - the codec marker stored next to the text, may be null
+     */
+    private static void setText(ChatMessage chatMessage, Object message, Object codec) {
+        if (message instanceof Blob && MessageCipher.CODEC_SEALED.equals(codec)) {
+            chatMessage.encryptedMessage = ((Blob) message).toBytes();
+        } else if (message instanceof Blob) {
+            chatMessage.compressedMessage = ((Blob) message).toBytes();
+        } else if (message instanceof String) {
+            chatMessage.message = (String) message;
+        }
+    }
+
+    /**
+     * putExpiry method to make a new message disappear after the given time to live
+     *
+     * @param document - the new message document
+     *
+     * @param ttlMs - the time to live of the message, 0 for a message that never disappears
+     */
+    public static void putExpiry(HashMap<String, Object> document, long ttlMs) {
+        if (ttlMs > 0) {
+            // the client clock is used, the server timestamp is not known before the write
+            document.put(FIELD_EXPIRES_AT, new Timestamp(new Date(System.currentTimeMillis() + ttlMs)));
+        }
+    }
+
+    /**
+     * isExpiring method
+     *
+     * @param document - the chat document
+     *
+     * @return - true if the message disappears once its time to live is over
+     */
+    public static boolean isExpiring(DocumentSnapshot document) {
+        return document.contains(FIELD_EXPIRES_AT);
+    }
+
+    /**
+     * isDeleted method
+     *
+     * @param document - the chat document
+     *
+     * @return - true if the message was unsent
+     */
+    public static boolean isDeleted(DocumentSnapshot document) {
+        return Boolean.TRUE.equals(document.getBoolean(FIELD_DELETED));
+    }
+
+    /**
+     * isChangeable method to check that a message can still be edited or unsent by the user
+     * only confirmed version 2 messages of the user can be changed, legacy documents have other field names
+     *
+     * @param document - the chat document, read from the server
+     *
+     * @param currentUserId - the id of the signed in user
+     *
+     * @return - true if the message can be edited or unsent
+     */
+    public static boolean isChangeable(DocumentSnapshot document, String currentUserId) {
+        Long version = document.getLong(FIELD_VERSION);
+        return document.exists() && version != null && version >= VERSION
+                && currentUserId.equals(document.getString(FIELD_SENDER_ID))
+                && document.getTimestamp(FIELD_TIMESTAMP) != null && !isDeleted(document);
+    }
+
+    /**
+     * toChatMessage method to map a chat document of any version to a ChatMessage
+     * a message whose server timestamp is still pending gets the local estimate and isPending set
+     *
+     * @param document - the chat document
+     *
+     * @param currentUserId - the id of the signed in user
+     *
+     * @return - the ChatMessage, dateTime is formatted when it is first bound
+     */
+    public static ChatMessage toChatMessage(DocumentSnapshot document, String currentUserId) {
+        ChatTrace.begin(ChatTrace.MAP);
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = document.getId();
+        Long version = document.getLong(FIELD_VERSION);
+        if (version != null && version >= VERSION) {
+            chatMessage.senderId = ConversationUtils.internUserId(document.getString(FIELD_SENDER_ID));
+            setText(chatMessage, document.get(FIELD_MESSAGE), document.getString(FIELD_CODEC));
+            Timestamp timestamp = document.getTimestamp(FIELD_TIMESTAMP,
+                    DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+            chatMessage.timestamp = toMillis(timestamp);
+            chatMessage.timestampNanos = toNanos(timestamp);
+            chatMessage.isPending = document.getMetadata().hasPendingWrites();
+            chatMessage.isImage = Constants.MESSAGE_TYPE_IMAGE.equals(document.getString(FIELD_MESSAGE_TYPE));
+            chatMessage.imagePath = document.getString(FIELD_IMAGE_PATH);
+            chatMessage.thumbnail = document.getString(FIELD_THUMBNAIL);
+            chatMessage.isEdited = document.contains(FIELD_EDITED_AT);
+            chatMessage.expiresAt = toMillis(document.getTimestamp(FIELD_EXPIRES_AT));
+        } else { // version 1 documents, written before the compact schema
+            chatMessage.senderId = ConversationUtils.internUserId(document.getString(Constants.KEY_SENDER_ID));
+            chatMessage.message = document.getString(Constants.KEY_MESSAGE);
+            Timestamp timestamp = document.getTimestamp(Constants.KEY_TIMESTAMP);
+            chatMessage.timestamp = toMillis(timestamp);
+            chatMessage.timestampNanos = toNanos(timestamp);
+            chatMessage.isImage = Constants.MESSAGE_TYPE_IMAGE.equals(document.getString(Constants.KEY_MESSAGE_TYPE));
+            chatMessage.imagePath = document.getString(Constants.KEY_IMAGE_PATH);
+            chatMessage.thumbnail = document.getString(Constants.KEY_THUMBNAIL);
+        }
+        chatMessage.isSent = Objects.equals(chatMessage.senderId, currentUserId);
+        ChatTrace.end();
+        return chatMessage;
+    }
+
+    /**
+     * toBucketEntry method to copy a confirmed version 2 message document into a bucket entry
+     *
+     * @param document - the message document, its server timestamp must be set
+     *
+     * @return - the bucket entry made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> toBucketEntry(DocumentSnapshot document) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(FIELD_MESSAGE_ID, document.getId());
+        entry.put(FIELD_SENDER_ID, document.getString(FIELD_SENDER_ID));
+        entry.put(FIELD_MESSAGE, document.get(FIELD_MESSAGE)); // compressed text stays compressed
+        if (document.contains(FIELD_CODEC)) {
+            entry.put(FIELD_CODEC, document.getString(FIELD_CODEC));
+        }
+        entry.put(FIELD_TIMESTAMP, document.getTimestamp(FIELD_TIMESTAMP));
+        if (document.contains(FIELD_EDITED_AT)) {
+            entry.put(FIELD_EDITED_AT, document.getTimestamp(FIELD_EDITED_AT));
+        }
+        if (document.contains(FIELD_MESSAGE_TYPE)) { // text entries stay as small as text documents
+            entry.put(FIELD_MESSAGE_TYPE, document.getString(FIELD_MESSAGE_TYPE));
+            entry.put(FIELD_IMAGE_PATH, document.getString(FIELD_IMAGE_PATH));
+            entry.put(FIELD_THUMBNAIL, document.getString(FIELD_THUMBNAIL));
+        }
+        return entry;
+    }
+
+    /**
+     * newBucket method to create a bucket document from entries sorted oldest first
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param entries - the bucket entries, oldest first
+     *
+     * @return - the bucket made up of a String, Object key-pair
+     */
+    public static HashMap<String, Object> newBucket(String conversationId, List<HashMap<String, Object>> entries) {
+        HashMap<String, Object> document = new HashMap<>();
+        document.put(FIELD_VERSION, VERSION);
+        document.put(FIELD_CONVERSATION_ID, conversationId);
+        document.put(FIELD_BUCKET_FIRST, entries.get(0).get(FIELD_TIMESTAMP));
+        document.put(FIELD_BUCKET_LAST, entries.get(entries.size() - 1).get(FIELD_TIMESTAMP));
+        document.put(FIELD_BUCKET_COUNT, entries.size());
+        document.put(FIELD_BUCKET_MESSAGES, entries);
+        return document;
+    }
+
+    /**
+     * fromBucket method to map every entry of a bucket document to a ChatMessage
+     *
+     * @param bucket - the bucket document
+     *
+     * @param currentUserId - the id of the signed in user
+     *
+     * @return - the ChatMessages of the bucket, oldest first, dateTime is formatted when it is first bound
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ChatMessage> fromBucket(DocumentSnapshot bucket, String currentUserId) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        List<Map<String, Object>> entries = (List<Map<String, Object>>) bucket.get(FIELD_BUCKET_MESSAGES);
+        if (entries == null) {
+            return chatMessages;
+        }
+        ChatTrace.begin(ChatTrace.MAP, entries.size());
+        for (Map<String, Object> entry : entries) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = (String) entry.get(FIELD_MESSAGE_ID);
+            chatMessage.senderId = ConversationUtils.internUserId((String) entry.get(FIELD_SENDER_ID));
+            setText(chatMessage, entry.get(FIELD_MESSAGE), entry.get(FIELD_CODEC));
+            Timestamp timestamp = (Timestamp) entry.get(FIELD_TIMESTAMP);
+            chatMessage.timestamp = toMillis(timestamp);
+            chatMessage.timestampNanos = toNanos(timestamp);
+            chatMessage.isImage = Constants.MESSAGE_TYPE_IMAGE.equals(entry.get(FIELD_MESSAGE_TYPE));
+            chatMessage.imagePath = (String) entry.get(FIELD_IMAGE_PATH);
+            chatMessage.thumbnail = (String) entry.get(FIELD_THUMBNAIL);
+            chatMessage.isEdited = entry.containsKey(FIELD_EDITED_AT);
+            chatMessage.isSent = Objects.equals(chatMessage.senderId, currentUserId);
+            chatMessages.add(chatMessage);
+        }
+        ChatTrace.end();
+        return chatMessages;
+    }
+
+    /**
+     * toMillis method to read a firebase timestamp as epoch milliseconds without going through a Date
+     *
+     * @param timestamp - the timestamp, may be null
+     *
+     * @return - the epoch milliseconds, 0 for a missing timestamp so sorting stays safe for malformed documents
+     */
+    public static long toMillis(Timestamp timestamp) {
+        if (timestamp == null) {
+            return 0;
+        }
+        return timestamp.getSeconds() * 1000 + timestamp.getNanoseconds() / 1_000_000;
+    }
+
+    /**
+     * toNanos method to read what toMillis drops, the nanoseconds of a firebase timestamp past its millisecond
+     * the server keeps microseconds, so a cursor rebuilt from the milliseconds alone sorts before the document
+     * it was taken from, and a query starting after it reads that document again
+     *
+     * @param timestamp - the timestamp, may be null
+     *
+     * @return - the nanoseconds past the millisecond, 0 for a missing timestamp
+     */
+    public static int toNanos(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getNanoseconds() % 1_000_000;
+    }
+
+    /**
+     * toTimestamp method to rebuild the exact firebase timestamp of a query cursor
+     *
+     * @param millis - the epoch milliseconds, as read by toMillis
+     *
+     * @param nanos - the nanoseconds past the millisecond, as read by toNanos
+     *
+     * @return - the Timestamp
+     */
+    public static Timestamp toTimestamp(long millis, int nanos) {
+        return new Timestamp(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000 + nanos);
+    }
+}
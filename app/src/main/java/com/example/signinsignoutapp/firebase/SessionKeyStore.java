@@ -0,0 +1,360 @@
+package com.example.signinsignoutapp.firebase;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageCipher;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+// SessionKeyStore class holding the end-to-end encryption keys of the signed in user
+// each user has an EC P-256 identity key pair, whose public key is published on their user document;
+// the session key of a conversation is derived with HKDF from the ECDH secret of the two identity keys, then cached,
+// so sealing and opening a message costs one AES-GCM operation and no key agreement
+// the weekly epoch is only a label mixed into HKDF over the same static ECDH secret, it is not a key rotation:
+// there is no forward secrecy, whoever gets an identity private key can derive the key of every past epoch
+// methods that may read the firebase database block, and must not be called on the main thread
+public class SessionKeyStore {
+    private static final String TAG = "SessionKeyStore";
+
+    public static final long EPOCH_LENGTH_MS = 7 * 24 * 60 * 60 * 1000L; // a new epoch label every week
+    private static final int MAX_SESSION_KEYS = 32; // conversations and epochs kept derived
+    private static final long PEER_KEY_TIMEOUT_S = 10;
+    // a missing or unusable peer key is read again at most this often, so a peer that starts publishing a key
+    // is picked up by every path, not only when their chat is opened
+    private static final long PEER_KEY_RECHECK_MS = 15 * 60 * 1000L;
+    // kept apart from the chat preferences, so signing out does not make the user's history unreadable
+    private static final String PREFERENCE_NAME = "chatSessionKeys";
+    private static final String KEY_IDENTITY_PRIVATE = "identityPrivate_";
+    private static final String KEY_IDENTITY_PUBLIC = "identityPublic_";
+    private static final String KEY_IDENTITY_PUBLISHED = "identityPublished_";
+    private static final String KEY_PEER_PUBLIC = "peerPublic_";
+    private static final String KEY_PEER_CHECKED_AT = "peerCheckedAt_"; // the time the peer key was last read
+    private static final String NO_KEY = ""; // cached for peers whose app does not publish a key yet
+    // the identity private key is stored wrapped by a key that never leaves the Android keystore
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String WRAPPING_KEY_ALIAS = "chatIdentityWrappingKey";
+
+    private final SharedPreferences preferences;
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+    private final LruCache<String, SecretKey> sessionKeys = new LruCache<>(MAX_SESSION_KEYS);
+    private final ExecutorService publishExecutor = Executors.newSingleThreadExecutor();
+    private KeyPair identity; // of identityUserId, guarded by this
+    private String identityUserId;
+
+    private static SessionKeyStore instance;
+
+    /**
+     * getInstance method to get the single SessionKeyStore of the application
+     * derived session keys are shared by every screen and worker
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the SessionKeyStore
+     */
+    public static synchronized SessionKeyStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SessionKeyStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SessionKeyStore(Context context) {
+        preferences = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * getEpoch method to get the key epoch new messages are sealed in
+     * the epoch only labels the key derivation, the keys of every epoch come from the same ECDH secret
+     *
+     * @param timeMs - the current time
+     *
+     * @return - the epoch
+     */
+    public static int getEpoch(long timeMs) {
+        return (int) (timeMs / EPOCH_LENGTH_MS);
+    }
+
+    /**
+     * publishIdentity method to create the identity key pair of the user on first use, and publish its public key
+     * the key is only written once, a user without a published key receives unencrypted messages
+     * runs on a background thread, safe to call from the main thread
+     *
+     * @param userId - the id of the signed in user
+     */
+    public void publishIdentity(String userId) {
+        publishExecutor.execute(() -> {
+            KeyPair keyPair = getIdentity(userId); // generated on first use, tens of milliseconds
+            if (keyPair == null || preferences.getBoolean(KEY_IDENTITY_PUBLISHED + userId, false)) {
+                return;
+            }
+            try {
+                Tasks.await(database.collection(Constants.KEY_COLLECTION_USERS).document(userId)
+                        .update(Constants.KEY_PUBLIC_KEY, encode(keyPair.getPublic().getEncoded())));
+                preferences.edit().putBoolean(KEY_IDENTITY_PUBLISHED + userId, true).apply();
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to publish the identity key", e); // tried again on the next start
+            }
+        });
+    }
+
+    /**
+     * getSessionKey method to get the session key of a one-to-one conversation for an epoch
+     * derived on first use and cached, the public key of the other user is read once and then kept
+     *
+     * @param userId - the id of the signed in user
+     *
+     * @param peerId - the id of the other user of the conversation
+     *
+     * @param epoch - the epoch of the key
+     *
+     * @return - the session key, or null if either user has no identity key
+     */
+    public SecretKey getSessionKey(String userId, String peerId, int epoch) {
+        String conversationId = ConversationUtils.getConversationId(userId, peerId);
+        String cacheKey = conversationId + ":" + epoch;
+        SecretKey sessionKey = sessionKeys.get(cacheKey);
+        if (sessionKey != null) {
+            return sessionKey;
+        }
+        KeyPair keyPair = getIdentity(userId);
+        PublicKey peerKey = getPeerKey(peerId);
+        if (keyPair == null || peerKey == null) {
+            return null;
+        }
+        try {
+            KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+            keyAgreement.init(keyPair.getPrivate());
+            keyAgreement.doPhase(peerKey, true);
+            byte[] sharedSecret = keyAgreement.generateSecret();
+            // both users compute the same conversation id, so they derive the same key
+            // the epoch is public info for HKDF, the secret behind every epoch's key is the same
+            sessionKey = MessageCipher.deriveKey(sharedSecret, conversationId.getBytes(StandardCharsets.UTF_8),
+                    ByteBuffer.allocate(4).putInt(epoch).array());
+            Arrays.fill(sharedSecret, (byte) 0);
+            sessionKeys.put(cacheKey, sessionKey);
+            return sessionKey;
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Unable to derive the session key", e);
+            return null;
+        }
+    }
+
+    /**
+     * refreshPeerKey method to read the published public key of a user again, e.g. when a chat is opened
+     * the session keys of every conversation are dropped if the key changed, e.g. the user reinstalled
+     *
+     * @param peerId - the id of the user
+     */
+    public void refreshPeerKey(String peerId) {
+        String stored = preferences.getString(KEY_PEER_PUBLIC + peerId, null);
+        String published = fetchPeerKey(peerId);
+        // a failed read counts as a check too, so an offline device does not wait on a read for every message
+        SharedPreferences.Editor editor = preferences.edit()
+                .putLong(KEY_PEER_CHECKED_AT + peerId, System.currentTimeMillis());
+        if (published == null) {
+            editor.apply(); // could not be read, the stored key is kept
+            return;
+        }
+        editor.putString(KEY_PEER_PUBLIC + peerId, published).apply();
+        if (stored != null && !stored.equals(NO_KEY) && !published.equals(stored)) {
+            sessionKeys.evictAll(); // derived from the old key, no session key exists without one
+        }
+    }
+
+    /**
+     * recheckPeerKey method to read the public key of a user again when their sealed text could not be opened
+     * the key may have been published, or changed, since it was last read; reads at most once per
+     * PEER_KEY_RECHECK_MS for each user, so undecryptable messages do not cost a read each
+     *
+     * @param peerId - the id of the user
+     *
+     * @return - true if the key changed, opening the text again may now succeed
+     */
+    public boolean recheckPeerKey(String peerId) {
+        if (System.currentTimeMillis() - preferences.getLong(KEY_PEER_CHECKED_AT + peerId, 0) < PEER_KEY_RECHECK_MS) {
+            return false;
+        }
+        String stored = preferences.getString(KEY_PEER_PUBLIC + peerId, null);
+        refreshPeerKey(peerId);
+        return !Objects.equals(stored, preferences.getString(KEY_PEER_PUBLIC + peerId, null));
+    }
+
+    /**
+     * getPeerKey method to get the public key of the other user, read from the firebase database on first use
+     * a user known to have no key is read again once PEER_KEY_RECHECK_MS has passed
+     *
+     * @param peerId - the id of the user
+     *
+     * @return - the public key, or null if the user has not published one
+     */
+    private PublicKey getPeerKey(String peerId) {
+        String encoded = preferences.getString(KEY_PEER_PUBLIC + peerId, null);
+        if (encoded == null || (encoded.equals(NO_KEY) && System.currentTimeMillis()
+                - preferences.getLong(KEY_PEER_CHECKED_AT + peerId, 0) >= PEER_KEY_RECHECK_MS)) {
+            refreshPeerKey(peerId);
+            encoded = preferences.getString(KEY_PEER_PUBLIC + peerId, null);
+            if (encoded == null) {
+                return null; // unknown, e.g. offline, asked again next time
+            }
+        }
+        if (encoded.equals(NO_KEY)) {
+            return null;
+        }
+        try {
+            return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(decode(encoded)));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Malformed public key of " + peerId, e);
+            return null;
+        }
+    }
+
+    /**
+     * fetchPeerKey method to read the published public key of a user from the firebase database
+     *
+     * @param peerId - the id of the user
+     *
+     * @return - the encoded public key, NO_KEY if the user has none, or null if it could not be read
+     */
+    private String fetchPeerKey(String peerId) {
+        try {
+            DocumentSnapshot document = Tasks.await(database.collection(Constants.KEY_COLLECTION_USERS)
+                    .document(peerId).get(), PEER_KEY_TIMEOUT_S, TimeUnit.SECONDS);
+            String encoded = document.getString(Constants.KEY_PUBLIC_KEY);
+            return encoded != null ? encoded : NO_KEY;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to read the public key of " + peerId, e);
+            return null;
+        }
+    }
+
+    /**
+     * getIdentity method to load the identity key pair of the user, creating it on first use
+     *
+     * @param userId - the id of the signed in user
+     *
+     * @return - the key pair, or null if the keystore is unavailable
+     */
+    private synchronized KeyPair getIdentity(String userId) {
+        if (identity != null && userId.equals(identityUserId)) {
+            return identity;
+        }
+        try {
+            String wrappedPrivate = preferences.getString(KEY_IDENTITY_PRIVATE + userId, null);
+            String encodedPublic = preferences.getString(KEY_IDENTITY_PUBLIC + userId, null);
+            KeyPair keyPair;
+            if (wrappedPrivate != null && encodedPublic != null) {
+                KeyFactory keyFactory = KeyFactory.getInstance("EC");
+                PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(unwrap(decode(wrappedPrivate))));
+                PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(decode(encodedPublic)));
+                keyPair = new KeyPair(publicKey, privateKey);
+            } else {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                keyPair = generator.generateKeyPair();
+                preferences.edit()
+                        .putString(KEY_IDENTITY_PRIVATE + userId, encode(wrap(keyPair.getPrivate().getEncoded())))
+                        .putString(KEY_IDENTITY_PUBLIC + userId, encode(keyPair.getPublic().getEncoded()))
+                        .putBoolean(KEY_IDENTITY_PUBLISHED + userId, false)
+                        .apply();
+            }
+            identity = keyPair;
+            identityUserId = userId;
+            return keyPair;
+        } catch (Exception e) {
+            Log.w(TAG, "Identity key unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * wrap method to encrypt the identity private key with the keystore wrapping key
+     *
+     * @param privateKey - the encoded private key
+     *
+     * @return - the nonce followed by the encrypted key
+     */
+    private static byte[] wrap(byte[] privateKey) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, getWrappingKey());
+        byte[] nonce = cipher.getIV(); // the keystore picks the nonce
+        byte[] encrypted = cipher.doFinal(privateKey);
+        return ByteBuffer.allocate(1 + nonce.length + encrypted.length)
+                .put((byte) nonce.length).put(nonce).put(encrypted).array();
+    }
+
+    /**
+     * unwrap method to decrypt the identity private key with the keystore wrapping key
+     *
+     * @param wrapped - the nonce followed by the encrypted key
+     *
+     * @return - the encoded private key
+     */
+    private static byte[] unwrap(byte[] wrapped) throws Exception {
+        int nonceLength = wrapped[0];
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, getWrappingKey(), new GCMParameterSpec(128, wrapped, 1, nonceLength));
+        return cipher.doFinal(wrapped, 1 + nonceLength, wrapped.length - 1 - nonceLength);
+    }
+
+    /**
+     * getWrappingKey method to get the AES key of the Android keystore, creating it on first use
+     *
+     * @return - the wrapping key, its material never leaves the keystore
+     */
+    private static SecretKey getWrappingKey() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+        if (keyStore.containsAlias(WRAPPING_KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(WRAPPING_KEY_ALIAS, null);
+        }
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        keyGenerator.init(new KeyGenParameterSpec.Builder(WRAPPING_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return keyGenerator.generateKey();
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.encodeToString(bytes, Base64.NO_WRAP);
+    }
+
+    private static byte[] decode(String encoded) {
+        return Base64.decode(encoded, Base64.NO_WRAP);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.signinsignoutapp.firebase;
+
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+// UserSchema class for reading user documents
+public class UserSchema {
+
+    /**
+     * toUser method to map a user document to a User
+     *
+     * @param document - the user document
+     *
+     * @return - the User, updatedAt is 0 for documents written before the field existed
+     */
+    public static User toUser(DocumentSnapshot document) {
+        User user = new User(); // create a new User
+        // set all the user information accordingly from the database
+        user.name = document.getString(Constants.KEY_FIRST_NAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        user.image = document.getString(Constants.KEY_IMAGE);
+        user.token = document.getString(Constants.KEY_FCM_TOKEN);
+        user.id = document.getId();
+        Timestamp updatedAt = document.getTimestamp(Constants.KEY_UPDATED_AT);
+        user.updatedAt = MessageSchema.toMillis(updatedAt);
+        user.updatedAtNanos = MessageSchema.toNanos(updatedAt);
+        return user;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.signinsignoutapp.listeners;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+
+// MessageListener interface
+public interface MessageListener {
+    /**
+     * onMessageLongClicked method for when the user long clicks a message they sent
+     *
+     * @param chatMessage - the chat message that was long clicked by the user
+     */
+    void onMessageLongClicked(ChatMessage chatMessage);
+}
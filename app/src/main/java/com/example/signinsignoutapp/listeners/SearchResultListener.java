@@ -0,0 +1,13 @@
+package com.example.signinsignoutapp.listeners;
+
+import com.example.signinsignoutapp.models.SearchResult;
+
+// SearchResultListener interface
+public interface SearchResultListener {
+    /**
+     * onSearchResultClicked method for when the user clicks a message search result
+     *
+     * @param searchResult - the search result that was clicked by the user
+     */
+    void onSearchResultClicked(SearchResult searchResult);
+}
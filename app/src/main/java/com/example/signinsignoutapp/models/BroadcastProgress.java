@@ -0,0 +1,11 @@
+package com.example.signinsignoutapp.models;
+
+// BroadcastProgress class, how far a broadcast has been fanned out to its recipients
+public class BroadcastProgress {
+    public String broadcastId;
+    public int sentRecipients; // recipients whose message and unread counter are committed
+    public int totalRecipients;
+    public int failedChunks; // chunks that ran out of retries, left for the next resume
+    public boolean isFinished;
+    public long elapsedMs; // time spent committing, from the first to the last chunk
+}
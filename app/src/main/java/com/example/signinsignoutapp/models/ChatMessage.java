@@ -1,9 +1,24 @@
 package com.example.signinsignoutapp.models;
 
-import java.util.Date;
+import android.graphics.Bitmap;
+
+import androidx.core.text.PrecomputedTextCompat;
 
 // ChatMessage class
+// kept small, a long conversation holds one per message: the sender id is interned, the receiver is implied
+// by the conversation, and the date time text is only formatted once the message is bound
 public class ChatMessage {
-    public String senderId, receiverId, message, dateTime;
-    public Date dateObject;
+    public String id, senderId, message, imagePath, thumbnail;
+    public String dateTime; // formatted on first bind by MessageTimeFormatter, null until then
+    public long timestamp; // epoch milliseconds, the local estimate while the message is pending
+    public int timestampNanos; // nanoseconds past the millisecond of timestamp, a query cursor needs the exact time
+    public long expiresAt; // epoch milliseconds the message disappears at, 0 if it never does
+    public boolean isSent; // computed once when the message is ingested, true if sent by the current user
+    public boolean isPending; // true until the server has assigned the timestamp of the message
+    public boolean isImage; // true if the message is an image attachment stored in firebase storage
+    public boolean isEdited; // true if the sender changed the text after sending it
+    public byte[] compressedMessage; // deflated text of a long message, message stays null until first bound
+    public byte[] encryptedMessage; // sealed text of an end-to-end encrypted message, opened off the main thread
+    public PrecomputedTextCompat precomputedMessage; // message text measured off the main thread
+    public Bitmap thumbnailBitmap; // tiny inline preview shown until the full image is loaded
 }
@@ -0,0 +1,30 @@
+package com.example.signinsignoutapp.models;
+
+// ChatUpdate class describing one change to the chat messages list
+public class ChatUpdate {
+    public static final int TYPE_INSERTED = 1; // count messages inserted at position
+    public static final int TYPE_RELOADED = 2; // the whole list changed
+    public static final int TYPE_CHANGED = 3; // count messages changed in place at position
+    public static final int TYPE_REMOVED = 4; // count messages removed at position
+
+    public final int type, position, count;
+    public final int version; // the version of the chat messages list after this change
+
+    /**
+     * ChatUpdate constructor
+     *
+     * @param type - the type of the change
+     *
+     * @param position - the first position that changed
+     *
+     * @param count - the number of messages that changed
+     *
+     * @param version - the version of the chat messages list after this change
+     */
+    public ChatUpdate(int type, int position, int count, int version) {
+        this.type = type;
+        this.position = position;
+        this.count = count;
+        this.version = version;
+    }
+}
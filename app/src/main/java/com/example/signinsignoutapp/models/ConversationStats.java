@@ -0,0 +1,8 @@
+package com.example.signinsignoutapp.models;
+
+// ConversationStats class
+public class ConversationStats {
+    public String conversationId;
+    public int messageCount;
+    public long lastTimestamp;
+}
@@ -0,0 +1,7 @@
+package com.example.signinsignoutapp.models;
+
+// ConversationSummary class
+public class ConversationSummary {
+    public String conversationId, senderId;
+    public long unreadCount;
+}
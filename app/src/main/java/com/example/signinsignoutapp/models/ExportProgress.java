@@ -0,0 +1,10 @@
+package com.example.signinsignoutapp.models;
+
+// ExportProgress class, how far the export of a conversation to a file has got
+public class ExportProgress {
+    public long exportedMessages;
+    public long totalMessages; // stored messages counted when the export started
+    public boolean isFinished;
+    public boolean isCancelled; // the partial file was deleted
+    public boolean isFailed; // the file could not be written, the partial file was deleted
+}
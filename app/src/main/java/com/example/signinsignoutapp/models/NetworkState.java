@@ -0,0 +1,8 @@
+package com.example.signinsignoutapp.models;
+
+// NetworkState class, the active network as NetworkPolicy sees it
+public class NetworkState {
+    public boolean isConnected; // true if there is an active network that reaches the internet
+    public boolean isMetered; // true if the user may pay for the data, e.g. cellular or a hotspot
+    public int downstreamKbps; // the downstream bandwidth the system estimates, 0 if unknown
+}
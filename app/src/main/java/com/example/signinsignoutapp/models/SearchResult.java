@@ -0,0 +1,7 @@
+package com.example.signinsignoutapp.models;
+
+// SearchResult class
+public class SearchResult {
+    public String messageId, snippet;
+    public long timestamp;
+}
@@ -5,4 +5,6 @@ import java.io.Serializable;
 // User class implements Serializable
 public class User implements Serializable {
     public String name, image, email, token, id;
+    public long updatedAt; // server time of the last change to the user document, 0 if unknown
+    public int updatedAtNanos; // nanoseconds past the millisecond of updatedAt, a query cursor needs the exact time
 }
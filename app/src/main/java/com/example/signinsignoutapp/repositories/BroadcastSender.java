@@ -0,0 +1,288 @@
+package com.example.signinsignoutapp.repositories;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.signinsignoutapp.firebase.MessageSchema;
+import com.example.signinsignoutapp.models.BroadcastProgress;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// BroadcastSender class to send one message to many users, fanned out in chunked batched writes
+// the pending broadcast is kept in the preferences, so a broadcast cut short resumes where it stopped
+public class BroadcastSender {
+    private static final String TAG = "BroadcastSender";
+
+    // a recipient takes two writes, its message and its unread counter, well under the 500 writes of a batch
+    public static final int DEFAULT_CHUNK_RECIPIENTS = 200;
+    public static final int DEFAULT_MAX_PARALLEL_BATCHES = 3; // batches in flight at once
+    private static final int MAX_ATTEMPTS = 3; // commits of a chunk before it is left for the next resume
+    private static final long RETRY_BACKOFF_MS = 1000; // doubled on every retry of a chunk
+
+    private final FirebaseFirestore database;
+    private final PreferenceManager preferenceManager;
+    private final int chunkRecipients;
+    // one thread to run broadcasts one after another, and a bounded pool for the batches of a broadcast
+    private final ExecutorService broadcastExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService batchExecutor;
+    private final MutableLiveData<BroadcastProgress> progress = new MutableLiveData<>();
+    private final Set<String> remainingRecipients = new LinkedHashSet<>(); // guarded by this
+
+    private static BroadcastSender instance;
+
+    /**
+     * getInstance method to get the single BroadcastSender of the application
+     * the sender outlives the user directory, so a broadcast keeps going after the screen is left
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the BroadcastSender
+     */
+    public static synchronized BroadcastSender getInstance(Context context) {
+        if (instance == null) {
+            instance = new BroadcastSender(context.getApplicationContext(), FirebaseFirestore.getInstance(),
+                    DEFAULT_CHUNK_RECIPIENTS, DEFAULT_MAX_PARALLEL_BATCHES);
+        }
+        return instance;
+    }
+
+    /**
+     * BroadcastSender constructor
+     *
+     * @param context - the application context
+     *
+     * @param database - the firebase database the messages are written to
+     *
+     * @param chunkRecipients - the number of recipients written per batch
+     *
+     * @param maxParallelBatches - the maximum number of batches committing at the same time
+     */
+    public BroadcastSender(Context context, FirebaseFirestore database, int chunkRecipients, int maxParallelBatches) {
+        this.database = database;
+        this.preferenceManager = new PreferenceManager(context);
+        this.chunkRecipients = chunkRecipients;
+        this.batchExecutor = Executors.newFixedThreadPool(maxParallelBatches);
+    }
+
+    public LiveData<BroadcastProgress> getProgress() {
+        return progress;
+    }
+
+    /**
+     * hasPendingBroadcast method to check if a broadcast is still being sent or waits to be resumed
+     *
+     * @return - true if a broadcast has recipients left
+     */
+    public boolean hasPendingBroadcast() {
+        return preferenceManager.getString(Constants.KEY_BROADCAST_ID) != null;
+    }
+
+    /**
+     * send method to start a broadcast of the message to the recipients
+     * the broadcast is stored before the first write, so it can be resumed if the application is stopped
+     *
+     * @param message - the text of the message
+     *
+     * @param recipientIds - the ids of the users the message is sent to
+     *
+     * @return - the progress once the broadcast is done, or null if another broadcast is still pending
+     */
+    public synchronized Future<BroadcastProgress> send(String message, List<String> recipientIds) {
+        if (hasPendingBroadcast()) {
+            return null; // one broadcast at a time, the pending one is resumed first
+        }
+        String broadcastId = UUID.randomUUID().toString().replace("-", "");
+        preferenceManager.putString(Constants.KEY_BROADCAST_MESSAGE, message);
+        preferenceManager.putString(Constants.KEY_BROADCAST_RECIPIENTS, TextUtils.join(",", recipientIds));
+        preferenceManager.putLong(Constants.KEY_BROADCAST_TOTAL, recipientIds.size());
+        preferenceManager.putString(Constants.KEY_BROADCAST_ID, broadcastId); // written last, marks the job complete
+        return broadcastExecutor.submit(this::runPendingBroadcast);
+    }
+
+    /**
+     * resume method to continue a broadcast that was stopped before all recipients were written
+     *
+     * @return - the progress once the broadcast is done, or null if there is no broadcast to resume
+     */
+    public synchronized Future<BroadcastProgress> resume() {
+        if (!hasPendingBroadcast()) {
+            return null;
+        }
+        return broadcastExecutor.submit(this::runPendingBroadcast);
+    }
+
+    /**
+     * runPendingBroadcast method to write the remaining recipients of the stored broadcast, chunk by chunk
+     * chunks are committed in parallel up to the pool size, a failed chunk is retried with a growing delay
+     *
+     * @return - the progress of the broadcast after every chunk was tried
+     */
+    private BroadcastProgress runPendingBroadcast() {
+        String broadcastId = preferenceManager.getString(Constants.KEY_BROADCAST_ID);
+        String senderId = preferenceManager.getString(Constants.KEY_USER_ID);
+        String message = preferenceManager.getString(Constants.KEY_BROADCAST_MESSAGE);
+        String recipients = preferenceManager.getString(Constants.KEY_BROADCAST_RECIPIENTS);
+        if (broadcastId == null || senderId == null || message == null) {
+            return null; // resumed twice, or signed out since
+        }
+        int totalRecipients = (int) preferenceManager.getLong(Constants.KEY_BROADCAST_TOTAL);
+
+        List<List<String>> chunks = new ArrayList<>();
+        synchronized (this) {
+            remainingRecipients.clear();
+            if (!TextUtils.isEmpty(recipients)) {
+                remainingRecipients.addAll(Arrays.asList(recipients.split(",")));
+            }
+            List<String> chunk = new ArrayList<>();
+            for (String recipientId : remainingRecipients) {
+                chunk.add(recipientId);
+                if (chunk.size() == chunkRecipients) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+
+        long startedAt = SystemClock.elapsedRealtime();
+        publishProgress(broadcastId, totalRecipients, 0, false, 0);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (List<String> chunk : chunks) {
+            results.add(batchExecutor.submit(() ->
+                    commitChunk(broadcastId, senderId, message, chunk, totalRecipients, startedAt)));
+        }
+        int failedChunks = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (!result.get()) {
+                    failedChunks++;
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                failedChunks++;
+            }
+        }
+
+        if (failedChunks == 0) {
+            // every recipient is written, the stored broadcast is no longer needed
+            preferenceManager.putString(Constants.KEY_BROADCAST_ID, null);
+            preferenceManager.putString(Constants.KEY_BROADCAST_MESSAGE, null);
+            preferenceManager.putString(Constants.KEY_BROADCAST_RECIPIENTS, null);
+        }
+        return publishProgress(broadcastId, totalRecipients, failedChunks, true,
+                SystemClock.elapsedRealtime() - startedAt);
+    }
+
+    /**
+     * commitChunk method to write the message and the unread counter of each recipient of the chunk in one batch
+     * the message of a recipient always has the same document id, so a retried chunk overwrites rather than duplicates
+     *
+     * @param broadcastId - the id of the broadcast
+     *
+     * @param senderId - the id of the user sending the broadcast
+     *
+     * @param message - the text of the message
+     *
+     * @param chunk - the recipients written by this batch
+     *
+     * @param totalRecipients - the number of recipients of the whole broadcast
+     *
+     * @param startedAt - the elapsed realtime the broadcast started at
+     *
+     * @return - true if the chunk was committed
+     */
+    private boolean commitChunk(String broadcastId, String senderId, String message, List<String> chunk,
+                                int totalRecipients, long startedAt) throws InterruptedException {
+        CollectionReference chat = database.collection(Constants.KEY_COLLECTION_CHAT);
+        CollectionReference unreadCounters = database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS);
+        for (int attempt = 1; ; attempt++) {
+            WriteBatch batch = database.batch();
+            for (String recipientId : chunk) {
+                batch.set(chat.document(broadcastId + "_" + recipientId), MessageSchema.newTextMessage(
+                        ConversationUtils.getConversationId(senderId, recipientId), senderId, message));
+                HashMap<String, Object> unreadCounter = new HashMap<>();
+                unreadCounter.put(Constants.KEY_RECEIVER_ID, recipientId);
+                unreadCounter.put(Constants.KEY_SENDER_ID, senderId);
+                unreadCounter.put(Constants.KEY_UNREAD_COUNT, FieldValue.increment(1));
+                batch.set(unreadCounters.document(ConversationUtils.getUnreadCounterId(recipientId, senderId)),
+                        unreadCounter, SetOptions.merge());
+            }
+            try {
+                Tasks.await(batch.commit());
+                break;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Broadcast chunk failed, attempt " + attempt, e);
+                if (attempt == MAX_ATTEMPTS) {
+                    return false; // left in the stored recipients for the next resume
+                }
+                Thread.sleep(RETRY_BACKOFF_MS << (attempt - 1));
+            }
+        }
+
+        int sentRecipients;
+        synchronized (this) {
+            remainingRecipients.removeAll(chunk);
+            sentRecipients = totalRecipients - remainingRecipients.size();
+            // only the recipients still to be written are stored, so a resume skips the committed chunks
+            preferenceManager.putString(Constants.KEY_BROADCAST_RECIPIENTS, TextUtils.join(",", remainingRecipients));
+        }
+        publishProgress(broadcastId, totalRecipients, 0, false, SystemClock.elapsedRealtime() - startedAt);
+        Log.d(TAG, "Broadcast " + sentRecipients + "/" + totalRecipients);
+        return true;
+    }
+
+    /**
+     * publishProgress method to post the progress of the broadcast to its observers
+     *
+     * @param broadcastId - the id of the broadcast
+     *
+     * @param totalRecipients - the number of recipients of the whole broadcast
+     *
+     * @param failedChunks - the number of chunks that ran out of retries
+     *
+     * @param isFinished - true if every chunk was tried
+     *
+     * @param elapsedMs - the time spent on the broadcast so far
+     *
+     * @return - the posted progress
+     */
+    private BroadcastProgress publishProgress(String broadcastId, int totalRecipients, int failedChunks,
+                                              boolean isFinished, long elapsedMs) {
+        BroadcastProgress broadcastProgress = new BroadcastProgress();
+        broadcastProgress.broadcastId = broadcastId;
+        broadcastProgress.totalRecipients = totalRecipients;
+        synchronized (this) {
+            broadcastProgress.sentRecipients = totalRecipients - remainingRecipients.size();
+        }
+        broadcastProgress.failedChunks = failedChunks;
+        broadcastProgress.isFinished = isFinished;
+        broadcastProgress.elapsedMs = elapsedMs;
+        progress.postValue(broadcastProgress);
+        return broadcastProgress;
+    }
+}
@@ -0,0 +1,1074 @@
+package com.example.signinsignoutapp.repositories;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.ConversationCipher;
+import com.example.signinsignoutapp.firebase.ManagedSnapshotListener;
+import com.example.signinsignoutapp.firebase.MessageCompactor;
+import com.example.signinsignoutapp.firebase.MessageSchema;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ChatUpdate;
+import com.example.signinsignoutapp.models.SearchResult;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
+import com.example.signinsignoutapp.utilities.ChatImageLoader;
+import com.example.signinsignoutapp.utilities.ChatTrace;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.ExpiryQueue;
+import com.example.signinsignoutapp.utilities.FrameCoalescer;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+import com.example.signinsignoutapp.utilities.MessageOrdering;
+import com.example.signinsignoutapp.utilities.MessageTextPrecomputer;
+import com.example.signinsignoutapp.utilities.MessageTimeFormatter;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.storage.FirebaseStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ChatRepository class owning the firestore access and the local cache of one conversation
+public class ChatRepository {
+    private static final String TAG = "ChatRepository";
+    private static final int SEARCH_RESULT_LIMIT = 50; // the maximum number of message search results
+    private static final int PICKED_IMAGE_MAX_SIZE = 2560; // longest side a picked image is decoded to
+    private static final int TRIM_KEPT_MESSAGES = 50; // messages kept ready on either side of the visible rows
+
+    private final Context context;
+    private final User receiverUser;
+    private final String currentUserId;
+    private final String conversationId;
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+    private final ChatDatabase chatDatabase;
+    private final PreferenceManager preferenceManager;
+    private final MessageTextPrecomputer messageTextPrecomputer;
+    private final ChatImageLoader chatImageLoader;
+    private final ConversationCipher conversationCipher;
+    private final ManagedSnapshotListener messageListener;
+    private final ManagedSnapshotListener editsListener;
+    // single background thread for the local database, so writes and searches never overlap
+    private final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
+    // single background thread for encoding the images picked by the user
+    private final ExecutorService mediaExecutor = Executors.newSingleThreadExecutor();
+    // single background thread for sealing and opening text, it may wait for the public key of the receiver
+    private final ExecutorService cipherExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final List<ChatMessage> chatMessages = new ArrayList<>(); // sorted by date, shared with ChatAdapter
+    private final HashSet<String> messageIds = new HashSet<>(); // ids of the ingested messages, including unsent ones
+    // message id to chat message, the index edits and unsends are looked up in, a position is then binary searched
+    private final HashMap<String, ChatMessage> messagesById = new HashMap<>();
+    // messages sent from this device that are still waiting for their server timestamp
+    private final HashMap<String, ChatMessage> pendingMessages = new HashMap<>();
+    // measured messages waiting for the next frame, a burst of snapshots becomes a single list change
+    private final List<ChatMessage> measuredMessages = new ArrayList<>();
+    private final FrameCoalescer messagesFlusher = new FrameCoalescer(this::flushMessages);
+    // disappearing messages by expiry time, a single timer waits for the next one to expire
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+    private final Runnable expireMessages = this::expireMessages;
+    private long messageTtl; // time to live of the messages this user sends, 0 if they never disappear
+    // high-water mark of the conversation, the newest ingested message, the listener resumes after it
+    private long lastSeenTimestamp;
+    private int lastSeenTimestampNanos; // past the millisecond, the cursor must not sort before the message
+    private String lastSeenMessageId; // null until a message was seen
+    private int version; // incremented on every change of chatMessages
+    private boolean started;
+    private boolean bucketsRequested;
+    private boolean historyLoaded; // edits are only applied once the stored history is in messagesById
+    private long editsSyncedAt; // server time of the newest edit or unsend applied
+    private boolean closed; // set once the background threads are shut down, late firestore callbacks are dropped
+
+    private final MutableLiveData<ChatUpdate> chatUpdates = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> loading = new MutableLiveData<>(true);
+    private final MutableLiveData<List<SearchResult>> searchResults = new MutableLiveData<>();
+    private final MutableLiveData<String> errorMessages = new MutableLiveData<>();
+    // true if the text sent by this user is sealed, false if it goes out in the clear, null until known
+    private final MutableLiveData<Boolean> encrypted = new MutableLiveData<>();
+
+    /**
+     * ChatRepository constructor, starts reading the locally held history right away
+     *
+     * @param context - the application context
+     *
+     * @param receiverUser - the other user of the conversation
+     *
+     * @param messageTextPrecomputer - the precomputer measuring message text off the main thread
+     *
+     * @param chatImageLoader - the loader whose disk cache receives the images sent by this user
+     *
+     * @param conversationCipher - seals the text sent by this user and opens the text received
+     */
+    public ChatRepository(Context context, User receiverUser, MessageTextPrecomputer messageTextPrecomputer,
+                          ChatImageLoader chatImageLoader, ConversationCipher conversationCipher) {
+        this.context = context;
+        this.receiverUser = receiverUser;
+        this.messageTextPrecomputer = messageTextPrecomputer;
+        this.chatImageLoader = chatImageLoader;
+        this.conversationCipher = conversationCipher;
+        preferenceManager = new PreferenceManager(context);
+        chatDatabase = ChatDatabase.getInstance(context);
+        currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        conversationId = ConversationUtils.getConversationId(currentUserId, receiverUser.id);
+        // restore the high-water mark persisted the last time this conversation was open
+        lastSeenTimestamp = preferenceManager.getLong(Constants.KEY_LAST_SEEN_TIMESTAMP + "_" + conversationId);
+        lastSeenTimestampNanos = (int) preferenceManager.getLong(
+                Constants.KEY_LAST_SEEN_TIMESTAMP_NANOS + "_" + conversationId);
+        lastSeenMessageId = preferenceManager.getString(Constants.KEY_LAST_SEEN_MESSAGE_ID + "_" + conversationId);
+        if (lastSeenTimestamp <= 0) {
+            lastSeenMessageId = null;
+        }
+        messageTtl = preferenceManager.getLong(Constants.KEY_MESSAGE_TTL + "_" + conversationId);
+        // a single listener on the conversation id receives the messages of both users
+        messageListener = new ManagedSnapshotListener(() -> afterLastSeen(database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId),
+                MessageSchema.FIELD_TIMESTAMP), eventListener);
+        // edits and unsends of messages older than the high-water mark are not seen by the messageListener
+        editsSyncedAt = preferenceManager.getLong(Constants.KEY_EDITS_SYNCED_AT + "_" + conversationId);
+        editsListener = new ManagedSnapshotListener(() -> database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                .whereGreaterThan(MessageSchema.FIELD_EDITED_AT, new Timestamp(new Date(editsSyncedAt))),
+                editsEventListener);
+        cipherExecutor.execute(() -> {
+            conversationCipher.refresh(); // once per conversation, before the first message is sealed
+            encrypted.postValue(conversationCipher.canSeal());
+        });
+        loadLocalHistory();
+        syncLegacyMessages();
+    }
+
+    /**
+     * getChatMessages method
+     *
+     * @return - the chat messages of the conversation, sorted by date, only changed on the main thread
+     */
+    public List<ChatMessage> getChatMessages() {
+        return chatMessages;
+    }
+
+    /**
+     * getVersion method
+     *
+     * @return - the current version of the chat messages list
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public LiveData<ChatUpdate> getChatUpdates() {
+        return chatUpdates;
+    }
+
+    public LiveData<Boolean> getLoading() {
+        return loading;
+    }
+
+    public LiveData<List<SearchResult>> getSearchResults() {
+        return searchResults;
+    }
+
+    public LiveData<String> getErrorMessages() {
+        return errorMessages;
+    }
+
+    public LiveData<Boolean> getEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * getMessageTtl method
+     *
+     * @return - the time to live of the messages this user sends in the conversation, 0 if they never disappear
+     */
+    public long getMessageTtl() {
+        return messageTtl;
+    }
+
+    /**
+     * setMessageTtl method to make the messages this user sends from now on disappear, or stop them disappearing
+     * messages already sent keep their own expiry time
+     *
+     * @param ttlMs - the time to live of each message, 0 to turn disappearing messages off
+     */
+    public void setMessageTtl(long ttlMs) {
+        messageTtl = ttlMs;
+        databaseExecutor.execute(() -> preferenceManager.putLong(Constants.KEY_MESSAGE_TTL + "_" + conversationId, ttlMs));
+    }
+
+    /**
+     * clearErrorMessage method to drop the error once shown, so a recreated activity does not show it again
+     */
+    public void clearErrorMessage() {
+        errorMessages.setValue(null);
+    }
+
+    /**
+     * trimMessages method to release what was derived from the messages outside the visible rows
+     * the messages themselves stay, only the measured text, formatted date times and inflated text go,
+     * and under critical pressure the decoded thumbnails too, each is rebuilt when its row is bound again
+     * a page of messages on either side of the visible rows is kept unless the pressure is critical
+     *
+     * @param level - a ComponentCallbacks2 trim level, nothing is released under moderate pressure
+     *
+     * @param firstVisible - the position of the first visible message, RecyclerView.NO_POSITION if none
+     *
+     * @param lastVisible - the position of the last visible message, RecyclerView.NO_POSITION if none
+     *
+     * @return - the estimated number of bytes released
+     */
+    public long trimMessages(int level, int firstVisible, int lastVisible) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0;
+        }
+        boolean critical = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        int margin = critical ? 0 : TRIM_KEPT_MESSAGES;
+        int keepFrom = firstVisible < 0 ? chatMessages.size() : firstVisible - margin; // nothing kept if none visible
+        int keepTo = lastVisible < 0 ? -1 : lastVisible + margin;
+        long released = 0;
+        for (int i = 0; i < chatMessages.size(); i++) {
+            if (i >= keepFrom && i <= keepTo) {
+                continue;
+            }
+            ChatMessage chatMessage = chatMessages.get(i);
+            released += MessageTextPrecomputer.release(chatMessage, critical);
+            released += MessageTimeFormatter.releaseDateTime(chatMessage);
+            released += MessageCompression.releaseText(chatMessage);
+        }
+        return released;
+    }
+
+    /**
+     * start method to listen to new messages and mark the conversation as read
+     * does nothing if already started, so a configuration change costs no reads or writes
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        messageListener.start();
+        if (historyLoaded) {
+            editsListener.start();
+        }
+        if (!bucketsRequested) {
+            bucketsRequested = true;
+            loadBuckets();
+        }
+        // the unread counter of the current user is reset in a single write
+        HashMap<String, Object> unreadCounter = new HashMap<>();
+        unreadCounter.put(Constants.KEY_RECEIVER_ID, currentUserId);
+        unreadCounter.put(Constants.KEY_SENDER_ID, receiverUser.id);
+        unreadCounter.put(Constants.KEY_UNREAD_COUNT, 0);
+        database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS)
+                .document(ConversationUtils.getUnreadCounterId(currentUserId, receiverUser.id))
+                .set(unreadCounter, SetOptions.merge());
+    }
+
+    /**
+     * stop method to stop listening to new messages while the conversation is not visible
+     */
+    public void stop() {
+        started = false;
+        messageListener.stop();
+        editsListener.stop();
+    }
+
+    /**
+     * close method to release the listener and background threads
+     */
+    public void close() {
+        closed = true;
+        stop();
+        messagesFlusher.cancel();
+        // the cipher thread hands stores to the database thread, so the database thread stops after it
+        cipherExecutor.execute(databaseExecutor::shutdown);
+        cipherExecutor.shutdown();
+        mediaExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * sendMessage method to send a text message
+     * the text is sealed on a background thread, it is sent in the clear if the receiver has no public key yet
+     * the encrypted state is updated with how the text went out, so the user is never unaware of plaintext
+     *
+     * @param text - the text of the message
+     */
+    public void sendMessage(String text) {
+        DocumentReference reference = newMessageReference();
+        cipherExecutor.execute(() -> {
+            byte[] sealed = conversationCipher.seal(text);
+            encrypted.postValue(sealed != null);
+            // message made up of a String, Object key-pair, the server assigns the time stamp
+            mainHandler.post(() -> addMessage(reference,
+                    MessageSchema.newTextMessage(conversationId, currentUserId, text, sealed)));
+        });
+    }
+
+    /**
+     * sendImage method to send the image picked by the user as an image message
+     * the image is encoded on a background thread, then uploaded before the message is added
+     *
+     * @param imageUri - the uri of the image picked by the user
+     */
+    public void sendImage(Uri imageUri) {
+        // the full image is stored outside the message document, in firebase storage
+        String imagePath = Constants.KEY_STORAGE_CHAT_IMAGES + "/" + conversationId + "/" + UUID.randomUUID() + ".jpg";
+        DocumentReference reference = newMessageReference();
+        mediaExecutor.execute(() -> {
+            try (InputStream inputStream = context.getContentResolver().openInputStream(imageUri)) {
+                if (inputStream == null) {
+                    ChatTrace.endAsync(ChatTrace.SEND, reference.getId());
+                    return;
+                }
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    byteArrayOutputStream.write(buffer, 0, read);
+                }
+                Bitmap bitmap = ChatImageEncoder.decodeSampledBitmap(
+                        byteArrayOutputStream.toByteArray(), PICKED_IMAGE_MAX_SIZE);
+                if (bitmap == null) {
+                    ChatTrace.endAsync(ChatTrace.SEND, reference.getId());
+                    return;
+                }
+                byte[] fullImage = ChatImageEncoder.encodeFullImage(bitmap);
+                String thumbnail = ChatImageEncoder.encodeThumbnail(bitmap);
+                chatImageLoader.putImage(imagePath, fullImage); // the sender never downloads their own image
+                mainHandler.post(() -> uploadImage(reference, imagePath, fullImage, thumbnail));
+            } catch (IOException e) {
+                ChatTrace.endAsync(ChatTrace.SEND, reference.getId());
+                Log.w(TAG, "Unable to read the picked image", e);
+            }
+        });
+    }
+
+    /**
+     * searchMessages method to search the locally indexed messages of this conversation
+     * the query runs on the database thread and the ranked results are posted to searchResults
+     *
+     * @param query - the words typed by the user
+     */
+    public void searchMessages(String query) {
+        databaseExecutor.execute(() -> {
+            chatDatabase.deleteExpiredMessages(System.currentTimeMillis()); // never find a message that disappeared
+            searchResults.postValue(chatDatabase.searchMessages(conversationId, query, SEARCH_RESULT_LIMIT));
+        });
+    }
+
+    /**
+     * indexOfMessage method to find the position of a message in chatMessages
+     *
+     * @param messageId - the id of the message
+     *
+     * @return - the position of the message, or -1 if it is not loaded
+     */
+    public int indexOfMessage(String messageId) {
+        ChatMessage chatMessage = messagesById.get(messageId);
+        return chatMessage != null ? MessageOrdering.indexOf(chatMessages, chatMessage, MessageOrdering.BY_DATE) : -1;
+    }
+
+    /**
+     * editMessage method to change the text of a message sent by the user
+     * the change is shown once the listener receives it, like a message sent from another device
+     * the new text is sealed like a new message, and sent in the clear with the encrypted state updated if it can't be
+     *
+     * @param chatMessage - the chat message to edit
+     *
+     * @param text - the new text of the message
+     */
+    public void editMessage(ChatMessage chatMessage, String text) {
+        cipherExecutor.execute(() -> {
+            byte[] sealed = conversationCipher.seal(text);
+            encrypted.postValue(sealed != null);
+            mainHandler.post(() -> changeMessage(chatMessage, MessageSchema.newEdit(text, sealed),
+                    "Unable to edit message"));
+        });
+    }
+
+    /**
+     * unsendMessage method to remove a message sent by the user for both users
+     * the full image of an image message is deleted from firebase storage once the message is unsent
+     *
+     * @param chatMessage - the chat message to unsend
+     */
+    public void unsendMessage(ChatMessage chatMessage) {
+        Task<Void> unsent = changeMessage(chatMessage, MessageSchema.newTombstone(), "Unable to unsend message");
+        if (chatMessage.isImage && chatMessage.imagePath != null) {
+            String imagePath = chatMessage.imagePath;
+            unsent.addOnSuccessListener(unused -> FirebaseStorage.getInstance().getReference(imagePath).delete());
+        }
+    }
+
+    /**
+     * changeMessage method to apply an edit or unsend to a message document
+     * the document is read in a transaction first, so legacy, compacted, or already unsent messages are refused
+     *
+     * @param chatMessage - the chat message to change
+     *
+     * @param changes - the changed fields made up of a String, Object key-pair
+     *
+     * @param failureMessage - the error shown to the user if the message can not be changed
+     *
+     * @return - the task of the transaction
+     */
+    private Task<Void> changeMessage(ChatMessage chatMessage, HashMap<String, Object> changes, String failureMessage) {
+        DocumentReference reference = database.collection(Constants.KEY_COLLECTION_CHAT).document(chatMessage.id);
+        Task<Void> transaction = database.runTransaction(transactionState -> {
+            if (!MessageSchema.isChangeable(transactionState.get(reference), currentUserId)) {
+                throw new FirebaseFirestoreException(failureMessage, FirebaseFirestoreException.Code.FAILED_PRECONDITION);
+            }
+            transactionState.update(reference, changes);
+            return null;
+        });
+        transaction.addOnFailureListener(e -> errorMessages.setValue(failureMessage));
+        return transaction;
+    }
+
+    /**
+     * newMessageReference method to pick the id of a message being sent, and start tracing it
+     * the async trace section follows the message from the send tap to its server echo in the snapshot listener
+     *
+     * @return - the reference of the new message document
+     */
+    private DocumentReference newMessageReference() {
+        DocumentReference reference = database.collection(Constants.KEY_COLLECTION_CHAT).document();
+        ChatTrace.beginAsync(ChatTrace.SEND, reference.getId());
+        return reference;
+    }
+
+    /**
+     * uploadImage method to upload the full image and then add the image message to the firebase database
+     *
+     * @param reference - the reference of the new message document
+     *
+     * @param imagePath - the firebase storage path of the full image
+     *
+     * @param fullImage - the JPEG bytes of the full image
+     *
+     * @param thumbnail - the Base64 thumbnail stored inline in the message
+     */
+    private void uploadImage(DocumentReference reference, String imagePath, byte[] fullImage, String thumbnail) {
+        FirebaseStorage.getInstance().getReference(imagePath).putBytes(fullImage)
+                .addOnSuccessListener(taskSnapshot -> addMessage(reference,
+                        MessageSchema.newImageMessage(conversationId, currentUserId, imagePath, thumbnail)))
+                .addOnFailureListener(e -> {
+                    ChatTrace.endAsync(ChatTrace.SEND, reference.getId());
+                    errorMessages.setValue("Unable to send image");
+                });
+    }
+
+    /**
+     * addMessage method to add the message to the firebase database
+     * the unread counter of the receiver is incremented in the same batch, so the two never disagree
+     *
+     * @param reference - the reference of the new message document
+     *
+     * @param message - the message made up of a String, Object key-pair
+     */
+    private void addMessage(DocumentReference reference, HashMap<String, Object> message) {
+        MessageSchema.putExpiry(message, messageTtl);
+        HashMap<String, Object> unreadCounter = new HashMap<>();
+        unreadCounter.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
+        unreadCounter.put(Constants.KEY_SENDER_ID, currentUserId);
+        unreadCounter.put(Constants.KEY_UNREAD_COUNT, FieldValue.increment(1));
+
+        WriteBatch batch = database.batch();
+        batch.set(reference, message);
+        batch.set(database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS)
+                .document(ConversationUtils.getUnreadCounterId(receiverUser.id, currentUserId)),
+                unreadCounter, SetOptions.merge());
+        batch.commit();
+    }
+
+    /**
+     * loadLocalHistory method to show the messages already stored on the device
+     * only messages after the high-water mark are then read from the firebase database
+     */
+    private void loadLocalHistory() {
+        databaseExecutor.execute(() -> {
+            chatDatabase.deleteExpiredMessages(System.currentTimeMillis()); // disappeared while the chat was closed
+            List<ChatMessage> storedMessages = chatDatabase.getMessages(conversationId);
+            for (ChatMessage chatMessage : storedMessages) {
+                chatMessage.isSent = Objects.equals(chatMessage.senderId, currentUserId);
+            }
+            mainHandler.post(() -> {
+                // skip messages the listener delivered while the history was being read
+                List<ChatMessage> historyMessages = new ArrayList<>();
+                for (ChatMessage chatMessage : storedMessages) {
+                    if (ingest(chatMessage)) {
+                        historyMessages.add(chatMessage);
+                    }
+                }
+                historyLoaded = true;
+                if (started && !closed) {
+                    editsListener.start();
+                }
+                if (!historyMessages.isEmpty()) {
+                    messageTextPrecomputer.precompute(historyMessages, () -> addMessages(historyMessages));
+                }
+            });
+        });
+    }
+
+    /**
+     * syncLegacyMessages method to read the messages written before the compact schema, once
+     * legacy messages have no conversation id, so they are read by sender and receiver instead
+     */
+    private void syncLegacyMessages() {
+        String legacySyncedKey = Constants.KEY_LEGACY_SYNCED + "_" + conversationId;
+        if (preferenceManager.getBoolean(legacySyncedKey)) {
+            return;
+        }
+        // for messages coming from the sender
+        Task<QuerySnapshot> sentMessages = afterLastSeen(database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, currentUserId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id), Constants.KEY_TIMESTAMP).get();
+        // for messages coming from the receiver
+        Task<QuerySnapshot> receivedMessages = afterLastSeen(database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, receiverUser.id)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, currentUserId), Constants.KEY_TIMESTAMP).get();
+        Tasks.whenAllSuccess(sentMessages, receivedMessages).addOnSuccessListener(results -> {
+            for (Object result : results) {
+                eventListener.onEvent((QuerySnapshot) result, null);
+            }
+            // mark the legacy messages as synced once they are stored
+            writeAfterStores(() -> preferenceManager.putBoolean(legacySyncedKey, true));
+        });
+    }
+
+    /**
+     * afterLastSeen method to limit a conversation query to messages after the high-water mark
+     * the cursor is the exact server timestamp, the document id breaks ties between messages sent at the same time
+     *
+     * @param query - the conversation query
+     *
+     * @param timestampField - the timestamp field of the queried schema version
+     *
+     * @return - the query limited to new messages, or the same query if nothing was seen yet
+     */
+    private Query afterLastSeen(Query query, String timestampField) {
+        if (lastSeenMessageId == null) {
+            return query;
+        }
+        return query.orderBy(timestampField)
+                .orderBy(FieldPath.documentId())
+                .startAfter(MessageSchema.toTimestamp(lastSeenTimestamp, lastSeenTimestampNanos), lastSeenMessageId);
+    }
+
+    /**
+     * advanceLastSeen method to move the high-water mark to the chat message if it is newer
+     *
+     * @param chatMessage - the ingested chat message
+     */
+    private void advanceLastSeen(ChatMessage chatMessage) {
+        if (lastSeenMessageId == null || MessageOrdering.compareToMark(chatMessage, lastSeenTimestamp,
+                lastSeenTimestampNanos, lastSeenMessageId) > 0) {
+            lastSeenTimestamp = chatMessage.timestamp;
+            lastSeenTimestampNanos = chatMessage.timestampNanos;
+            lastSeenMessageId = chatMessage.id;
+        }
+    }
+
+    /**
+     * EventListener for getting the query information from the current message in the firebase database
+     * documents of both schema versions are mapped to ChatMessage by MessageSchema
+     * the message text is measured on a background thread before being added to the chatMessages list
+     * messages still waiting for their server timestamp are shown with the local estimate,
+     * and are only stored and counted in the high-water mark once the server timestamp arrives
+     * errors never reach this listener, ManagedSnapshotListener reconnects instead
+     */
+    private final EventListener<QuerySnapshot> eventListener = ((value, error) -> {
+        // continue if value is present
+        if (closed) {
+            return;
+        }
+        if (value != null) {
+            List<ChatMessage> addedMessages = new ArrayList<>();
+            List<ChatMessage> confirmedMessages = new ArrayList<>();
+            List<ChatMessage> retimedMessages = new ArrayList<>();
+            // for each DocumentChange in the value document changes
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                DocumentSnapshot document = documentChange.getDocument();
+                // if message has been added, we need to initialize the information here
+                // skip messages already ingested before the listener was paused
+                if (documentChange.getType() == DocumentChange.Type.ADDED && !messageIds.contains(document.getId())) {
+                    if (MessageSchema.isDeleted(document)) {
+                        messageIds.add(document.getId()); // unsent before it was ever shown
+                        continue;
+                    }
+                    ChatMessage chatMessage = MessageSchema.toChatMessage(document, currentUserId);
+                    if (!ingest(chatMessage)) {
+                        continue; // expired before it was ever shown
+                    }
+                    addedMessages.add(chatMessage);
+                    if (chatMessage.isPending) {
+                        pendingMessages.put(chatMessage.id, chatMessage);
+                    } else {
+                        confirmedMessages.add(chatMessage);
+                        advanceLastSeen(chatMessage);
+                    }
+                } else if (documentChange.getType() == DocumentChange.Type.ADDED) {
+                    // a message sent from this device that was confirmed while the listener was detached
+                    // comes back as added once the listener is attached again
+                    if (document.getMetadata().hasPendingWrites()
+                            || confirmPending(document, confirmedMessages, retimedMessages)) {
+                        continue;
+                    }
+                    if (MessageSchema.isDeleted(document)) {
+                        applyRemoteChange(document); // unsent while detached, edits arrive on the editsListener
+                    }
+                } else if (documentChange.getType() == DocumentChange.Type.MODIFIED
+                        && !document.getMetadata().hasPendingWrites()) {
+                    // the server timestamp of a message sent from this device has arrived
+                    if (!confirmPending(document, confirmedMessages, retimedMessages)) {
+                        applyRemoteChange(document); // edited or unsent
+                    }
+                } else if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                    // documents older than the compaction age were moved into a bucket, not unsent
+                    ChatMessage chatMessage = messagesById.get(document.getId());
+                    if (chatMessage != null && System.currentTimeMillis() - chatMessage.timestamp
+                            < MessageCompactor.COMPACTION_AGE_MS) {
+                        removeMessage(chatMessage);
+                    }
+                }
+            }
+            if (!confirmedMessages.isEmpty()) {
+                storeMessages(confirmedMessages, null);
+            }
+            if (!retimedMessages.isEmpty()) {
+                repositionMessages(retimedMessages); // the server timestamp may order the message differently
+            }
+            if (!addedMessages.isEmpty()) {
+                messageTextPrecomputer.precompute(addedMessages, () -> addMessages(addedMessages));
+                return;
+            }
+        }
+        loading.setValue(false);
+    });
+
+    /**
+     * confirmPending method to apply the server timestamp to a message sent from this device
+     * the message is then stored, counted in the high-water mark and moved to its server position
+     *
+     * @param document - the message document, without pending writes
+     *
+     * @param confirmedMessages - receives the message to store
+     *
+     * @param retimedMessages - receives the message to reposition
+     *
+     * @return - true if the document was a pending message of this device, false otherwise
+     */
+    private boolean confirmPending(DocumentSnapshot document, List<ChatMessage> confirmedMessages,
+                                   List<ChatMessage> retimedMessages) {
+        if (!pendingMessages.containsKey(document.getId()) || MessageSchema.isDeleted(document)) {
+            return false; // an unsent message is removed by applyRemoteChange
+        }
+        ChatMessage chatMessage = pendingMessages.remove(document.getId());
+        ChatTrace.endAsync(ChatTrace.SEND, chatMessage.id); // the server echo of a message sent here
+        ChatMessage confirmedMessage = MessageSchema.toChatMessage(document, currentUserId);
+        chatMessage.timestamp = confirmedMessage.timestamp;
+        chatMessage.timestampNanos = confirmedMessage.timestampNanos;
+        chatMessage.dateTime = null; // formatted again with the server time on the next bind
+        chatMessage.isPending = false;
+        confirmedMessages.add(chatMessage);
+        advanceLastSeen(chatMessage);
+        retimedMessages.add(chatMessage);
+        return true;
+    }
+
+    /**
+     * storeMessages method to store and index confirmed messages locally, then persist the high-water mark
+     * the mark is only persisted once the messages it covers are stored
+     * sealed text not yet opened by the precomputer is opened first on the cipher thread, where the first
+     * message of a peer may wait for its public key, so only readable text reaches the database thread
+     *
+     * @param confirmedMessages - the messages whose server timestamp is known
+     *
+     * @param afterStored - run on the database thread once the messages are stored, may be null
+     */
+    private void storeMessages(List<ChatMessage> confirmedMessages, Runnable afterStored) {
+        long lastSeen = lastSeenTimestamp;
+        int lastSeenNanos = lastSeenTimestampNanos;
+        String lastSeenId = lastSeenMessageId;
+        cipherExecutor.execute(() -> {
+            for (ChatMessage chatMessage : confirmedMessages) {
+                conversationCipher.open(chatMessage); // does nothing if the text was already opened
+            }
+            databaseExecutor.execute(() -> {
+                chatDatabase.insertMessages(conversationId, confirmedMessages);
+                storeLastSeen(lastSeen, lastSeenNanos, lastSeenId);
+                if (afterStored != null) {
+                    afterStored.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * storeLastSeen method to persist the high-water mark, only if it is after the one already stored
+     * the prefetcher and the background sync advance the same mark, so an older one is never written over theirs
+     * runs on the database thread
+     *
+     * @param lastSeen - the epoch milliseconds of the newest ingested message
+     *
+     * @param lastSeenNanos - the nanoseconds past the millisecond of the newest ingested message
+     *
+     * @param lastSeenId - the id of the newest ingested message, null if none was seen
+     */
+    private void storeLastSeen(long lastSeen, int lastSeenNanos, String lastSeenId) {
+        if (lastSeenId == null) {
+            return;
+        }
+        String timestampKey = Constants.KEY_LAST_SEEN_TIMESTAMP + "_" + conversationId;
+        String nanosKey = Constants.KEY_LAST_SEEN_TIMESTAMP_NANOS + "_" + conversationId;
+        String messageIdKey = Constants.KEY_LAST_SEEN_MESSAGE_ID + "_" + conversationId;
+        String storedId = preferenceManager.getString(messageIdKey);
+        ChatMessage mark = new ChatMessage(); // compared like a message, the mark is the newest ingested one
+        mark.id = lastSeenId;
+        mark.timestamp = lastSeen;
+        mark.timestampNanos = lastSeenNanos;
+        if (storedId == null || MessageOrdering.compareToMark(mark, preferenceManager.getLong(timestampKey),
+                (int) preferenceManager.getLong(nanosKey), storedId) > 0) {
+            preferenceManager.putLong(timestampKey, lastSeen);
+            preferenceManager.putLong(nanosKey, lastSeenNanos);
+            preferenceManager.putString(messageIdKey, lastSeenId);
+        }
+    }
+
+    /**
+     * writeAfterStores method to change stored messages only after the messages already being stored
+     * stores pass through the cipher thread first, so a delete or an edit queued straight on the
+     * database thread could overtake the store of its own message and be undone by it
+     * reads never wait for the cipher thread, they go straight to the database thread
+     *
+     * @param write - the write to run on the database thread
+     */
+    private void writeAfterStores(Runnable write) {
+        cipherExecutor.execute(() -> databaseExecutor.execute(write));
+    }
+
+    /**
+     * loadBuckets method to read the compacted messages of this conversation, once per repository
+     * buckets are tracked by their own watermark, the newest bucket end seen, so the high-water mark
+     * of the individual messages can never skip a bucket
+     * the newest bucket is read again on the next open, since the watermark drops sub-millisecond precision
+     */
+    private void loadBuckets() {
+        String bucketsSyncedKey = Constants.KEY_BUCKETS_SYNCED_AT + "_" + conversationId;
+        long bucketsSyncedAt = preferenceManager.getLong(bucketsSyncedKey);
+        database.collection(Constants.KEY_COLLECTION_CHAT_BUCKETS)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                .whereGreaterThan(MessageSchema.FIELD_BUCKET_LAST, new Timestamp(new Date(bucketsSyncedAt)))
+                .get()
+                .addOnSuccessListener(value -> {
+                    if (closed) {
+                        return;
+                    }
+                    List<ChatMessage> addedMessages = new ArrayList<>();
+                    long newestBucket = bucketsSyncedAt;
+                    for (DocumentSnapshot bucket : value.getDocuments()) {
+                        Timestamp bucketLast = bucket.getTimestamp(MessageSchema.FIELD_BUCKET_LAST);
+                        if (bucketLast != null) {
+                            newestBucket = Math.max(newestBucket, bucketLast.toDate().getTime());
+                        }
+                        for (ChatMessage chatMessage : MessageSchema.fromBucket(bucket, currentUserId)) {
+                            if (ingest(chatMessage)) {
+                                addedMessages.add(chatMessage);
+                                advanceLastSeen(chatMessage);
+                            }
+                        }
+                    }
+                    long bucketsWatermark = newestBucket;
+                    Runnable persistWatermark = () -> preferenceManager.putLong(bucketsSyncedKey, bucketsWatermark);
+                    if (addedMessages.isEmpty()) {
+                        databaseExecutor.execute(persistWatermark);
+                        return;
+                    }
+                    storeMessages(addedMessages, persistWatermark);
+                    messageTextPrecomputer.precompute(addedMessages, () -> addMessages(addedMessages));
+                });
+    }
+
+    /**
+     * addMessages method to queue the measured chat messages for the chatMessages list
+     * the list is changed once per frame, however many batches arrive before it
+     *
+     * @param batch - the chat messages whose text has been measured
+     */
+    private void addMessages(List<ChatMessage> batch) {
+        measuredMessages.addAll(batch);
+        messagesFlusher.schedule();
+    }
+
+    /**
+     * flushMessages method to add the queued chat messages to the chatMessages list in a single change
+     * runs at the start of a frame, so the list change and its notification come before the next layout
+     */
+    private void flushMessages() {
+        if (closed) {
+            return;
+        }
+        // drop the messages unsent while they were waiting
+        List<ChatMessage> addedMessages = new ArrayList<>();
+        for (ChatMessage chatMessage : measuredMessages) {
+            if (messagesById.get(chatMessage.id) == chatMessage) {
+                addedMessages.add(chatMessage);
+            }
+        }
+        measuredMessages.clear();
+        if (addedMessages.isEmpty()) {
+            loading.setValue(false);
+            return;
+        }
+        int count = chatMessages.size();
+        // only the new batch is sorted, it is then appended or binary searched into place
+        int firstPosition = MessageOrdering.merge(chatMessages, addedMessages, MessageOrdering.BY_DATE);
+        version++;
+        if (count == 0 || firstPosition < count) {
+            // if no chat messages, or new messages landed before old ones
+            chatUpdates.setValue(new ChatUpdate(ChatUpdate.TYPE_RELOADED, 0, chatMessages.size(), version));
+        } else {
+            chatUpdates.setValue(new ChatUpdate(ChatUpdate.TYPE_INSERTED, count, addedMessages.size(), version));
+        }
+        loading.setValue(false);
+    }
+
+    /**
+     * repositionMessages method to move the chat messages whose date changed back into order
+     * publishes a reload only when a message actually moved
+     *
+     * @param retimedMessages - the chat messages whose server timestamp arrived
+     */
+    private void repositionMessages(List<ChatMessage> retimedMessages) {
+        boolean moved = false;
+        for (ChatMessage chatMessage : retimedMessages) {
+            moved |= MessageOrdering.reposition(chatMessages, chatMessage, MessageOrdering.BY_DATE);
+        }
+        if (moved) {
+            version++;
+            chatUpdates.setValue(new ChatUpdate(ChatUpdate.TYPE_RELOADED, 0, chatMessages.size(), version));
+        }
+    }
+
+    /**
+     * EventListener for the edits and unsends of this conversation since the last one applied
+     * the watermark is only persisted once the changes it covers are stored
+     */
+    private final EventListener<QuerySnapshot> editsEventListener = ((value, error) -> {
+        if (closed || value == null) {
+            return;
+        }
+        long newestEdit = editsSyncedAt;
+        for (DocumentChange documentChange : value.getDocumentChanges()) {
+            if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                continue; // compacted, the edit was carried into the bucket
+            }
+            DocumentSnapshot document = documentChange.getDocument();
+            Timestamp editedAt = document.getTimestamp(MessageSchema.FIELD_EDITED_AT);
+            if (editedAt != null) {
+                newestEdit = Math.max(newestEdit, editedAt.toDate().getTime());
+            }
+            applyRemoteChange(document);
+        }
+        if (newestEdit > editsSyncedAt) {
+            editsSyncedAt = newestEdit;
+            long editsWatermark = newestEdit;
+            writeAfterStores(() -> preferenceManager.putLong( // persisted after the edits it covers
+                    Constants.KEY_EDITS_SYNCED_AT + "_" + conversationId, editsWatermark));
+        }
+    });
+
+    /**
+     * ingest method to record a newly read chat message in the message indexes
+     *
+     * @param chatMessage - the chat message
+     *
+     * @return - true if the message was not ingested before
+     */
+    private boolean ingest(ChatMessage chatMessage) {
+        if (!messageIds.add(chatMessage.id)) {
+            return false;
+        }
+        if (chatMessage.expiresAt > 0) {
+            if (chatMessage.expiresAt <= System.currentTimeMillis()) {
+                return false; // already expired, its id is kept so it is never ingested later
+            }
+            expiryQueue.add(chatMessage);
+            scheduleExpiry();
+        }
+        messagesById.put(chatMessage.id, chatMessage);
+        return true;
+    }
+
+    /**
+     * scheduleExpiry method to wake up when the next disappearing message expires
+     * only the head of the expiry queue is waited for, however many messages are disappearing
+     */
+    private void scheduleExpiry() {
+        mainHandler.removeCallbacks(expireMessages);
+        long nextExpiry = expiryQueue.getNextExpiry();
+        if (nextExpiry > 0 && !closed) {
+            mainHandler.postDelayed(expireMessages, Math.max(0, nextExpiry - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * expireMessages method to remove the disappearing messages whose time is over
+     * each one is removed on its own, so ChatAdapter animates targeted removals instead of a reload
+     */
+    private void expireMessages() {
+        if (closed) {
+            return;
+        }
+        for (ChatMessage chatMessage : expiryQueue.pollExpired(System.currentTimeMillis())) {
+            if (messagesById.get(chatMessage.id) == chatMessage) { // not unsent in the meantime
+                removeMessage(chatMessage);
+            }
+        }
+        scheduleExpiry();
+    }
+
+    /**
+     * applyRemoteChange method to apply an edit or unsend read from a message document
+     * the message is found through messagesById, so the cost does not grow with the conversation
+     * a change that is already applied, e.g. received by both listeners, does nothing
+     *
+     * @param document - the changed chat document
+     */
+    private void applyRemoteChange(DocumentSnapshot document) {
+        ChatMessage chatMessage = messagesById.get(document.getId());
+        if (MessageSchema.isDeleted(document)) {
+            messageIds.add(document.getId()); // never ingest it later
+            if (chatMessage != null) {
+                removeMessage(chatMessage);
+            } else {
+                writeAfterStores(() -> chatDatabase.deleteMessage(document.getId()));
+            }
+            return;
+        }
+        if (!document.contains(MessageSchema.FIELD_EDITED_AT)) {
+            return;
+        }
+        if (MessageSchema.isSealed(document)) {
+            // the edited text is opened on the cipher thread, then applied like a text sent in the clear
+            byte[] sealed = MessageSchema.readSealedText(document);
+            String messageId = document.getId();
+            cipherExecutor.execute(() -> {
+                String text = conversationCipher.open(sealed);
+                if (text != null) {
+                    mainHandler.post(() -> {
+                        if (!closed) {
+                            applyEditedText(messageId, text);
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        String text = MessageSchema.readText(document);
+        if (text != null) {
+            applyEditedText(document.getId(), text);
+        }
+    }
+
+    /**
+     * applyEditedText method to show and store the new text of an edited message
+     *
+     * @param messageId - the id of the edited message
+     *
+     * @param text - the new text of the message
+     */
+    private void applyEditedText(String messageId, String text) {
+        ChatMessage chatMessage = messagesById.get(messageId);
+        if (chatMessage == null) {
+            // not shown in this session, e.g. read by the background sync, only the stored copy changes
+            writeAfterStores(() -> chatDatabase.updateMessageText(messageId, text));
+            return;
+        }
+        if (chatMessage.isEdited && text.equals(chatMessage.message)) {
+            return;
+        }
+        synchronized (chatMessage) { // the precomputer may be opening the previous text
+            chatMessage.message = text;
+            chatMessage.compressedMessage = null;
+            chatMessage.encryptedMessage = null;
+        }
+        chatMessage.isEdited = true;
+        chatMessage.dateTime = null; // formatted again with the edited mark on the next bind
+        chatMessage.precomputedMessage = null; // the row shows plain text until the new text is measured
+        writeAfterStores(() -> chatDatabase.updateMessageText(chatMessage.id, text));
+        publishChanged(chatMessage);
+        messageTextPrecomputer.precompute(Collections.singletonList(chatMessage), () -> publishChanged(chatMessage));
+    }
+
+    /**
+     * removeMessage method to remove an unsent chat message from the list and the local store
+     *
+     * @param chatMessage - the unsent chat message
+     */
+    private void removeMessage(ChatMessage chatMessage) {
+        messagesById.remove(chatMessage.id);
+        pendingMessages.remove(chatMessage.id);
+        writeAfterStores(() -> chatDatabase.deleteMessage(chatMessage.id));
+        int position = MessageOrdering.indexOf(chatMessages, chatMessage, MessageOrdering.BY_DATE);
+        if (position >= 0) {
+            chatMessages.remove(position);
+            version++;
+            chatUpdates.setValue(new ChatUpdate(ChatUpdate.TYPE_REMOVED, position, 1, version));
+        }
+    }
+
+    /**
+     * publishChanged method to rebind the row of a chat message changed in place
+     * does nothing if the message is not shown yet, it is then bound with the change when added
+     *
+     * @param chatMessage - the changed chat message
+     */
+    private void publishChanged(ChatMessage chatMessage) {
+        if (closed) {
+            return;
+        }
+        int position = MessageOrdering.indexOf(chatMessages, chatMessage, MessageOrdering.BY_DATE);
+        if (position >= 0) {
+            version++;
+            chatUpdates.setValue(new ChatUpdate(ChatUpdate.TYPE_CHANGED, position, 1, version));
+        }
+    }
+}
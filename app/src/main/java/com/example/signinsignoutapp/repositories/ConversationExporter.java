@@ -0,0 +1,255 @@
+package com.example.signinsignoutapp.repositories;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ExportProgress;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ConversationExporter class to write the history of one conversation to a JSON file chosen by the user
+// the history is read from the local message store one page at a time and streamed to the file,
+// so memory use is the same for ten messages and for a million
+public class ConversationExporter {
+    private static final String TAG = "ConversationExporter";
+    public static final String MIME_TYPE = "application/json";
+    private static final int PAGE_SIZE = 500; // messages read and written per step, also the progress granularity
+
+    private final ContentResolver contentResolver;
+    private final ChatDatabase chatDatabase;
+    private final String currentUserId;
+    private final String currentUserName;
+    private final User receiverUser;
+    private final String conversationId;
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<ExportProgress> progress = new MutableLiveData<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    /**
+     * ConversationExporter constructor
+     *
+     * @param context - the current state of this application
+     *
+     * @param receiverUser - the other user of the conversation
+     */
+    public ConversationExporter(Context context, User receiverUser) {
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        this.contentResolver = context.getContentResolver();
+        this.chatDatabase = ChatDatabase.getInstance(context);
+        this.currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        this.currentUserName = preferenceManager.getString(Constants.KEY_FIRST_NAME);
+        this.receiverUser = receiverUser;
+        this.conversationId = ConversationUtils.getConversationId(currentUserId, receiverUser.id);
+    }
+
+    public LiveData<ExportProgress> getProgress() {
+        return progress;
+    }
+
+    /**
+     * getFileName method to suggest a name for the export file
+     *
+     * @return - the suggested file name
+     */
+    public String getFileName() {
+        return "chat_" + receiverUser.name.replaceAll("[^A-Za-z0-9]+", "_") + ".json";
+    }
+
+    /**
+     * export method to start writing the conversation to the file, on a background thread
+     *
+     * @param destination - the document the user picked for the export
+     *
+     * @return - false if an export is already running
+     */
+    public boolean export(Uri destination) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelled.set(false);
+        exportExecutor.execute(() -> {
+            try {
+                writeExport(destination);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * cancel method to stop the running export after the page being written, the partial file is deleted
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * close method to cancel the running export and release the background thread
+     */
+    public void close() {
+        cancel();
+        exportExecutor.shutdown();
+    }
+
+    /**
+     * writeExport method to stream the stored messages of the conversation to the file, page by page
+     * only one page of messages is held at a time, and the writer flushes through a fixed size buffer
+     *
+     * @param destination - the document the user picked for the export
+     */
+    private void writeExport(Uri destination) {
+        chatDatabase.deleteExpiredMessages(System.currentTimeMillis()); // disappeared messages are never exported
+        long totalMessages = chatDatabase.countMessages(conversationId);
+        long exportedMessages = 0;
+        publishProgress(0, totalMessages, false, false, false);
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date(); // reused for every message
+
+        try (OutputStream outputStream = contentResolver.openOutputStream(destination, "w")) {
+            if (outputStream == null) {
+                throw new IOException("Unable to open " + destination);
+            }
+            JsonWriter jsonWriter = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+            jsonWriter.setIndent("  ");
+            jsonWriter.beginObject();
+            jsonWriter.name("conversationId").value(conversationId);
+            jsonWriter.name("exportedAt").value(isoFormat.format(new Date()));
+            jsonWriter.name("participants").beginArray();
+            writeParticipant(jsonWriter, currentUserId, currentUserName);
+            writeParticipant(jsonWriter, receiverUser.id, receiverUser.name);
+            jsonWriter.endArray();
+            jsonWriter.name("messages").beginArray();
+
+            long afterTimestamp = 0;
+            String afterMessageId = null;
+            while (true) {
+                if (cancelled.get()) {
+                    jsonWriter.close();
+                    deletePartialFile(destination);
+                    publishProgress(exportedMessages, totalMessages, true, true, false);
+                    return;
+                }
+                List<ChatMessage> page = chatDatabase.getMessagesPage(conversationId, afterTimestamp,
+                        afterMessageId, PAGE_SIZE);
+                for (ChatMessage chatMessage : page) {
+                    date.setTime(chatMessage.timestamp);
+                    jsonWriter.beginObject();
+                    jsonWriter.name("id").value(chatMessage.id);
+                    jsonWriter.name("senderId").value(chatMessage.senderId);
+                    jsonWriter.name("sender").value(Objects.equals(chatMessage.senderId, currentUserId)
+                            ? currentUserName : receiverUser.name);
+                    jsonWriter.name("time").value(isoFormat.format(date));
+                    if (chatMessage.isImage) {
+                        jsonWriter.name("imagePath").value(chatMessage.imagePath);
+                    } else {
+                        jsonWriter.name("message").value(chatMessage.message); // stored inflated
+                    }
+                    if (chatMessage.isEdited) {
+                        jsonWriter.name("edited").value(true);
+                    }
+                    jsonWriter.endObject();
+                }
+                exportedMessages += page.size();
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+                ChatMessage last = page.get(page.size() - 1);
+                afterTimestamp = last.timestamp;
+                afterMessageId = last.id;
+                publishProgress(exportedMessages, Math.max(totalMessages, exportedMessages), false, false, false);
+            }
+
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+            jsonWriter.close();
+            publishProgress(exportedMessages, exportedMessages, true, false, false);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Export failed", e);
+            deletePartialFile(destination);
+            publishProgress(exportedMessages, totalMessages, true, false, true);
+        }
+    }
+
+    /**
+     * writeParticipant method to write one user of the conversation
+     *
+     * @param jsonWriter - the writer of the export
+     *
+     * @param userId - the id of the user
+     *
+     * @param name - the name of the user
+     */
+    private static void writeParticipant(JsonWriter jsonWriter, String userId, String name) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("id").value(userId);
+        jsonWriter.name("name").value(name);
+        jsonWriter.endObject();
+    }
+
+    /**
+     * deletePartialFile method to remove the file of an export that did not finish
+     *
+     * @param destination - the document the user picked for the export
+     */
+    private void deletePartialFile(Uri destination) {
+        try {
+            DocumentsContract.deleteDocument(contentResolver, destination);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to delete the partial export", e); // the provider may not support deletes
+        }
+    }
+
+    /**
+     * publishProgress method to post the progress of the export to its observers
+     *
+     * @param exportedMessages - the number of messages written so far
+     *
+     * @param totalMessages - the number of messages to write
+     *
+     * @param isFinished - true once the export stopped, for any reason
+     *
+     * @param isCancelled - true if the user cancelled the export
+     *
+     * @param isFailed - true if the file could not be written
+     */
+    private void publishProgress(long exportedMessages, long totalMessages, boolean isFinished,
+                                 boolean isCancelled, boolean isFailed) {
+        ExportProgress exportProgress = new ExportProgress();
+        exportProgress.exportedMessages = exportedMessages;
+        exportProgress.totalMessages = totalMessages;
+        exportProgress.isFinished = isFinished;
+        exportProgress.isCancelled = isCancelled;
+        exportProgress.isFailed = isFailed;
+        progress.postValue(exportProgress);
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.signinsignoutapp.repositories;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.ConversationCipher;
+import com.example.signinsignoutapp.firebase.MessageSchema;
+import com.example.signinsignoutapp.firebase.SessionKeyStore;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationStats;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageOrdering;
+import com.example.signinsignoutapp.utilities.NetworkPolicy;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ConversationPrefetcher class to pull the newest messages of the conversations the user is likely to open
+// likely conversations are ranked by how often and how recently they were used, from the local message store
+// the budget shrinks with the network, fewer and smaller pages on a metered network and none on a constrained one
+public class ConversationPrefetcher {
+    private static final String TAG = "ConversationPrefetcher";
+
+    // default prefetch budget, a few small pages per visit to the user directory
+    public static final int DEFAULT_MAX_CONVERSATIONS = 3;
+    public static final int DEFAULT_PAGE_SIZE = 30;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 10 * 60 * 1000L; // a conversation is refetched at most this often
+    private static final double RECENCY_HALF_LIFE_MS = 7 * 24 * 60 * 60 * 1000.0; // a week old chat counts half
+
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+    private final ChatDatabase chatDatabase;
+    private final PreferenceManager preferenceManager;
+    private final SessionKeyStore sessionKeyStore;
+    private final NetworkPolicy networkPolicy;
+    private final String currentUserId;
+    private final int maxConversations;
+    private final int pageSize;
+    private final long minIntervalMs;
+    // single background thread for ranking and storing, shared by all prefetches
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private static ConversationPrefetcher instance;
+
+    /**
+     * getInstance method to get the single ConversationPrefetcher of the application, with the default budget
+     * the prefetcher outlives the user directory, so pages still arriving when a chat opens are stored
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the ConversationPrefetcher
+     */
+    public static synchronized ConversationPrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConversationPrefetcher(context.getApplicationContext(), NetworkPolicy.getInstance(context),
+                    DEFAULT_MAX_CONVERSATIONS, DEFAULT_PAGE_SIZE, DEFAULT_MIN_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * ConversationPrefetcher constructor
+     *
+     * @param context - the application context
+     *
+     * @param networkPolicy - lowers the budget on slower or metered networks
+     *
+     * @param maxConversations - the maximum number of conversations prefetched per call
+     *
+     * @param pageSize - the maximum number of newest messages read per conversation
+     *
+     * @param minIntervalMs - the minimum time between two prefetches of the same conversation
+     */
+    public ConversationPrefetcher(Context context, NetworkPolicy networkPolicy, int maxConversations, int pageSize,
+                                  long minIntervalMs) {
+        chatDatabase = ChatDatabase.getInstance(context);
+        this.networkPolicy = networkPolicy;
+        preferenceManager = new PreferenceManager(context);
+        sessionKeyStore = SessionKeyStore.getInstance(context);
+        currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        this.maxConversations = maxConversations;
+        this.pageSize = pageSize;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * prefetch method to pull the newest page of the most likely conversations into the local message store
+     * runs in the background, ChatRepository then shows the page as local history when the chat opens
+     *
+     * @param userIds - the ids of the users shown in the directory, only their conversations are ranked
+     */
+    public void prefetch(Set<String> userIds) {
+        prefetchExecutor.execute(() -> {
+            int depth = Math.min(maxConversations, networkPolicy.getPrefetchDepth());
+            int limit = Math.min(pageSize, networkPolicy.getMessagePageSize());
+            if (depth == 0 || limit == 0) {
+                return; // offline or constrained, the conversation reads its messages when opened
+            }
+            for (String conversationId : rankConversations(userIds, depth)) {
+                long prefetchedAt = preferenceManager.getLong(Constants.KEY_PREFETCHED_AT + "_" + conversationId);
+                if (System.currentTimeMillis() - prefetchedAt < minIntervalMs) {
+                    continue; // fetched recently, not worth the reads
+                }
+                preferenceManager.putLong(Constants.KEY_PREFETCHED_AT + "_" + conversationId, System.currentTimeMillis());
+                fetchNewestPage(conversationId, limit);
+            }
+        });
+    }
+
+    /**
+     * recordOpened method to count whether an opened conversation had been prefetched
+     *
+     * @param conversationId - the id of the conversation the user opened
+     */
+    public void recordOpened(String conversationId) {
+        prefetchExecutor.execute(() -> {
+            String unusedKey = Constants.KEY_PREFETCH_UNUSED + "_" + conversationId;
+            String counterKey = preferenceManager.getBoolean(unusedKey)
+                    ? Constants.KEY_PREFETCH_HITS : Constants.KEY_PREFETCH_MISSES;
+            preferenceManager.putLong(counterKey, preferenceManager.getLong(counterKey) + 1);
+            preferenceManager.putBoolean(unusedKey, false);
+            Log.d(TAG, String.format("hit rate %.2f after %d reads", getHitRate(),
+                    preferenceManager.getLong(Constants.KEY_PREFETCH_READS)));
+        });
+    }
+
+    /**
+     * getHitRate method
+     *
+     * @return - the share of opened conversations that had been prefetched, 0 if none was opened yet
+     */
+    public double getHitRate() {
+        long hits = preferenceManager.getLong(Constants.KEY_PREFETCH_HITS);
+        long misses = preferenceManager.getLong(Constants.KEY_PREFETCH_MISSES);
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * rankConversations method to rank the conversations with the given users by frecency
+     * each conversation scores its message count, halved for every week since its newest message
+     *
+     * @param userIds - the ids of the users that may be ranked
+     *
+     * @param depth - the maximum number of conversations returned
+     *
+     * @return - the ids of the best ranked conversations, at most depth
+     */
+    private List<String> rankConversations(Set<String> userIds, int depth) {
+        long now = System.currentTimeMillis();
+        Map<String, Double> scores = new HashMap<>();
+        for (ConversationStats stats : chatDatabase.getConversationStats()) {
+            if (!userIds.contains(ConversationUtils.getOtherUserId(stats.conversationId, currentUserId))) {
+                continue;
+            }
+            double age = Math.max(0, now - stats.lastTimestamp);
+            scores.put(stats.conversationId, stats.messageCount * Math.pow(0.5, age / RECENCY_HALF_LIFE_MS));
+        }
+        List<String> conversationIds = new ArrayList<>(scores.keySet());
+        Collections.sort(conversationIds, (obj1, obj2) -> Double.compare(scores.get(obj2), scores.get(obj1)));
+        return conversationIds.subList(0, Math.min(depth, conversationIds.size()));
+    }
+
+    /**
+     * fetchNewestPage method to read the newest messages of a conversation from the server and store them
+     * the server is asked directly, so an offline cache never passes for the newest page
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param limit - the number of messages read
+     */
+    private void fetchNewestPage(String conversationId, int limit) {
+        database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(MessageSchema.FIELD_CONVERSATION_ID, conversationId)
+                .orderBy(MessageSchema.FIELD_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit)
+                .get(Source.SERVER)
+                .addOnSuccessListener(value -> {
+                    List<ChatMessage> chatMessages = new ArrayList<>();
+                    for (DocumentSnapshot document : value.getDocuments()) {
+                        chatMessages.add(MessageSchema.toChatMessage(document, currentUserId));
+                    }
+                    prefetchExecutor.execute(() -> storePage(conversationId, chatMessages, limit));
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "prefetch of " + conversationId + " failed", e));
+    }
+
+    /**
+     * storePage method to store a prefetched page and, when it is safe, move the high-water mark past it
+     * the mark only moves when the page holds every message after it, and the legacy messages were synced
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param chatMessages - the newest messages of the conversation, newest first
+     *
+     * @param limit - the number of messages the page was read with
+     */
+    private void storePage(String conversationId, List<ChatMessage> chatMessages, int limit) {
+        preferenceManager.putLong(Constants.KEY_PREFETCH_READS,
+                preferenceManager.getLong(Constants.KEY_PREFETCH_READS) + Math.max(1, chatMessages.size()));
+        if (chatMessages.isEmpty()) {
+            return;
+        }
+        ConversationCipher conversationCipher = new ConversationCipher(sessionKeyStore, currentUserId,
+                ConversationUtils.getOtherUserId(conversationId, currentUserId));
+        for (ChatMessage chatMessage : chatMessages) {
+            conversationCipher.open(chatMessage); // the local store holds readable text
+        }
+        chatDatabase.insertMessages(conversationId, chatMessages);
+        preferenceManager.putBoolean(Constants.KEY_PREFETCH_UNUSED + "_" + conversationId, true);
+
+        if (!preferenceManager.getBoolean(Constants.KEY_LEGACY_SYNCED + "_" + conversationId)) {
+            return;
+        }
+        String timestampKey = Constants.KEY_LAST_SEEN_TIMESTAMP + "_" + conversationId;
+        String nanosKey = Constants.KEY_LAST_SEEN_TIMESTAMP_NANOS + "_" + conversationId;
+        String messageIdKey = Constants.KEY_LAST_SEEN_MESSAGE_ID + "_" + conversationId;
+        long lastSeenTimestamp = preferenceManager.getLong(timestampKey);
+        int lastSeenNanos = (int) preferenceManager.getLong(nanosKey);
+        String lastSeenMessageId = preferenceManager.getString(messageIdKey);
+        ChatMessage newest = chatMessages.get(0);
+        ChatMessage oldest = chatMessages.get(chatMessages.size() - 1);
+        boolean wholeConversation = chatMessages.size() < limit;
+        boolean coversGap = lastSeenMessageId != null
+                && MessageOrdering.compareToMark(oldest, lastSeenTimestamp, lastSeenNanos, lastSeenMessageId) <= 0;
+        if ((wholeConversation || coversGap) && (lastSeenMessageId == null
+                || MessageOrdering.compareToMark(newest, lastSeenTimestamp, lastSeenNanos, lastSeenMessageId) > 0)) {
+            preferenceManager.putLong(timestampKey, newest.timestamp);
+            preferenceManager.putLong(nanosKey, newest.timestampNanos);
+            preferenceManager.putString(messageIdKey, newest.id);
+        }
+    }
+}
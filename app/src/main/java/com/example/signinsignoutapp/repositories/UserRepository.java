@@ -0,0 +1,375 @@
+package com.example.signinsignoutapp.repositories;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.ManagedSnapshotListener;
+import com.example.signinsignoutapp.firebase.MessageSchema;
+import com.example.signinsignoutapp.firebase.UserSchema;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.CacheRegistry;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.DirectoryCursor;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// UserRepository class owning the firestore access, the local cache, and the decoded avatars of the user directory
+public class UserRepository implements CacheRegistry.TrimmableCache {
+    private final FirebaseFirestore database = FirebaseFirestore.getInstance();
+    private final ChatDatabase chatDatabase;
+    private final PreferenceManager preferenceManager;
+    private final DirectoryCursor directoryCursor; // the directory sync state shared with the background sync
+    private final String currentUserId;
+    private final ManagedSnapshotListener directoryListener;
+    private final ManagedSnapshotListener unreadCountsListener;
+    private final ConversationPrefetcher conversationPrefetcher;
+    // single background thread for the directory cache and for decoding the avatars of the users
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final HashMap<String, Long> unreadCounts = new HashMap<>(); // sender id to unread count
+    private final Map<String, Bitmap> userImages = new HashMap<>(); // user id to decoded avatar
+    // user id to user, in document id order like the query, only touched on the decode thread
+    private final TreeMap<String, User> directory = new TreeMap<>();
+    private volatile boolean directoryLoaded; // true once the cache or the first directory snapshot is applied
+    private boolean cacheRequested;
+    private boolean imagesTrimmed; // true once the avatars were dropped under memory pressure, until decoded again
+    private boolean fullDirectoryQuery; // true if the listener reads the whole directory, before the cache is complete
+    private boolean closed;
+
+    private final MutableLiveData<List<User>> users = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> loading = new MutableLiveData<>(false);
+    private final MutableLiveData<Set<String>> unreadCountChanges = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> imagesRestored = new MutableLiveData<>();
+
+    /**
+     * UserRepository constructor
+     *
+     * @param context - the application context
+     */
+    public UserRepository(Context context) {
+        chatDatabase = ChatDatabase.getInstance(context);
+        preferenceManager = new PreferenceManager(context);
+        directoryCursor = DirectoryCursor.getInstance(context);
+        currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        conversationPrefetcher = ConversationPrefetcher.getInstance(context);
+        directoryListener = new ManagedSnapshotListener(this::getDirectoryQuery, (value, error) -> {
+            if (value == null || closed) {
+                return;
+            }
+            List<DocumentChange> documentChanges = value.getDocumentChanges();
+            boolean fullQuery = fullDirectoryQuery;
+            boolean fromServer = !value.getMetadata().isFromCache();
+            if (documentChanges.isEmpty() && directoryLoaded && !(fullQuery && fromServer)) {
+                return; // metadata only snapshot, nothing to rebind
+            }
+            decodeExecutor.execute(() -> applyDirectoryChanges(documentChanges, fullQuery, fromServer));
+        });
+        unreadCountsListener = new ManagedSnapshotListener(() -> database.collection(Constants.KEY_COLLECTION_UNREAD_COUNTERS)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, currentUserId),
+                (value, error) -> {
+                    if (value == null) {
+                        return;
+                    }
+                    Set<String> changedUserIds = new HashSet<>();
+                    for (DocumentChange documentChange : value.getDocumentChanges()) {
+                        String senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
+                        Long count = documentChange.getDocument().getLong(Constants.KEY_UNREAD_COUNT);
+                        if (documentChange.getType() == DocumentChange.Type.REMOVED || count == null) {
+                            unreadCounts.remove(senderId);
+                        } else {
+                            unreadCounts.put(senderId, count);
+                        }
+                        changedUserIds.add(senderId);
+                    }
+                    unreadCountChanges.setValue(changedUserIds);
+                });
+        CacheRegistry.getInstance().register(this);
+    }
+
+    /**
+     * getUsers method
+     *
+     * @return - the other users of the chat application, an immutable list republished on every change
+     *           once the changed avatars are decoded
+     */
+    public LiveData<List<User>> getUsers() {
+        return users;
+    }
+
+    public LiveData<Boolean> getLoading() {
+        return loading;
+    }
+
+    /**
+     * getUnreadCountChanges method
+     *
+     * @return - the ids of the users whose unread count changed in the latest snapshot
+     */
+    public LiveData<Set<String>> getUnreadCountChanges() {
+        return unreadCountChanges;
+    }
+
+    /**
+     * getImagesRestored method
+     *
+     * @return - set to true each time the avatars are decoded again after a trim, the shown rows need a rebind
+     */
+    public LiveData<Boolean> getImagesRestored() {
+        return imagesRestored;
+    }
+
+    /**
+     * getUnreadCounts method
+     *
+     * @return - the number of unread messages from each user, by user id
+     */
+    public Map<String, Long> getUnreadCounts() {
+        return unreadCounts;
+    }
+
+    /**
+     * getUserImages method
+     *
+     * @return - the decoded avatar of each user, by user id
+     */
+    public Map<String, Bitmap> getUserImages() {
+        return userImages;
+    }
+
+    /**
+     * getDirectoryQuery method to build the directory query each time the listener is attached
+     * until the local cache holds the whole directory, every user is read once
+     * afterwards only the users updated since the last one seen are read, so reopening the directory is
+     * close to free
+     * the delta starts after the same (update time, id) cursor the background sync resumes from, so the last
+     * user seen is not read again, and users changed in the same instant are told apart by their id
+     *
+     * @return - the directory query
+     */
+    private Query getDirectoryQuery() {
+        fullDirectoryQuery = !directoryCursor.isLoaded();
+        if (fullDirectoryQuery) {
+            directoryCursor.startLoad();
+            return database.collection(Constants.KEY_COLLECTION_USERS);
+        }
+        DirectoryCursor.Mark mark = directoryCursor.getMark();
+        Timestamp syncedAt = MessageSchema.toTimestamp(mark.updatedAt, mark.updatedAtNanos);
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .orderBy(Constants.KEY_UPDATED_AT)
+                .orderBy(FieldPath.documentId());
+        // no user id right after the first load, the delta then starts after its time only
+        return mark.userId != null ? query.startAfter(syncedAt, mark.userId) : query.startAfter(syncedAt);
+    }
+
+    /**
+     * loadCachedDirectory method to show the locally cached directory before any read is made
+     * runs on the decode thread, ahead of every snapshot of the directory listener
+     */
+    private void loadCachedDirectory() {
+        Map<String, Bitmap> cachedImages = new HashMap<>();
+        for (User user : chatDatabase.getUsers()) {
+            if (!currentUserId.equals(user.id)) {
+                directory.put(user.id, user);
+                cachedImages.put(user.id, ChatImageEncoder.decodeBase64Bitmap(user.image));
+            }
+        }
+        if (!directory.isEmpty()) {
+            publishDirectory(cachedImages);
+        }
+    }
+
+    /**
+     * applyDirectoryChanges method to apply the document changes of a directory snapshot
+     * runs on the decode thread, an avatar is only decoded when the user is new or the image changed
+     * the changes are written to the local cache, then the sync watermark is moved past them
+     *
+     * @param documentChanges - the changes of the snapshot
+     *
+     * @param fullQuery - true if the snapshot is of the whole directory, false if of the users updated since
+     *
+     * @param fromServer - true if the snapshot was read from the server, not only the firestore cache
+     */
+    private void applyDirectoryChanges(List<DocumentChange> documentChanges, boolean fullQuery, boolean fromServer) {
+        Map<String, Bitmap> changedImages = new HashMap<>(); // user id to the new avatar, null if removed
+        List<User> changedUsers = new ArrayList<>();
+        User newest = null; // the changed user with the newest update time, the next delta starts after it
+        for (DocumentChange documentChange : documentChanges) {
+            String userId = documentChange.getDocument().getId();
+            if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                if (!fullQuery) {
+                    continue; // a delta only drops users whose update time went back, never deleted ones
+                }
+                chatDatabase.deleteUser(userId);
+                directory.remove(userId);
+                changedImages.put(userId, null);
+                continue;
+            }
+            // a new User for every change, so the differ sees the old and new contents side by side
+            User user = UserSchema.toUser(documentChange.getDocument());
+            changedUsers.add(user); // the current user is cached too, the background sync stores every user
+            if (newest == null
+                    || DirectoryCursor.compare(user, newest.updatedAt, newest.updatedAtNanos, newest.id) > 0) {
+                newest = user;
+            }
+            if (currentUserId.equals(userId)) {
+                continue;
+            }
+            User previous = directory.put(userId, user);
+            if (previous == null || !Objects.equals(previous.image, user.image)) {
+                changedImages.put(userId, ChatImageEncoder.decodeBase64Bitmap(user.image));
+            }
+        }
+        chatDatabase.upsertUsers(changedUsers);
+        if (fullQuery && fromServer && !directoryCursor.isLoaded()) {
+            directoryCursor.completeLoad(); // the delta starts before the full read did
+        } else if (newest != null) {
+            // the same mark the background sync resumes from, only ever moved forward
+            directoryCursor.advanceMark(newest);
+        }
+        publishDirectory(changedImages);
+    }
+
+    /**
+     * publishDirectory method to publish the directory once its changed avatars are decoded
+     * runs on the decode thread
+     *
+     * @param changedImages - user id to the new avatar, null if the user was removed
+     */
+    private void publishDirectory(Map<String, Bitmap> changedImages) {
+        List<User> userList = Collections.unmodifiableList(new ArrayList<>(directory.values()));
+        boolean firstSnapshot = !directoryLoaded;
+        directoryLoaded = true;
+        // the maps are only touched on the main thread
+        mainHandler.post(() -> {
+            for (Map.Entry<String, Bitmap> entry : changedImages.entrySet()) {
+                if (entry.getValue() != null) {
+                    userImages.put(entry.getKey(), entry.getValue());
+                } else {
+                    userImages.remove(entry.getKey());
+                }
+            }
+            loading.setValue(false); // set loading to false
+            users.setValue(userList);
+        });
+        if (firstSnapshot) {
+            // warm the conversations the user is likely to open while the directory is shown
+            conversationPrefetcher.prefetch(new HashSet<>(directory.keySet()));
+        }
+    }
+
+    /**
+     * trim method overridden to drop the decoded avatars once the app is in the background
+     * the avatars stay while the directory may still be shown, they are decoded again when it is next started
+     *
+     * @param level - a ComponentCallbacks2 trim level
+     *
+     * @return - the number of bytes of the dropped avatars
+     */
+    @Override
+    public long trim(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || userImages.isEmpty()) {
+            return 0;
+        }
+        long released = 0;
+        for (Bitmap bitmap : userImages.values()) {
+            if (bitmap != null) {
+                released += bitmap.getByteCount();
+            }
+        }
+        userImages.clear();
+        imagesTrimmed = true;
+        return released;
+    }
+
+    /**
+     * restoreImages method to decode the avatars of the directory again after a trim
+     * runs on the decode thread, the rows bound while the avatars were dropped are rebound
+     */
+    private void restoreImages() {
+        Map<String, Bitmap> restoredImages = new HashMap<>();
+        for (User user : directory.values()) {
+            restoredImages.put(user.id, ChatImageEncoder.decodeBase64Bitmap(user.image));
+        }
+        mainHandler.post(() -> {
+            if (imagesTrimmed) {
+                return; // trimmed again before the decode finished, decoded on the next start
+            }
+            userImages.putAll(restoredImages); // posted in order with the directory changes, never older
+            imagesRestored.setValue(true);
+        });
+    }
+
+    /**
+     * recordOpened method to count whether the conversation with the user had been prefetched
+     *
+     * @param user - the user whose conversation is being opened
+     */
+    public void recordOpened(User user) {
+        conversationPrefetcher.recordOpened(ConversationUtils.getConversationId(currentUserId, user.id));
+    }
+
+    /**
+     * start method to listen to the user directory and the unread counters while the directory is visible
+     * the cached directory is shown first, the listener then only delivers the users that changed since
+     */
+    public void start() {
+        if (!directoryLoaded) {
+            loading.setValue(true); // set loading to true
+        }
+        if (!cacheRequested) {
+            cacheRequested = true;
+            decodeExecutor.execute(this::loadCachedDirectory);
+        }
+        if (imagesTrimmed) {
+            imagesTrimmed = false;
+            decodeExecutor.execute(this::restoreImages);
+        }
+        directoryListener.start();
+        unreadCountsListener.start();
+    }
+
+    /**
+     * stop method to stop listening while the directory is not visible
+     */
+    public void stop() {
+        directoryListener.stop();
+        unreadCountsListener.stop();
+    }
+
+    /**
+     * close method to release the listener and the background thread
+     */
+    public void close() {
+        closed = true;
+        CacheRegistry.getInstance().unregister(this);
+        stop();
+        decodeExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+}
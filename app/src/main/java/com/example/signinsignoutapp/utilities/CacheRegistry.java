@@ -0,0 +1,122 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// CacheRegistry class, the one place the in-memory caches of the app are trimmed from under memory pressure
+// ChatApplication forwards every onTrimMemory and onLowMemory call, each registered cache decides how much
+// to let go of at that level, and the bytes released are added up so the effect of a trim is visible in the log
+// caches register while their owner is alive and unregister when it is closed, trims run on the main thread
+public class CacheRegistry {
+    private static final String TAG = "CacheRegistry";
+    private static final int STRING_OVERHEAD_BYTES = 40; // object header, fields and array header of a String
+
+    // TrimmableCache interface implemented by every cache that can give memory back
+    public interface TrimmableCache {
+
+        /**
+         * trim method to release memory for the given trim level
+         *
+         * @param level - a ComponentCallbacks2 trim level, the higher the level the more should be released
+         *
+         * @return - the estimated number of bytes released
+         */
+        long trim(int level);
+    }
+
+    private static CacheRegistry instance;
+
+    private final List<TrimmableCache> caches = new CopyOnWriteArrayList<>();
+    private long releasedBytes; // total released since the process started
+
+    /**
+     * getInstance method to get the single registry of this process
+     *
+     * @return - the CacheRegistry
+     */
+    public static synchronized CacheRegistry getInstance() {
+        if (instance == null) {
+            instance = new CacheRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * register method to trim a cache from now on
+     *
+     * @param cache - the cache, registered once
+     */
+    public void register(TrimmableCache cache) {
+        if (!caches.contains(cache)) {
+            caches.add(cache);
+        }
+    }
+
+    /**
+     * unregister method to stop trimming a cache, used when its owner is closed
+     *
+     * @param cache - the cache
+     */
+    public void unregister(TrimmableCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * trim method to ask every registered cache to release memory
+     *
+     * @param level - a ComponentCallbacks2 trim level
+     *
+     * @return - the estimated number of bytes released by all caches
+     */
+    public long trim(int level) {
+        long released = 0;
+        for (TrimmableCache cache : caches) {
+            released += cache.trim(level);
+        }
+        releasedBytes += released;
+        Log.d(TAG, "trim level " + level + " released " + (released / 1024) + " KB from " + caches.size()
+                + " caches, " + (releasedBytes / 1024) + " KB in total");
+        return released;
+    }
+
+    /**
+     * onLowMemory method to trim as much as possible, the system is about to kill background processes
+     *
+     * @return - the estimated number of bytes released by all caches
+     */
+    public long onLowMemory() {
+        return trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * getReleasedBytes method
+     *
+     * @return - the estimated number of bytes released by every trim since the process started
+     */
+    public long getReleasedBytes() {
+        return releasedBytes;
+    }
+
+    /**
+     * estimateBytes method to estimate the heap taken by a cached string
+     *
+     * @param text - the string, may be null
+     *
+     * @return - the estimated size in bytes, two per character plus the object overhead, 0 if null
+     */
+    public static long estimateBytes(String text) {
+        return text == null ? 0 : STRING_OVERHEAD_BYTES + 2L * text.length();
+    }
+
+    /**
+     * getCacheCount method
+     *
+     * @return - the number of registered caches
+     */
+    public int getCacheCount() {
+        return caches.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ChatImageEncoder class
+public class ChatImageEncoder {
+
+    private static final int FULL_IMAGE_MAX_SIZE = 1280; // longest side of the uploaded image in pixels
+    private static final int FULL_IMAGE_QUALITY = 80;
+    private static final int THUMBNAIL_WIDTH = 24; // the inline thumbnail only needs to hint at the image
+    private static final int THUMBNAIL_QUALITY = 40;
+
+    // number of Base64 images decoded so far, lets tests hold bind passes to a decode budget
+    private static final AtomicInteger base64Decodes = new AtomicInteger();
+
+    /**
+     * decodeBase64Bitmap method to convert an encoded image to a bitmap
+     * every Base64 image of the app is decoded here, never while binding a row
+     *
+     * @param encodedImage - the Base64 encoded image
+     *
+     * @return - the converted encodedImage in bitmap form, or null if it is missing or not an image
+     */
+    public static Bitmap decodeBase64Bitmap(String encodedImage) {
+        if (encodedImage == null) {
+            return null;
+        }
+        base64Decodes.incrementAndGet();
+        ChatTrace.begin(ChatTrace.DECODE_BASE64);
+        try {
+            byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT); // the bytes of the encodedImage
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length); // newly converted bitmap
+        } finally {
+            ChatTrace.end();
+        }
+    }
+
+    /**
+     * getBase64DecodeCount method
+     *
+     * @return - the number of Base64 images decoded so far
+     */
+    @VisibleForTesting
+    public static int getBase64DecodeCount() {
+        return base64Decodes.get();
+    }
+
+    /**
+     * decodeSampledBitmap method to decode image bytes no larger than needed
+     *
+     * @param bytes - the encoded image bytes
+     *
+     * @param maxSize - the longest side the bitmap needs, in pixels
+     *
+     * @return - the decoded bitmap, or null if the bytes are not an image
+     */
+    public static Bitmap decodeSampledBitmap(byte[] bytes, int maxSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inSampleSize = calculateInSampleSize(options, maxSize);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    /**
+     * decodeSampledBitmap method to decode an image file no larger than needed
+     *
+     * @param path - the path of the image file
+     *
+     * @param maxSize - the longest side the bitmap needs, in pixels
+     *
+     * @return - the decoded bitmap, or null if the file is not an image
+     */
+    public static Bitmap decodeSampledBitmap(String path, int maxSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        options.inSampleSize = calculateInSampleSize(options, maxSize);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * encodeFullImage method to compress the image that is uploaded to firebase storage
+     *
+     * @param bitmap - the image picked by the user
+     *
+     * @return - the JPEG bytes of the image, scaled down to FULL_IMAGE_MAX_SIZE
+     */
+    public static byte[] encodeFullImage(Bitmap bitmap) {
+        float scale = Math.min(1f, (float) FULL_IMAGE_MAX_SIZE / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap,
+                Math.round(bitmap.getWidth() * scale), Math.round(bitmap.getHeight() * scale), true);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        scaledBitmap.compress(Bitmap.CompressFormat.JPEG, FULL_IMAGE_QUALITY, byteArrayOutputStream);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * encodeThumbnail method to create the tiny thumbnail stored inline in the message document
+     *
+     * @param bitmap - the image picked by the user
+     *
+     * @return - the Base64 string of the thumbnail, a few hundred bytes
+     */
+    public static String encodeThumbnail(Bitmap bitmap) {
+        int thumbnailHeight = Math.max(1, bitmap.getHeight() * THUMBNAIL_WIDTH / bitmap.getWidth());
+        Bitmap thumbnailBitmap = Bitmap.createScaledBitmap(bitmap, THUMBNAIL_WIDTH, thumbnailHeight, true);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        thumbnailBitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, byteArrayOutputStream);
+        return Base64.encodeToString(byteArrayOutputStream.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * calculateInSampleSize method to find the largest power of two that keeps the image above maxSize
+     *
+     * @param options - the options holding the decoded image bounds
+     *
+     * @param maxSize - the longest side the bitmap needs, in pixels
+     *
+     * @return - the inSampleSize to decode with
+     */
+    private static int calculateInSampleSize(BitmapFactory.Options options, int maxSize) {
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        int inSampleSize = 1;
+        while (longestSide / (inSampleSize * 2) >= maxSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
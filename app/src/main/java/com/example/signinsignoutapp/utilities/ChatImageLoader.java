@@ -0,0 +1,213 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.google.firebase.storage.FileDownloadTask;
+import com.google.firebase.storage.FirebaseStorage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ChatImageLoader class
+// on a constrained network only images already downloaded are shown in full, the others keep their inline thumbnail
+// the decoded images are trimmed under memory pressure, the downloaded files stay so an image is decoded again, not downloaded
+public class ChatImageLoader implements CacheRegistry.TrimmableCache {
+    private static final String TAG = "ChatImageLoader";
+
+    private final FirebaseStorage storage = FirebaseStorage.getInstance();
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final NetworkPolicy networkPolicy;
+    private final File cacheDir; // downloaded images, so an image is only downloaded once
+    private final LruCache<String, Bitmap> bitmapCache; // decoded images, keyed by storage path
+    private final int targetSize; // the longest side an image is decoded to
+
+    /**
+     * ChatImageLoader constructor
+     *
+     * @param context - the current state of this application
+     */
+    public ChatImageLoader(Context context) {
+        networkPolicy = NetworkPolicy.getInstance(context);
+        cacheDir = new File(context.getCacheDir(), Constants.KEY_STORAGE_CHAT_IMAGES);
+        cacheDir.mkdirs();
+        // image messages take 60% of the screen width
+        targetSize = context.getResources().getDisplayMetrics().widthPixels * 6 / 10;
+        // use an eighth of the available memory for decoded images
+        bitmapCache = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        CacheRegistry.getInstance().register(this);
+    }
+
+    /**
+     * trim method overridden to shrink the decoded images, the least recently shown first
+     * half of the cache goes under moderate pressure, three quarters when low, all of it when critical
+     * or when the conversation is no longer visible
+     *
+     * @param level - a ComponentCallbacks2 trim level
+     *
+     * @return - the number of bytes of decoded images removed from the cache
+     */
+    @Override
+    public long trim(int level) {
+        int before = bitmapCache.size(); // in bytes, see sizeOf
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            bitmapCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            bitmapCache.trimToSize(bitmapCache.maxSize() / 4);
+        } else {
+            bitmapCache.trimToSize(bitmapCache.maxSize() / 2);
+        }
+        return before - bitmapCache.size();
+    }
+
+    /**
+     * load method to display an image message, thumbnail first and then the full image
+     *
+     * @param imagePath - the firebase storage path of the full image
+     *
+     * @param thumbnail - the inline thumbnail of the image, may be null
+     *
+     * @param imageView - the ImageView of the message item
+     *
+     * @return - the pending Request to cancel when the view is recycled, null if the image was cached
+     */
+    public Request load(String imagePath, Bitmap thumbnail, ImageView imageView) {
+        Bitmap cachedBitmap = bitmapCache.get(imagePath);
+        if (cachedBitmap != null) {
+            imageView.setImageBitmap(cachedBitmap);
+            return null;
+        }
+        imageView.setImageBitmap(thumbnail); // show the thumbnail until the full image is decoded
+        Request request = new Request(imagePath, imageView);
+        request.start();
+        return request;
+    }
+
+    /**
+     * putImage method to store the bytes of an image the user just sent
+     * the sender then never downloads their own image again
+     *
+     * @param imagePath - the firebase storage path of the image
+     *
+     * @param bytes - the encoded image bytes
+     */
+    public void putImage(String imagePath, byte[] bytes) {
+        try (FileOutputStream outputStream = new FileOutputStream(getCacheFile(imagePath))) {
+            outputStream.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache the sent image", e); // it is downloaded again when shown
+        }
+    }
+
+    /**
+     * shutdown method to stop decoding images, pending requests are dropped
+     */
+    public void shutdown() {
+        CacheRegistry.getInstance().unregister(this);
+        bitmapCache.evictAll();
+        decodeExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * getCacheFile method to get the local file of a storage path
+     *
+     * @param imagePath - the firebase storage path of the image
+     *
+     * @return - the file the image is downloaded to
+     */
+    private File getCacheFile(String imagePath) {
+        return new File(cacheDir, imagePath.replace('/', '_'));
+    }
+
+    // Request class for loading one full image into one ImageView
+    public class Request {
+        private final String imagePath;
+        private final ImageView imageView;
+        private FileDownloadTask downloadTask;
+        private volatile boolean cancelled;
+
+        /**
+         * Request constructor
+         *
+         * @param imagePath - the firebase storage path of the full image
+         *
+         * @param imageView - the ImageView the image is displayed in
+         */
+        Request(String imagePath, ImageView imageView) {
+            this.imagePath = imagePath;
+            this.imageView = imageView;
+        }
+
+        /**
+         * start method to decode the cached image, or download it first when it is not cached
+         * nothing is downloaded on a constrained network, the image is loaded when its row is bound again
+         */
+        void start() {
+            File file = getCacheFile(imagePath);
+            if (file.exists()) {
+                decode(file);
+                return;
+            }
+            if (!networkPolicy.isFullImageAllowed()) {
+                return; // the thumbnail stays
+            }
+            // download to a temporary file so a cancelled download never leaves a broken image
+            File tempFile = new File(file.getPath() + ".tmp");
+            downloadTask = storage.getReference(imagePath).getFile(tempFile);
+            downloadTask.addOnSuccessListener(taskSnapshot -> {
+                if (tempFile.renameTo(file) && !cancelled) {
+                    decode(file);
+                }
+            }).addOnFailureListener(e -> tempFile.delete());
+        }
+
+        /**
+         * decode method to decode the image file on a background thread and display it
+         *
+         * @param file - the downloaded image file
+         */
+        private void decode(File file) {
+            decodeExecutor.execute(() -> {
+                if (cancelled) {
+                    return;
+                }
+                Bitmap bitmap = ChatImageEncoder.decodeSampledBitmap(file.getPath(), targetSize);
+                if (bitmap == null) {
+                    return;
+                }
+                bitmapCache.put(imagePath, bitmap);
+                mainHandler.post(() -> {
+                    if (!cancelled) {
+                        imageView.setImageBitmap(bitmap);
+                    }
+                });
+            });
+        }
+
+        /**
+         * cancel method to stop the download and drop the result, called when the view is recycled
+         */
+        public void cancel() {
+            cancelled = true;
+            if (downloadTask != null && downloadTask.isInProgress()) {
+                downloadTask.cancel();
+            }
+        }
+    }
+}
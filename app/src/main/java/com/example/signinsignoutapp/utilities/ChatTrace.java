@@ -0,0 +1,78 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.os.Build;
+
+import androidx.tracing.Trace;
+
+// ChatTrace class to mark the stages of the chat pipeline in a system trace, e.g. one recorded with Perfetto
+// every section name is kept here, so trace queries and the code never disagree on a name
+// while tracing is off a section costs the platform's enabled check, labels with a count are never built
+public class ChatTrace {
+    public static final String SNAPSHOT = "Chat:snapshot"; // a snapshot listener callback
+    public static final String MAP = "Chat:map"; // a document mapped to ChatMessage
+    public static final String SORT = "Chat:sort"; // messages merged or moved in the sorted list
+    public static final String FORMAT = "Chat:format"; // a message time formatted
+    public static final String PRECOMPUTE = "Chat:precompute"; // a batch of messages measured off the main thread
+    public static final String DECODE_BASE64 = "Chat:decodeBase64"; // a Base64 image decoded
+    public static final String BIND_MESSAGE = "ChatAdapter:bind";
+    public static final String BIND_USER = "UsersAdapter:bind";
+
+    // async sections, they end on a later callback and may overlap each other
+    public static final String SEND = "Chat:send"; // from the send tap to the server echo of the message
+    public static final String SIGN_IN = "Auth:signIn"; // the user query of the sign in
+    public static final String SIGN_UP = "Auth:signUp"; // the user document write of the sign up
+
+    /**
+     * begin method to open a section on the current thread, it must be closed by end on the same thread
+     *
+     * @param section - the name of the section, one of the constants above
+     */
+    public static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    /**
+     * begin method to open a section labelled with the number of items it handles
+     * the label is only built while tracing is on, and only from Android 10, where the check is a plain call
+     *
+     * @param section - the name of the section, one of the constants above
+     *
+     * @param count - the number of items, e.g. documents or messages
+     */
+    public static void begin(String section, int count) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Trace.isEnabled()) {
+            Trace.beginSection(section + " " + count);
+        } else {
+            Trace.beginSection(section); // keeps begin and end paired if tracing starts before end
+        }
+    }
+
+    /**
+     * end method to close the innermost section opened on the current thread
+     */
+    public static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * beginAsync method to open a section that ends on another thread or callback
+     *
+     * @param section - the name of the section, one of the async constants above
+     *
+     * @param id - tells apart overlapping sections of the same name, e.g. the message id
+     */
+    public static void beginAsync(String section, String id) {
+        Trace.beginAsyncSection(section, id.hashCode());
+    }
+
+    /**
+     * endAsync method to close a section opened by beginAsync
+     *
+     * @param section - the name the section was opened with
+     *
+     * @param id - the id the section was opened with
+     */
+    public static void endAsync(String section, String id) {
+        Trace.endAsyncSection(section, id.hashCode());
+    }
+}
@@ -16,8 +16,43 @@ public class Constants {
     public static final String KEY_FCM_TOKEN = "fcmToken";
     public static final String KEY_USER = "user";
     public static final String KEY_COLLECTION_CHAT = "chat";
+    public static final String KEY_COLLECTION_CHAT_BUCKETS = "chatBuckets";
     public static final String KEY_SENDER_ID = "senderId";
     public static final String KEY_RECEIVER_ID = "receiverId";
     public static final String KEY_MESSAGE = "message";
     public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_MESSAGE_TYPE = "type";
+    public static final String KEY_IMAGE_PATH = "imagePath";
+    public static final String KEY_THUMBNAIL = "thumbnail";
+    public static final String KEY_LEGACY_SYNCED = "legacySynced";
+    public static final String KEY_COLLECTION_UNREAD_COUNTERS = "unreadCounters";
+    public static final String KEY_UNREAD_COUNT = "count";
+    public static final String KEY_LAST_SEEN_TIMESTAMP = "lastSeenTimestamp";
+    public static final String KEY_LAST_SEEN_TIMESTAMP_NANOS = "lastSeenTimestampNanos";
+    public static final String KEY_LAST_SEEN_MESSAGE_ID = "lastSeenMessageId";
+    public static final String KEY_BUCKETS_SYNCED_AT = "bucketsSyncedAt";
+    public static final String KEY_EDITS_SYNCED_AT = "editsSyncedAt";
+    public static final String KEY_MESSAGE_TTL = "messageTtl";
+    public static final String KEY_UPDATED_AT = "updatedAt";
+    public static final String KEY_PUBLIC_KEY = "publicKey";
+    public static final String KEY_DIRECTORY_LOADED = "directoryLoaded";
+    public static final String KEY_DIRECTORY_SYNCED_AT = "directorySyncedAt";
+    public static final String KEY_DIRECTORY_SYNCED_AT_NANOS = "directorySyncedAtNanos";
+    public static final String KEY_DIRECTORY_CURSOR = "directoryCursor";
+    public static final String KEY_DIRECTORY_LOAD_CURSOR = "directoryLoadCursor";
+    public static final String KEY_DIRECTORY_LOAD_STARTED_AT = "directoryLoadStartedAt";
+    public static final String KEY_PREFETCHED_AT = "prefetchedAt";
+    public static final String KEY_PREFETCH_UNUSED = "prefetchUnused";
+    public static final String KEY_PREFETCH_HITS = "prefetchHits";
+    public static final String KEY_PREFETCH_MISSES = "prefetchMisses";
+    public static final String KEY_PREFETCH_READS = "prefetchReads";
+    public static final String KEY_BROADCAST_ID = "broadcastId";
+    public static final String KEY_BROADCAST_MESSAGE = "broadcastMessage";
+    public static final String KEY_BROADCAST_RECIPIENTS = "broadcastRecipients";
+    public static final String KEY_BROADCAST_TOTAL = "broadcastTotal";
+
+    // final constants for message types and firebase storage folders
+    public static final String MESSAGE_TYPE_TEXT = "text";
+    public static final String MESSAGE_TYPE_IMAGE = "image";
+    public static final String KEY_STORAGE_CHAT_IMAGES = "chat_images";
 }
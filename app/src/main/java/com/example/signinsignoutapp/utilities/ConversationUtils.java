@@ -0,0 +1,75 @@
+package com.example.signinsignoutapp.utilities;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// ConversationUtils class
+public class ConversationUtils {
+
+    // one shared copy of each user id, every message of a conversation points at the same two strings
+    private static final ConcurrentHashMap<String, String> USER_IDS = new ConcurrentHashMap<>();
+
+    /**
+     * getConversationId method to get the id shared by both users of a one-to-one conversation
+     * the smaller user id always comes first so both users compute the same id
+     *
+     * @param firstUserId - the id of one user in the conversation
+     *
+     * @param secondUserId - the id of the other user in the conversation
+     *
+     * @return - the conversation id
+     */
+    public static String getConversationId(String firstUserId, String secondUserId) {
+        if (firstUserId.compareTo(secondUserId) < 0) {
+            return firstUserId + "_" + secondUserId;
+        } else {
+            return secondUserId + "_" + firstUserId;
+        }
+    }
+
+    /**
+     * getOtherUserId method to get the id of the other user of a one-to-one conversation
+     *
+     * @param conversationId - the id of the conversation
+     *
+     * @param userId - the id of one user in the conversation
+     *
+     * @return - the id of the other user in the conversation
+     */
+    public static String getOtherUserId(String conversationId, String userId) {
+        if (conversationId.startsWith(userId + "_")) {
+            return conversationId.substring(userId.length() + 1);
+        } else {
+            return conversationId.substring(0, conversationId.length() - userId.length() - 1);
+        }
+    }
+
+    /**
+     * getUnreadCounterId method to get the id of the unread counter document of one recipient
+     * each user of a conversation has their own counter, so the two never contend
+     *
+     * @param receiverId - the id of the user the unread messages were sent to
+     *
+     * @param senderId - the id of the user who sent the unread messages
+     *
+     * @return - the unread counter document id
+     */
+    public static String getUnreadCounterId(String receiverId, String senderId) {
+        return receiverId + "_" + senderId;
+    }
+
+    /**
+     * internUserId method to get the shared copy of a user id read from a document or the local store
+     * user ids are few, so the pool is never trimmed
+     *
+     * @param userId - the user id, may be null
+     *
+     * @return - the shared copy of the user id, or null
+     */
+    public static String internUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        String interned = USER_IDS.putIfAbsent(userId, userId);
+        return interned != null ? interned : userId;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.content.Context;
+
+import com.example.signinsignoutapp.models.User;
+
+// DirectoryCursor class, the one owner of the directory sync state shared by UserRepository and SyncWorker
+// the first load pages through every user by id with its own cursor, afterwards deltas start after a mark of
+// (update time, nanoseconds, user id), the two never share a key so neither can be read as the other
+// both run on their own threads, so every read and write goes through this class under one lock,
+// and the mark only ever moves forward, a slower writer can never take it back past users already read
+public class DirectoryCursor {
+    // the first full load starts the delta this far back, to cover writes made while it ran
+    public static final long CLOCK_MARGIN_MS = 5 * 60 * 1000L;
+
+    // Mark class, the delta mark, users changed after it are read by the next delta
+    public static class Mark {
+        public long updatedAt; // epoch milliseconds
+        public int updatedAtNanos; // nanoseconds past the millisecond of updatedAt
+        public String userId; // breaks ties of the same update time, null right after the first load
+    }
+
+    private static DirectoryCursor instance;
+
+    private final PreferenceManager preferenceManager;
+
+    /**
+     * getInstance method to get the DirectoryCursor of the application
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the DirectoryCursor
+     */
+    public static synchronized DirectoryCursor getInstance(Context context) {
+        if (instance == null) {
+            instance = new DirectoryCursor(new PreferenceManager(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /**
+     * DirectoryCursor constructor
+     *
+     * @param preferenceManager - the preferences the state is kept in
+     */
+    private DirectoryCursor(PreferenceManager preferenceManager) {
+        this.preferenceManager = preferenceManager;
+    }
+
+    /**
+     * isLoaded method
+     *
+     * @return - true once the first load of the whole directory is complete, deltas are read from then on
+     */
+    public synchronized boolean isLoaded() {
+        return preferenceManager.getBoolean(Constants.KEY_DIRECTORY_LOADED);
+    }
+
+    /**
+     * startLoad method to note when a read of the whole directory started
+     * the earliest start of the first load is kept, whichever reader started it
+     */
+    public synchronized void startLoad() {
+        if (!isLoaded() && preferenceManager.getLong(Constants.KEY_DIRECTORY_LOAD_STARTED_AT) == 0) {
+            preferenceManager.putLong(Constants.KEY_DIRECTORY_LOAD_STARTED_AT, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * getLoadCursor method
+     *
+     * @return - the id of the last user read by the paged first load, null if none was read yet
+     */
+    public synchronized String getLoadCursor() {
+        return preferenceManager.getString(Constants.KEY_DIRECTORY_LOAD_CURSOR);
+    }
+
+    /**
+     * putLoadCursor method to store the last user read by the paged first load
+     * ignored once the first load is complete
+     *
+     * @param userId - the id of the last user of the page
+     */
+    public synchronized void putLoadCursor(String userId) {
+        if (!isLoaded()) {
+            preferenceManager.putString(Constants.KEY_DIRECTORY_LOAD_CURSOR, userId);
+        }
+    }
+
+    /**
+     * completeLoad method to end the first load, the delta mark starts before the load did
+     * only the first reader to complete sets the mark, a later one leaves it where deltas moved it
+     */
+    public synchronized void completeLoad() {
+        if (isLoaded()) {
+            return;
+        }
+        long startedAt = preferenceManager.getLong(Constants.KEY_DIRECTORY_LOAD_STARTED_AT);
+        preferenceManager.putLong(Constants.KEY_DIRECTORY_SYNCED_AT,
+                (startedAt > 0 ? startedAt : System.currentTimeMillis()) - CLOCK_MARGIN_MS);
+        preferenceManager.putLong(Constants.KEY_DIRECTORY_SYNCED_AT_NANOS, 0);
+        preferenceManager.putString(Constants.KEY_DIRECTORY_CURSOR, null);
+        preferenceManager.putString(Constants.KEY_DIRECTORY_LOAD_CURSOR, null);
+        preferenceManager.putLong(Constants.KEY_DIRECTORY_LOAD_STARTED_AT, 0);
+        preferenceManager.putBoolean(Constants.KEY_DIRECTORY_LOADED, true);
+    }
+
+    /**
+     * getMark method
+     *
+     * @return - the delta mark, only meaningful once the first load is complete
+     */
+    public synchronized Mark getMark() {
+        Mark mark = new Mark();
+        mark.updatedAt = preferenceManager.getLong(Constants.KEY_DIRECTORY_SYNCED_AT);
+        mark.updatedAtNanos = (int) preferenceManager.getLong(Constants.KEY_DIRECTORY_SYNCED_AT_NANOS);
+        mark.userId = preferenceManager.getString(Constants.KEY_DIRECTORY_CURSOR);
+        return mark;
+    }
+
+    /**
+     * advanceMark method to move the delta mark to a user read by a delta, if the user is after it
+     *
+     * @param user - the newest user read
+     *
+     * @return - true if the mark moved, false if the first load is not complete or the mark is already
+     *           past the user
+     */
+    public synchronized boolean advanceMark(User user) {
+        Mark mark = getMark();
+        if (!isLoaded() || compare(user, mark.updatedAt, mark.updatedAtNanos, mark.userId) <= 0) {
+            return false;
+        }
+        preferenceManager.putLong(Constants.KEY_DIRECTORY_SYNCED_AT, user.updatedAt);
+        preferenceManager.putLong(Constants.KEY_DIRECTORY_SYNCED_AT_NANOS, user.updatedAtNanos);
+        preferenceManager.putString(Constants.KEY_DIRECTORY_CURSOR, user.id);
+        return true;
+    }
+
+    /**
+     * compare method to order a user against a directory cursor in the order of the server
+     * the nanoseconds past the millisecond come next, then the user id breaks ties
+     *
+     * @param user - the user
+     *
+     * @param updatedAt - the epoch milliseconds of the cursor
+     *
+     * @param nanos - the nanoseconds past the millisecond of the cursor
+     *
+     * @param userId - the user id of the cursor, null if the cursor is a time only
+     *
+     * @return - negative, zero, or positive as the user changed before, with, or after the cursor
+     */
+    public static int compare(User user, long updatedAt, int nanos, String userId) {
+        int compare = Long.compare(user.updatedAt, updatedAt);
+        if (compare == 0) {
+            compare = Integer.compare(user.updatedAtNanos, nanos);
+        }
+        if (compare != 0) {
+            return compare;
+        }
+        // a query starting after a time only skips the users of that exact time, like it does here
+        return userId == null ? -1 : user.id.compareTo(userId);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.signinsignoutapp.utilities;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// ExpiryQueue class, a min-heap of the disappearing chat messages ordered by expiry time
+// the next message to expire is always at the head, so a timer only ever waits for one message,
+// adding a message and removing an expired one cost O(log n), never a scan of the conversation
+// messages removed for another reason, e.g. unsent, are left in the heap and skipped by the caller
+public class ExpiryQueue {
+
+    private static final Comparator<ChatMessage> BY_EXPIRY = (obj1, obj2) -> {
+        int compare = Long.compare(obj1.expiresAt, obj2.expiresAt);
+        return compare != 0 ? compare : obj1.id.compareTo(obj2.id);
+    };
+
+    private final PriorityQueue<ChatMessage> heap = new PriorityQueue<>(16, BY_EXPIRY);
+
+    /**
+     * add method to track a disappearing chat message
+     *
+     * @param chatMessage - the chat message, ignored if it never expires
+     */
+    public void add(ChatMessage chatMessage) {
+        if (chatMessage.expiresAt > 0) {
+            heap.add(chatMessage);
+        }
+    }
+
+    /**
+     * getNextExpiry method
+     *
+     * @return - the expiry time of the next message to expire, 0 if no message is tracked
+     */
+    public long getNextExpiry() {
+        ChatMessage next = heap.peek();
+        return next != null ? next.expiresAt : 0;
+    }
+
+    /**
+     * pollExpired method to remove and return every tracked message whose expiry time has passed
+     *
+     * @param now - the current time in epoch milliseconds
+     *
+     * @return - the expired chat messages, soonest first
+     */
+    public List<ChatMessage> pollExpired(long now) {
+        List<ChatMessage> expiredMessages = new ArrayList<>();
+        while (!heap.isEmpty() && heap.peek().expiresAt <= now) {
+            expiredMessages.add(heap.poll());
+        }
+        return expiredMessages;
+    }
+
+    /**
+     * size method
+     *
+     * @return - the number of tracked messages, including the ones the caller already removed
+     */
+    public int size() {
+        return heap.size();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.view.Choreographer;
+
+// FrameCoalescer class for running a task at most once per frame, however often it is requested
+// must only be used from the main thread
+public class FrameCoalescer implements Choreographer.FrameCallback {
+    private final Runnable task;
+    private boolean scheduled;
+
+    /**
+     * FrameCoalescer constructor
+     *
+     * @param task - the task to run at the start of the next frame
+     */
+    public FrameCoalescer(Runnable task) {
+        this.task = task;
+    }
+
+    /**
+     * schedule method to run the task at the start of the next frame
+     * requests made before the frame starts are coalesced into that single run
+     */
+    public void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * cancel method to drop a scheduled run
+     */
+    public void cancel() {
+        if (scheduled) {
+            scheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * doFrame method overridden to run the task, before the frame is laid out and drawn
+     *
+     * @param frameTimeNanos The time in nanoseconds when the frame started being rendered
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        task.run();
+    }
+}
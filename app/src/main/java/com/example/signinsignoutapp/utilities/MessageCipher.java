@@ -0,0 +1,159 @@
+package com.example.signinsignoutapp.utilities;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// MessageCipher class for sealing message text with AES-GCM under a per-conversation session key
+// a sealed message is self-describing: format version, flags, and key epoch, then the nonce and the ciphertext
+// the header is authenticated with the text, so neither the epoch nor the flags can be changed unnoticed
+// Cipher and Mac are costly to look up, so each thread keeps one of each, like MessageTimeFormatter
+public class MessageCipher {
+    public static final String CODEC_SEALED = "aesgcm"; // codec marker of a sealed text field
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte FLAG_DEFLATED = 1; // the sealed bytes are deflate-compressed text
+    private static final int HEADER_LENGTH = 6; // version, flags, epoch
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int KEY_LENGTH = 32; // AES-256
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Mac> HMAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance("HmacSHA256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * seal method to encrypt and authenticate the text of a message
+     *
+     * @param key - the session key of the conversation for the epoch
+     *
+     * @param epoch - the epoch of the session key, stored in the clear so the reader can derive the same key
+     *
+     * @param plaintext - the UTF-8 or deflate-compressed text
+     *
+     * @param deflated - true if the plaintext is deflate-compressed
+     *
+     * @return - the sealed message
+     */
+    public static byte[] seal(SecretKey key, int epoch, byte[] plaintext, boolean deflated) {
+        byte[] sealed = new byte[HEADER_LENGTH + NONCE_LENGTH + plaintext.length + TAG_BITS / 8];
+        ByteBuffer.wrap(sealed).put(FORMAT_VERSION).put(deflated ? FLAG_DEFLATED : 0).putInt(epoch);
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce); // random nonces are safe for far more messages than one epoch sees
+        System.arraycopy(nonce, 0, sealed, HEADER_LENGTH, NONCE_LENGTH);
+        try {
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(sealed, 0, HEADER_LENGTH);
+            cipher.doFinal(plaintext, 0, plaintext.length, sealed, HEADER_LENGTH + NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return sealed;
+    }
+
+    /**
+     * open method to decrypt a sealed message and check that it was not changed
+     *
+     * @param key - the session key of the conversation for the epoch of the message
+     *
+     * @param sealed - the sealed message
+     *
+     * @return - the plaintext, or null if the message is malformed, changed, or sealed under another key
+     */
+    public static byte[] open(SecretKey key, byte[] sealed) {
+        if (getEpoch(sealed) < 0) {
+            return null;
+        }
+        try {
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, HEADER_LENGTH, NONCE_LENGTH));
+            cipher.updateAAD(sealed, 0, HEADER_LENGTH);
+            return cipher.doFinal(sealed, HEADER_LENGTH + NONCE_LENGTH, sealed.length - HEADER_LENGTH - NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * getEpoch method to read the key epoch of a sealed message
+     *
+     * @param sealed - the sealed message
+     *
+     * @return - the epoch, or -1 if the message is malformed
+     */
+    public static int getEpoch(byte[] sealed) {
+        if (sealed == null || sealed.length < HEADER_LENGTH + NONCE_LENGTH + TAG_BITS / 8
+                || sealed[0] != FORMAT_VERSION) {
+            return -1;
+        }
+        return ByteBuffer.wrap(sealed, 2, 4).getInt();
+    }
+
+    /**
+     * isDeflated method
+     *
+     * @param sealed - the sealed message
+     *
+     * @return - true if the plaintext of the sealed message is deflate-compressed
+     */
+    public static boolean isDeflated(byte[] sealed) {
+        return (sealed[1] & FLAG_DEFLATED) != 0;
+    }
+
+    /**
+     * deriveKey method to derive a session key from a shared secret with HKDF-SHA256 (RFC 5869)
+     *
+     * @param sharedSecret - the input key material, e.g. an ECDH shared secret
+     *
+     * @param salt - binds the key to its context, e.g. the conversation id
+     *
+     * @param info - tells apart the keys derived from the same secret, e.g. the epoch
+     *
+     * @return - the AES-256 key
+     */
+    public static SecretKey deriveKey(byte[] sharedSecret, byte[] salt, byte[] info) {
+        try {
+            Mac mac = HMAC.get();
+            mac.init(new SecretKeySpec(salt, "HmacSHA256"));
+            byte[] pseudoRandomKey = mac.doFinal(sharedSecret);
+            mac.init(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"));
+            mac.update(info);
+            mac.update((byte) 1);
+            byte[] okm = mac.doFinal(); // one block is the 32 bytes of an AES-256 key
+            SecretKey key = new SecretKeySpec(okm, 0, KEY_LENGTH, "AES");
+            Arrays.fill(pseudoRandomKey, (byte) 0);
+            Arrays.fill(okm, (byte) 0);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.signinsignoutapp.utilities;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// MessageCompression class for storing long message text deflate-compressed
+// short messages are stored as plain text, deflate only pays off once the text repeats itself
+public class MessageCompression {
+
+    public static final String CODEC_DEFLATE = "deflate"; // codec marker stored next to compressed text
+    public static final int COMPRESSION_THRESHOLD_BYTES = 1024; // UTF-8 size from which text is compressed
+    // compressed text must save at least this fraction of the size, or the plain text is kept
+    private static final double MIN_SAVING = 0.2;
+
+    /**
+     * compressIfLarge method to deflate the text of a message if that makes it meaningfully smaller
+     *
+     * @param text - the text of the message
+     *
+     * @return - the compressed text, or null if the text should be stored as is
+     */
+    public static byte[] compressIfLarge(String text) {
+        if (text == null || text.length() < COMPRESSION_THRESHOLD_BYTES / 4) {
+            return null; // cannot reach the threshold even with four byte characters
+        }
+        byte[] plain = text.getBytes(StandardCharsets.UTF_8);
+        if (plain.length < COMPRESSION_THRESHOLD_BYTES) {
+            return null;
+        }
+        byte[] compressed = deflate(plain);
+        return compressed.length <= plain.length * (1 - MIN_SAVING) ? compressed : null;
+    }
+
+    /**
+     * deflate method to compress bytes with the default deflate level
+     *
+     * @param plain - the bytes to compress
+     *
+     * @return - the compressed bytes, in the zlib format
+     */
+    public static byte[] deflate(byte[] plain) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(plain);
+            deflater.finish();
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(plain.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                byteArrayOutputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return byteArrayOutputStream.toByteArray();
+        } finally {
+            deflater.end(); // releases the native zlib memory right away
+        }
+    }
+
+    /**
+     * inflate method to decompress the text of a message
+     *
+     * @param compressed - the compressed text, in the zlib format
+     *
+     * @return - the text, or null if the bytes are not valid compressed data
+     */
+    public static String inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null; // truncated data
+                }
+                byteArrayOutputStream.write(buffer, 0, inflated);
+            }
+            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * getText method to read the text of a chat message from any thread
+     * a compressed message is inflated without being changed, so a concurrent bind is never disturbed
+     *
+     * @param chatMessage - the chat message
+     *
+     * @return - the text of the message, may be null for image messages
+     */
+    public static String getText(ChatMessage chatMessage) {
+        byte[] compressed = chatMessage.compressedMessage; // never cleared, so read before the text
+        String message = chatMessage.message;
+        if (message != null || compressed == null) {
+            return message;
+        }
+        return inflate(compressed);
+    }
+
+    /**
+     * getDisplayText method to read the text of a chat message being bound, on the main thread
+     * the text is inflated on the first bind and kept, later binds of the message cost nothing
+     *
+     * @param chatMessage - the chat message
+     *
+     * @return - the text of the message, may be null for image messages
+     */
+    public static String getDisplayText(ChatMessage chatMessage) {
+        if (chatMessage.message == null && chatMessage.compressedMessage != null) {
+            chatMessage.message = inflate(chatMessage.compressedMessage);
+        }
+        return chatMessage.message;
+    }
+
+    /**
+     * releaseText method to drop the inflated text of a compressed message under memory pressure
+     * the compressed bytes stay, so the text is inflated again on the next bind
+     *
+     * @param chatMessage - the chat message
+     *
+     * @return - the estimated number of bytes released, 0 if the text is not compressed or not inflated
+     */
+    public static long releaseText(ChatMessage chatMessage) {
+        if (chatMessage.compressedMessage == null || chatMessage.message == null) {
+            return 0;
+        }
+        long released = CacheRegistry.estimateBytes(chatMessage.message);
+        chatMessage.message = null;
+        return released;
+    }
+}
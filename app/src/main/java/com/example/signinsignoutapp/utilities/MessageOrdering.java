@@ -0,0 +1,178 @@
+package com.example.signinsignoutapp.utilities;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// MessageOrdering class for keeping the chat messages list sorted without ever re-sorting all of it
+public class MessageOrdering {
+
+    // chat messages are ordered by date, the message id breaks ties like it does for the high-water mark
+    public static final Comparator<ChatMessage> BY_DATE = (obj1, obj2) ->
+            compareToMark(obj1, obj2.timestamp, obj2.timestampNanos, obj2.id);
+
+    /**
+     * compareToMark method to order a chat message against a high-water mark in the order of the server
+     * the nanoseconds past the millisecond come next, then the message id breaks ties
+     *
+     * @param chatMessage - the chat message
+     *
+     * @param timestamp - the epoch milliseconds of the mark
+     *
+     * @param nanos - the nanoseconds past the millisecond of the mark
+     *
+     * @param messageId - the message id of the mark
+     *
+     * @return - negative, zero, or positive as the message is older, the same, or newer than the mark
+     */
+    public static int compareToMark(ChatMessage chatMessage, long timestamp, int nanos, String messageId) {
+        int compare = Long.compare(chatMessage.timestamp, timestamp);
+        if (compare == 0) {
+            compare = Integer.compare(chatMessage.timestampNanos, nanos);
+        }
+        return compare != 0 ? compare : chatMessage.id.compareTo(messageId);
+    }
+
+    /**
+     * merge method to insert a batch of chat messages into a sorted list
+     * only the batch is sorted, a batch newer than the whole list is appended with a single comparison,
+     * any other message is binary searched into place
+     *
+     * @param chatMessages - the sorted chat messages
+     *
+     * @param addedMessages - the chat messages to insert, in any order
+     *
+     * @param comparator - the order of the list
+     *
+     * @return - the position of the first inserted message, the old size if the batch was appended
+     */
+    public static int merge(List<ChatMessage> chatMessages, List<ChatMessage> addedMessages,
+                            Comparator<ChatMessage> comparator) {
+        int size = chatMessages.size();
+        if (addedMessages.isEmpty()) {
+            return size;
+        }
+        ChatTrace.begin(ChatTrace.SORT, addedMessages.size());
+        try {
+            List<ChatMessage> batch = new ArrayList<>(addedMessages);
+            Collections.sort(batch, comparator);
+            if (size == 0 || comparator.compare(chatMessages.get(size - 1), batch.get(0)) <= 0) {
+                chatMessages.addAll(batch);
+                return size;
+            }
+            // insert from the newest, each search is bounded by the previous insertion point
+            int position = size;
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                position = insertionPoint(chatMessages, batch.get(i), position, comparator);
+                chatMessages.add(position, batch.get(i));
+            }
+            return position;
+        } finally {
+            ChatTrace.end();
+        }
+    }
+
+    /**
+     * reposition method to move a chat message whose date changed back into order
+     * the message is searched from the tail, where a retimed pending message sits, so finding it costs the
+     * distance from the end and not a scan of the whole conversation
+     * the neighbours are checked first, so a message that is still in place costs two comparisons
+     *
+     * @param chatMessages - the chat messages, sorted except for the given message
+     *
+     * @param chatMessage - the chat message whose date changed
+     *
+     * @param comparator - the order of the list
+     *
+     * @return - true if the message moved
+     */
+    public static boolean reposition(List<ChatMessage> chatMessages, ChatMessage chatMessage,
+                                     Comparator<ChatMessage> comparator) {
+        ChatTrace.begin(ChatTrace.SORT);
+        try {
+            int index = lastIndexOf(chatMessages, chatMessage);
+            if (index < 0) {
+                return false;
+            }
+            boolean afterPrevious = index == 0 || comparator.compare(chatMessages.get(index - 1), chatMessage) <= 0;
+            boolean beforeNext = index == chatMessages.size() - 1
+                    || comparator.compare(chatMessage, chatMessages.get(index + 1)) <= 0;
+            if (afterPrevious && beforeNext) {
+                return false;
+            }
+            chatMessages.remove(index);
+            chatMessages.add(insertionPoint(chatMessages, chatMessage, chatMessages.size(), comparator), chatMessage);
+            return true;
+        } finally {
+            ChatTrace.end();
+        }
+    }
+
+    /**
+     * lastIndexOf method to find a chat message by identity, searching from the newest
+     * the list may be out of order around the message, so it can not be binary searched by its new date
+     *
+     * @param chatMessages - the chat messages
+     *
+     * @param chatMessage - the chat message to find
+     *
+     * @return - the position of the chat message, or -1 if it is not in the list
+     */
+    private static int lastIndexOf(List<ChatMessage> chatMessages, ChatMessage chatMessage) {
+        for (int i = chatMessages.size() - 1; i >= 0; i--) {
+            if (chatMessages.get(i) == chatMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * indexOf method to binary search the position of a chat message
+     * every message has a distinct place in the order, since the message id breaks ties
+     *
+     * @param chatMessages - the sorted chat messages
+     *
+     * @param chatMessage - the chat message to find
+     *
+     * @param comparator - the order of the list
+     *
+     * @return - the position of the chat message, or -1 if it is not in the list
+     */
+    public static int indexOf(List<ChatMessage> chatMessages, ChatMessage chatMessage,
+                              Comparator<ChatMessage> comparator) {
+        int position = insertionPoint(chatMessages, chatMessage, chatMessages.size(), comparator) - 1;
+        return position >= 0 && chatMessages.get(position) == chatMessage ? position : -1;
+    }
+
+    /**
+     * insertionPoint method to binary search the position after every message not newer than the given one
+     *
+     * @param chatMessages - the sorted chat messages
+     *
+     * @param chatMessage - the chat message to place
+     *
+     * @param end - the exclusive end of the searched range
+     *
+     * @param comparator - the order of the list
+     *
+     * @return - the position to insert the chat message at
+     */
+    private static int insertionPoint(List<ChatMessage> chatMessages, ChatMessage chatMessage, int end,
+                                      Comparator<ChatMessage> comparator) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(chatMessages.get(middle), chatMessage) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
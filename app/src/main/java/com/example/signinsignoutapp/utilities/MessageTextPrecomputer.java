@@ -0,0 +1,98 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.core.text.PrecomputedTextCompat;
+
+import com.example.signinsignoutapp.firebase.ConversationCipher;
+import com.example.signinsignoutapp.models.ChatMessage;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// MessageTextPrecomputer class
+public class MessageTextPrecomputer {
+    // a measured text keeps its characters and the width of each of them, an estimate of its heap size
+    private static final int PRECOMPUTED_BYTES_PER_CHAR = 8;
+
+    // single background thread so batches complete in the order they were submitted
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PrecomputedTextCompat.Params params;
+    private final ConversationCipher conversationCipher;
+
+    /**
+     * MessageTextPrecomputer constructor
+     *
+     * @param params - the text metrics of the message TextView the text will be bound to
+     *
+     * @param conversationCipher - opens end-to-end encrypted text before it is measured, may be null
+     */
+    public MessageTextPrecomputer(PrecomputedTextCompat.Params params, ConversationCipher conversationCipher) {
+        this.params = params;
+        this.conversationCipher = conversationCipher;
+    }
+
+    /**
+     * precompute method to measure the text of the chat messages on a background thread
+     * the inline thumbnails of image messages are decoded, and sealed text is opened, in the same pass
+     * onComplete is posted to the main thread once every message in the batch is measured
+     *
+     * @param chatMessages - the newly ingested chat messages
+     *
+     * @param onComplete - the callback to run on the main thread when the batch is ready
+     */
+    public void precompute(List<ChatMessage> chatMessages, Runnable onComplete) {
+        executor.execute(() -> {
+            ChatTrace.begin(ChatTrace.PRECOMPUTE, chatMessages.size());
+            for (ChatMessage chatMessage : chatMessages) {
+                if (conversationCipher != null) {
+                    conversationCipher.open(chatMessage); // a cached session key, one AES-GCM operation
+                }
+                if (chatMessage.isImage) {
+                    chatMessage.thumbnailBitmap = ChatImageEncoder.decodeBase64Bitmap(chatMessage.thumbnail);
+                } else if (chatMessage.message != null) { // compressed text is only inflated when bound
+                    chatMessage.precomputedMessage = PrecomputedTextCompat.create(chatMessage.message, params);
+                }
+            }
+            ChatTrace.end();
+            mainHandler.post(onComplete);
+        });
+    }
+
+    /**
+     * release method to drop what this precomputer produced for a chat message under memory pressure
+     * the text is then measured on the main thread when bound, and a thumbnail decoded when its row is bound
+     *
+     * @param chatMessage - the chat message, not being measured any more
+     *
+     * @param thumbnail - true to also drop the decoded thumbnail of an image message
+     *
+     * @return - the estimated number of bytes released
+     */
+    public static long release(ChatMessage chatMessage, boolean thumbnail) {
+        long released = 0;
+        PrecomputedTextCompat precomputedMessage = chatMessage.precomputedMessage;
+        if (precomputedMessage != null) {
+            released += (long) PRECOMPUTED_BYTES_PER_CHAR * precomputedMessage.length();
+            chatMessage.precomputedMessage = null;
+        }
+        Bitmap thumbnailBitmap = chatMessage.thumbnailBitmap;
+        if (thumbnail && thumbnailBitmap != null) {
+            released += thumbnailBitmap.getByteCount();
+            chatMessage.thumbnailBitmap = null;
+        }
+        return released;
+    }
+
+    /**
+     * shutdown method to stop the background thread, pending batches are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+}
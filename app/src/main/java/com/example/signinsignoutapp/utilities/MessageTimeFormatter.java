@@ -0,0 +1,67 @@
+package com.example.signinsignoutapp.utilities;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// MessageTimeFormatter class for formatting the time of chat messages
+// SimpleDateFormat is costly to create and not thread safe, so each thread keeps one
+public class MessageTimeFormatter {
+    private static final String EDITED_SUFFIX = " (edited)"; // appended to the date time of edited messages
+
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("MMM dd, yyyy - hh:mm a", Locale.getDefault());
+        }
+    };
+
+    /**
+     * format method for getting the readable local time of the chat message
+     *
+     * @param timestamp - the epoch milliseconds of the chat message
+     *
+     * @return - the local time in month, day, year, and time format
+     */
+    public static String format(long timestamp) {
+        ChatTrace.begin(ChatTrace.FORMAT);
+        try {
+            return DATE_FORMAT.get().format(new Date(timestamp));
+        } finally {
+            ChatTrace.end();
+        }
+    }
+
+    /**
+     * getDateTime method to get the date time shown under a chat message, formatted on first use
+     * only messages that were bound keep their text, the rest of a long conversation never formats it
+     * must be called on the main thread, the text is cached in the message
+     *
+     * @param chatMessage - the chat message, its dateTime is cleared when its time or edited mark changes
+     *
+     * @return - the readable date time, marked if the message was edited
+     */
+    public static String getDateTime(ChatMessage chatMessage) {
+        if (chatMessage.dateTime == null) {
+            String dateTime = format(chatMessage.timestamp);
+            chatMessage.dateTime = chatMessage.isEdited ? dateTime + EDITED_SUFFIX : dateTime;
+        }
+        return chatMessage.dateTime;
+    }
+
+    /**
+     * releaseDateTime method to drop the date time memo of a chat message under memory pressure
+     * must be called on the main thread, the text is formatted again on the next bind
+     *
+     * @param chatMessage - the chat message
+     *
+     * @return - the estimated number of bytes released
+     */
+    public static long releaseDateTime(ChatMessage chatMessage) {
+        long released = CacheRegistry.estimateBytes(chatMessage.dateTime);
+        chatMessage.dateTime = null;
+        return released;
+    }
+}
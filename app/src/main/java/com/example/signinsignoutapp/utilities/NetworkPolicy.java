@@ -0,0 +1,188 @@
+package com.example.signinsignoutapp.utilities;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import com.example.signinsignoutapp.models.NetworkState;
+
+// NetworkPolicy class to size network work by the quality of the active network
+// the network is classified from its ConnectivityManager capabilities when a network callback reports a change,
+// every decision reads that cached state, so a switch from Wi-Fi to a slow cellular link changes the next page,
+// prefetch or download once the callback has run, not the running one
+// the state comes from a NetworkStateProvider, tests pass a fake one
+public class NetworkPolicy {
+
+    // network qualities, from worst to best
+    public static final int QUALITY_OFFLINE = 0;
+    public static final int QUALITY_CONSTRAINED = 1; // a slow link, e.g. 2G or a weak signal
+    public static final int QUALITY_METERED = 2;
+    public static final int QUALITY_UNMETERED = 3;
+
+    // below this estimated downstream bandwidth a link is constrained, whatever it costs
+    public static final int CONSTRAINED_DOWNSTREAM_KBPS = 1000;
+
+    // the newest messages read per conversation page, by quality
+    private static final int[] MESSAGE_PAGE_SIZES = {0, 10, 20, 30};
+    // the conversations prefetched per visit to the user directory, by quality
+    private static final int[] PREFETCH_DEPTHS = {0, 0, 1, 3};
+
+    // NetworkStateProvider interface to read the state of the active network
+    public interface NetworkStateProvider {
+
+        /**
+         * getNetworkState method
+         *
+         * @return - the current state of the active network
+         */
+        NetworkState getNetworkState();
+    }
+
+    private static NetworkPolicy instance;
+
+    private final NetworkStateProvider networkStateProvider;
+
+    /**
+     * getInstance method to get the NetworkPolicy of the application, reading the active network
+     *
+     * @param context - the current state of this application
+     *
+     * @return - the NetworkPolicy
+     */
+    public static synchronized NetworkPolicy getInstance(Context context) {
+        if (instance == null) {
+            instance = new NetworkPolicy(new ConnectivityStateProvider(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /**
+     * NetworkPolicy constructor
+     *
+     * @param networkStateProvider - the source of the network state
+     */
+    public NetworkPolicy(NetworkStateProvider networkStateProvider) {
+        this.networkStateProvider = networkStateProvider;
+    }
+
+    /**
+     * classify method to rate a network state
+     *
+     * @param networkState - the state of the active network
+     *
+     * @return - one of the QUALITY constants
+     */
+    public static int classify(NetworkState networkState) {
+        if (networkState == null || !networkState.isConnected) {
+            return QUALITY_OFFLINE;
+        }
+        if (networkState.downstreamKbps > 0 && networkState.downstreamKbps < CONSTRAINED_DOWNSTREAM_KBPS) {
+            return QUALITY_CONSTRAINED; // a slow link is constrained even when unmetered
+        }
+        return networkState.isMetered ? QUALITY_METERED : QUALITY_UNMETERED;
+    }
+
+    /**
+     * getQuality method
+     *
+     * @return - the quality of the active network, one of the QUALITY constants
+     */
+    public int getQuality() {
+        return classify(networkStateProvider.getNetworkState());
+    }
+
+    /**
+     * getMessagePageSize method
+     *
+     * @return - the number of messages to read in one page of a conversation, 0 when offline
+     */
+    public int getMessagePageSize() {
+        return MESSAGE_PAGE_SIZES[getQuality()];
+    }
+
+    /**
+     * getPrefetchDepth method
+     *
+     * @return - the number of conversations to prefetch, none on a constrained network
+     */
+    public int getPrefetchDepth() {
+        return PREFETCH_DEPTHS[getQuality()];
+    }
+
+    /**
+     * isFullImageAllowed method to decide which variant of an image message is downloaded
+     *
+     * @return - true to download the full image, false to keep showing the inline thumbnail
+     */
+    public boolean isFullImageAllowed() {
+        return getQuality() >= QUALITY_METERED;
+    }
+
+    /**
+     * isBackgroundSyncAllowed method to decide if the background sync may spend data now
+     *
+     * @return - true only on an unmetered network that is not constrained
+     */
+    public boolean isBackgroundSyncAllowed() {
+        return getQuality() == QUALITY_UNMETERED;
+    }
+
+    // ConnectivityStateProvider class following the capabilities of the default network from ConnectivityManager
+    // the state is kept up to date by a network callback, so reading it costs no call into the system
+    private static class ConnectivityStateProvider implements NetworkStateProvider {
+        private volatile NetworkState networkState;
+
+        /**
+         * ConnectivityStateProvider constructor, reads the active network once and then follows its changes
+         *
+         * @param context - the application context
+         */
+        ConnectivityStateProvider(Context context) {
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            Network network = connectivityManager.getActiveNetwork();
+            networkState = toNetworkState(network != null ? connectivityManager.getNetworkCapabilities(network) : null);
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                    networkState = toNetworkState(networkCapabilities);
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    networkState = toNetworkState(null);
+                }
+            });
+        }
+
+        /**
+         * getNetworkState method overridden
+         *
+         * @return - the state of the default network, not connected if there is none
+         */
+        @Override
+        public NetworkState getNetworkState() {
+            return networkState;
+        }
+
+        /**
+         * toNetworkState method to read a network state from the capabilities of a network
+         *
+         * @param capabilities - the capabilities of the network, null if there is no network
+         *
+         * @return - the NetworkState, not connected if there is no network
+         */
+        private static NetworkState toNetworkState(NetworkCapabilities capabilities) {
+            NetworkState networkState = new NetworkState();
+            if (capabilities == null) {
+                return networkState;
+            }
+            networkState.isConnected = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            networkState.isMetered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            networkState.downstreamKbps = capabilities.getLinkDownstreamBandwidthKbps();
+            return networkState;
+        }
+    }
+}
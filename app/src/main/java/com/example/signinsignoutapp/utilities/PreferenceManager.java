@@ -62,6 +62,28 @@ public class PreferenceManager {
         return sharedPreferences.getString(key, null);
     }
 
+    /**
+     * putLong method for adding key value pair in the SharedPreferences object
+     *
+     * @param key the String key to add
+     * @param value the long value to add
+     */
+    public void putLong(String key, long value) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putLong(key, value);
+        editor.apply(); // commit the changes in the editor
+    }
+
+    /**
+     * getLong method for getting key value pair in the SharedPreferences object
+     *
+     * @param key the String key to add
+     * @return the stored long value, or 0 if there is none
+     */
+    public long getLong(String key) {
+        return sharedPreferences.getLong(key, 0);
+    }
+
     /**
      * clear method to clear the editor
      */
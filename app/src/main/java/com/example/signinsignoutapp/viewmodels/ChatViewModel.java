@@ -0,0 +1,188 @@
+package com.example.signinsignoutapp.viewmodels;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import com.example.signinsignoutapp.firebase.ConversationCipher;
+import com.example.signinsignoutapp.firebase.SessionKeyStore;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ChatUpdate;
+import com.example.signinsignoutapp.models.ExportProgress;
+import com.example.signinsignoutapp.models.SearchResult;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.repositories.ChatRepository;
+import com.example.signinsignoutapp.repositories.ConversationExporter;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
+import com.example.signinsignoutapp.utilities.ChatImageLoader;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.MessageTextPrecomputer;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+
+import java.util.List;
+
+// ChatViewModel class extends AndroidViewModel, holds the state of one conversation across configuration changes
+public class ChatViewModel extends AndroidViewModel {
+    private ChatRepository chatRepository;
+    private ConversationExporter conversationExporter;
+    private MessageTextPrecomputer messageTextPrecomputer;
+    private ChatImageLoader chatImageLoader;
+    private Bitmap receiverProfileBitmap;
+
+    /**
+     * ChatViewModel constructor
+     *
+     * @param application - the application holding the view model
+     */
+    public ChatViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    /**
+     * init method to create the repository of the conversation, only the first call has any effect
+     * a recreated activity gets the already loaded messages, images, and listener back
+     *
+     * @param receiverUser - the other user of the conversation
+     *
+     * @param params - the text metrics of the message item TextView
+     */
+    public void init(User receiverUser, PrecomputedTextCompat.Params params) {
+        if (chatRepository != null) {
+            return;
+        }
+        // one cipher per conversation, its session keys are cached by the SessionKeyStore
+        ConversationCipher conversationCipher = new ConversationCipher(SessionKeyStore.getInstance(getApplication()),
+                new PreferenceManager(getApplication()).getString(Constants.KEY_USER_ID), receiverUser.id);
+        messageTextPrecomputer = new MessageTextPrecomputer(params, conversationCipher);
+        chatImageLoader = new ChatImageLoader(getApplication());
+        receiverProfileBitmap = ChatImageEncoder.decodeBase64Bitmap(receiverUser.image); // decoded once per conversation
+        chatRepository = new ChatRepository(getApplication(), receiverUser, messageTextPrecomputer, chatImageLoader,
+                conversationCipher);
+        conversationExporter = new ConversationExporter(getApplication(), receiverUser);
+    }
+
+    public List<ChatMessage> getChatMessages() {
+        return chatRepository.getChatMessages();
+    }
+
+    public int getVersion() {
+        return chatRepository.getVersion();
+    }
+
+    public LiveData<ChatUpdate> getChatUpdates() {
+        return chatRepository.getChatUpdates();
+    }
+
+    public LiveData<Boolean> getLoading() {
+        return chatRepository.getLoading();
+    }
+
+    public LiveData<List<SearchResult>> getSearchResults() {
+        return chatRepository.getSearchResults();
+    }
+
+    public LiveData<String> getErrorMessages() {
+        return chatRepository.getErrorMessages();
+    }
+
+    public LiveData<Boolean> getEncrypted() {
+        return chatRepository.getEncrypted();
+    }
+
+    public void clearErrorMessage() {
+        chatRepository.clearErrorMessage();
+    }
+
+    public ChatImageLoader getChatImageLoader() {
+        return chatImageLoader;
+    }
+
+    public Bitmap getReceiverProfileBitmap() {
+        return receiverProfileBitmap;
+    }
+
+    /**
+     * start method to listen to the conversation while it is visible
+     */
+    public void start() {
+        chatRepository.start();
+    }
+
+    /**
+     * stop method to stop listening while the conversation is not visible
+     */
+    public void stop() {
+        chatRepository.stop();
+    }
+
+    public void sendMessage(String text) {
+        chatRepository.sendMessage(text);
+    }
+
+    public void sendImage(Uri imageUri) {
+        chatRepository.sendImage(imageUri);
+    }
+
+    public void searchMessages(String query) {
+        chatRepository.searchMessages(query);
+    }
+
+    public int indexOfMessage(String messageId) {
+        return chatRepository.indexOfMessage(messageId);
+    }
+
+    public void editMessage(ChatMessage chatMessage, String text) {
+        chatRepository.editMessage(chatMessage, text);
+    }
+
+    public void unsendMessage(ChatMessage chatMessage) {
+        chatRepository.unsendMessage(chatMessage);
+    }
+
+    public long trimMessages(int level, int firstVisible, int lastVisible) {
+        return chatRepository.trimMessages(level, firstVisible, lastVisible);
+    }
+
+    public long getMessageTtl() {
+        return chatRepository.getMessageTtl();
+    }
+
+    public void setMessageTtl(long ttlMs) {
+        chatRepository.setMessageTtl(ttlMs);
+    }
+
+    public LiveData<ExportProgress> getExportProgress() {
+        return conversationExporter.getProgress();
+    }
+
+    public String getExportFileName() {
+        return conversationExporter.getFileName();
+    }
+
+    public boolean exportConversation(Uri destination) {
+        return conversationExporter.export(destination);
+    }
+
+    public void cancelExport() {
+        conversationExporter.cancel();
+    }
+
+    /**
+     * onCleared method overridden to release the listener, the background threads, and the image cache
+     * called once the conversation is closed for good, never on a configuration change
+     */
+    @Override
+    protected void onCleared() {
+        if (chatRepository != null) {
+            chatRepository.close();
+            conversationExporter.close(); // an export still running is cancelled with the conversation
+            messageTextPrecomputer.shutdown();
+            chatImageLoader.shutdown();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.signinsignoutapp.viewmodels;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import com.example.signinsignoutapp.models.BroadcastProgress;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.repositories.BroadcastSender;
+import com.example.signinsignoutapp.repositories.UserRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// UserViewModel class extends AndroidViewModel, holds the user directory across configuration changes
+public class UserViewModel extends AndroidViewModel {
+    private final UserRepository userRepository;
+    private final BroadcastSender broadcastSender;
+    private final Set<String> selectedUserIds = new LinkedHashSet<>(); // users picked for a broadcast
+    private boolean isSelecting; // true while users are being picked for a broadcast
+
+    /**
+     * UserViewModel constructor, the user directory is kept for the lifetime of the view model
+     *
+     * @param application - the application holding the view model
+     */
+    public UserViewModel(@NonNull Application application) {
+        super(application);
+        userRepository = new UserRepository(application);
+        broadcastSender = BroadcastSender.getInstance(application);
+    }
+
+    public LiveData<List<User>> getUsers() {
+        return userRepository.getUsers();
+    }
+
+    public LiveData<Boolean> getLoading() {
+        return userRepository.getLoading();
+    }
+
+    public LiveData<Set<String>> getUnreadCountChanges() {
+        return userRepository.getUnreadCountChanges();
+    }
+
+    public LiveData<Boolean> getImagesRestored() {
+        return userRepository.getImagesRestored();
+    }
+
+    public Map<String, Long> getUnreadCounts() {
+        return userRepository.getUnreadCounts();
+    }
+
+    public Map<String, Bitmap> getUserImages() {
+        return userRepository.getUserImages();
+    }
+
+    public LiveData<BroadcastProgress> getBroadcastProgress() {
+        return broadcastSender.getProgress();
+    }
+
+    public Set<String> getSelectedUserIds() {
+        return selectedUserIds;
+    }
+
+    public boolean isSelecting() {
+        return isSelecting;
+    }
+
+    /**
+     * setSelecting method to start or stop picking users for a broadcast, the picked users are forgotten on stop
+     *
+     * @param isSelecting - true to start picking users
+     */
+    public void setSelecting(boolean isSelecting) {
+        this.isSelecting = isSelecting;
+        if (!isSelecting) {
+            selectedUserIds.clear();
+        }
+    }
+
+    /**
+     * toggleSelected method to pick a user for the broadcast, or unpick an already picked one
+     *
+     * @param user - the user that was clicked
+     */
+    public void toggleSelected(User user) {
+        if (!selectedUserIds.remove(user.id)) {
+            selectedUserIds.add(user.id);
+        }
+    }
+
+    /**
+     * sendBroadcast method to send the message to every picked user
+     *
+     * @param message - the text of the message
+     *
+     * @return - false if another broadcast is still being sent
+     */
+    public boolean sendBroadcast(String message) {
+        return broadcastSender.send(message, new ArrayList<>(selectedUserIds)) != null;
+    }
+
+    /**
+     * onUserClicked method to record the conversation being opened in the prefetch hit rate
+     *
+     * @param user - the user that was clicked
+     */
+    public void onUserClicked(User user) {
+        userRepository.recordOpened(user);
+    }
+
+    /**
+     * start method to listen to the user directory and the unread counters while the directory is visible
+     */
+    public void start() {
+        userRepository.start();
+    }
+
+    /**
+     * stop method to stop listening while the directory is not visible
+     */
+    public void stop() {
+        userRepository.stop();
+    }
+
+    /**
+     * onCleared method overridden to release the listener and the background thread
+     */
+    @Override
+    protected void onCleared() {
+        userRepository.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.signinsignoutapp.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.MessageCompactor;
+import com.example.signinsignoutapp.models.ConversationStats;
+
+import java.util.concurrent.TimeUnit;
+
+// CompactionWorker class extends Worker, moves the old messages of long conversations into buckets
+// runs daily while the device charges on an unmetered network, since compacting reads every old message once
+public class CompactionWorker extends Worker {
+    private static final String TAG = "CompactionWorker";
+    private static final String WORK_NAME = "messageCompaction";
+    private static final int MIN_CONVERSATION_MESSAGES = 200; // only long conversations are worth compacting
+    private static final int MAX_BUCKETS_PER_CONVERSATION = 5; // bounds the work of one run
+
+    /**
+     * CompactionWorker constructor
+     *
+     * @param context - the application context
+     *
+     * @param workerParams - the parameters of this run
+     */
+    public CompactionWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * schedule method to run the compaction daily, keeps an already scheduled compaction
+     *
+     * @param context - the current state of this application
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP,
+                new PeriodicWorkRequest.Builder(CompactionWorker.class, 1, TimeUnit.DAYS)
+                        .setConstraints(constraints)
+                        .build());
+    }
+
+    /**
+     * cancel method to stop the compaction, used when the user signs out
+     *
+     * @param context - the current state of this application
+     */
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * doWork method overridden to compact the long conversations held in the local store
+     *
+     * @return - success, or retry if a read or write failed, buckets committed before the failure are kept
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        MessageCompactor messageCompactor = new MessageCompactor();
+        try {
+            for (ConversationStats stats : ChatDatabase.getInstance(getApplicationContext()).getConversationStats()) {
+                if (stats.messageCount >= MIN_CONVERSATION_MESSAGES) {
+                    int compacted = messageCompactor.compact(stats.conversationId, MAX_BUCKETS_PER_CONVERSATION);
+                    Log.d(TAG, "compacted " + compacted + " messages of " + stats.conversationId);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "compaction failed", e);
+            return Result.retry();
+        }
+        return Result.success();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.signinsignoutapp.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.ExpiredMessageCleaner;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+
+import java.util.concurrent.TimeUnit;
+
+// ExpiryWorker class extends Worker, removes the disappearing messages whose time is over
+// the local copies of every conversation are removed, and the server copies of the messages this user sent
+public class ExpiryWorker extends Worker {
+    private static final String TAG = "ExpiryWorker";
+    private static final String WORK_NAME = "messageExpiry";
+    private static final int MAX_CHUNKS = 10; // bounds the work of one run, the rest is deleted on the next run
+
+    /**
+     * ExpiryWorker constructor
+     *
+     * @param context - the application context
+     *
+     * @param workerParams - the parameters of this run
+     */
+    public ExpiryWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * schedule method to run the cleanup hourly while online, keeps an already scheduled cleanup
+     *
+     * @param context - the current state of this application
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP,
+                new PeriodicWorkRequest.Builder(ExpiryWorker.class, 1, TimeUnit.HOURS)
+                        .setConstraints(constraints)
+                        .build());
+    }
+
+    /**
+     * cancel method to stop the cleanup, used when the user signs out
+     *
+     * @param context - the current state of this application
+     */
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * doWork method overridden to remove the expired messages from the local store and the firebase database
+     *
+     * @return - success, or retry if a read or write failed, chunks deleted before the failure stay deleted
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        int removed = ChatDatabase.getInstance(getApplicationContext()).deleteExpiredMessages(System.currentTimeMillis());
+        String userId = new PreferenceManager(getApplicationContext()).getString(Constants.KEY_USER_ID);
+        if (userId == null) {
+            return Result.success();
+        }
+        try {
+            int deleted = new ExpiredMessageCleaner().deleteExpired(userId, MAX_CHUNKS);
+            Log.d(TAG, "removed " + removed + " local and " + deleted + " sent expired messages");
+        } catch (Exception e) {
+            Log.w(TAG, "expiry cleanup failed", e);
+            return Result.retry();
+        }
+        return Result.success();
+    }
+}
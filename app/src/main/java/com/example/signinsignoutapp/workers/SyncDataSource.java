@@ -0,0 +1,31 @@
+package com.example.signinsignoutapp.workers;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationSummary;
+import com.example.signinsignoutapp.models.User;
+
+import java.util.List;
+
+// SyncDataSource interface for the remote reads of SyncWorker
+// every method blocks, returns at most limit documents, and is only called off the main thread
+public interface SyncDataSource {
+
+    // conversation summaries, the unread counters addressed to the current user
+    List<ConversationSummary> fetchConversationSummaries(int limit) throws Exception;
+
+    // messages of a conversation after the given message, oldest first
+    // the cursor is the exact server timestamp, milliseconds and the nanoseconds past them
+    List<ChatMessage> fetchMessagesAfter(String conversationId, long afterTimestamp, int afterNanos,
+                                         String afterMessageId, int limit) throws Exception;
+
+    // newest messages of a conversation, newest first
+    List<ChatMessage> fetchNewestMessages(String conversationId, int limit) throws Exception;
+
+    // users by document id after the given user, for the first full load of the directory
+    List<User> fetchUsersAfterId(String afterUserId, int limit) throws Exception;
+
+    // users changed after the given update time, the user id breaks ties, oldest change first
+    // the cursor is the exact server timestamp, milliseconds and the nanoseconds past them
+    List<User> fetchUsersUpdatedAfter(long updatedAfter, int updatedAfterNanos, String afterUserId, int limit)
+            throws Exception;
+}
@@ -0,0 +1,271 @@
+package com.example.signinsignoutapp.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.signinsignoutapp.database.ChatDatabase;
+import com.example.signinsignoutapp.firebase.FirestoreSyncDataSource;
+import com.example.signinsignoutapp.firebase.SessionKeyStore;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.ConversationSummary;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.Constants;
+import com.example.signinsignoutapp.utilities.DirectoryCursor;
+import com.example.signinsignoutapp.utilities.MessageOrdering;
+import com.example.signinsignoutapp.utilities.NetworkPolicy;
+import com.example.signinsignoutapp.utilities.PreferenceManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// SyncWorker class extends Worker, refreshes the local store in the background
+// conversation summaries, recent messages and the user directory delta are read, in that order,
+// until the read budget of the run is spent, so the first screen after a long idle period is already warm
+public class SyncWorker extends Worker {
+    private static final String TAG = "SyncWorker";
+    private static final String WORK_NAME = "backgroundSync";
+    private static final long SYNC_INTERVAL_HOURS = 1;
+
+    // read budget of one run, every query costs at least one read even when it returns nothing
+    public static final int MAX_READS_PER_RUN = 100;
+    public static final int MAX_CONVERSATION_SUMMARIES = 50;
+    public static final int MAX_MESSAGES_PER_CONVERSATION = 30;
+    public static final int DIRECTORY_PAGE_SIZE = 25;
+
+    private final SyncDataSource syncDataSource;
+    private final NetworkPolicy networkPolicy;
+    private final ChatDatabase chatDatabase;
+    private final PreferenceManager preferenceManager;
+    private final DirectoryCursor directoryCursor;
+    private int remainingReads;
+
+    /**
+     * SyncWorker constructor used by WorkManager, reads from firestore
+     *
+     * @param context - the application context
+     *
+     * @param workerParams - the parameters of this run
+     */
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        this(context, workerParams, new FirestoreSyncDataSource(SessionKeyStore.getInstance(context),
+                new PreferenceManager(context).getString(Constants.KEY_USER_ID)));
+    }
+
+    /**
+     * SyncWorker constructor with the data source to read from
+     *
+     * @param context - the application context
+     *
+     * @param workerParams - the parameters of this run
+     *
+     * @param syncDataSource - the source of the remote reads
+     */
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams,
+                      SyncDataSource syncDataSource) {
+        this(context, workerParams, syncDataSource, NetworkPolicy.getInstance(context));
+    }
+
+    /**
+     * SyncWorker constructor with the data source to read from and the policy deciding if the network may be used
+     *
+     * @param context - the application context
+     *
+     * @param workerParams - the parameters of this run
+     *
+     * @param syncDataSource - the source of the remote reads
+     *
+     * @param networkPolicy - skips the run on a network not fit for background reads
+     */
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams,
+                      SyncDataSource syncDataSource, NetworkPolicy networkPolicy) {
+        super(context, workerParams);
+        this.syncDataSource = syncDataSource;
+        this.networkPolicy = networkPolicy;
+        chatDatabase = ChatDatabase.getInstance(context);
+        preferenceManager = new PreferenceManager(context);
+        directoryCursor = DirectoryCursor.getInstance(context);
+    }
+
+    /**
+     * schedule method to run the background sync periodically, keeps an already scheduled sync
+     * runs only on an unmetered network and when the battery is not low
+     *
+     * @param context - the current state of this application
+     */
+    public static void schedule(Context context) {
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, buildWorkRequest());
+    }
+
+    /**
+     * cancel method to stop the background sync, used when the user signs out
+     *
+     * @param context - the current state of this application
+     */
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * buildWorkRequest method
+     *
+     * @return - the periodic request of the background sync with its constraints
+     */
+    @VisibleForTesting
+    public static PeriodicWorkRequest buildWorkRequest() {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        return new PeriodicWorkRequest.Builder(SyncWorker.class, SYNC_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+    }
+
+    /**
+     * doWork method overridden to run one sync within the read budget
+     *
+     * @return - success, or retry if a read failed, what was stored before the failure is kept
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (preferenceManager.getString(Constants.KEY_USER_ID) == null) {
+            return Result.success(); // signed out, nothing to sync
+        }
+        if (!networkPolicy.isBackgroundSyncAllowed()) {
+            // unmetered but too slow, e.g. a weak Wi-Fi signal, the next period tries again
+            Log.d(TAG, "sync skipped, network quality " + networkPolicy.getQuality());
+            return Result.success();
+        }
+        remainingReads = MAX_READS_PER_RUN;
+        try {
+            syncConversations();
+            syncDirectory();
+        } catch (Exception e) {
+            Log.w(TAG, "sync failed", e);
+            return Result.retry();
+        }
+        Log.d(TAG, "sync used " + (MAX_READS_PER_RUN - remainingReads) + " reads");
+        return Result.success();
+    }
+
+    /**
+     * syncConversations method to refresh the conversation summaries
+     * and the recent messages of each conversation whose unread count grew since the last run
+     */
+    private void syncConversations() throws Exception {
+        List<ConversationSummary> conversationSummaries = syncDataSource.fetchConversationSummaries(
+                Math.min(remainingReads, MAX_CONVERSATION_SUMMARIES));
+        charge(conversationSummaries.size());
+        Map<String, Long> storedUnreadCounts = chatDatabase.getUnreadCounts();
+        for (ConversationSummary conversationSummary : conversationSummaries) {
+            Long storedUnreadCount = storedUnreadCounts.get(conversationSummary.conversationId);
+            if (remainingReads > 0 && conversationSummary.unreadCount > 0
+                    && (storedUnreadCount == null || conversationSummary.unreadCount > storedUnreadCount)) {
+                syncMessages(conversationSummary.conversationId);
+            }
+        }
+        // stored last, so a failed run fetches the messages again on retry
+        chatDatabase.putConversationSummaries(conversationSummaries);
+    }
+
+    /**
+     * syncMessages method to store the recent messages of a conversation
+     * a conversation opened before resumes after its high-water mark, and moves the mark
+     * once its legacy messages were synced, any other conversation gets its newest page
+     *
+     * @param conversationId - the id of the conversation
+     */
+    private void syncMessages(String conversationId) throws Exception {
+        String timestampKey = Constants.KEY_LAST_SEEN_TIMESTAMP + "_" + conversationId;
+        String nanosKey = Constants.KEY_LAST_SEEN_TIMESTAMP_NANOS + "_" + conversationId;
+        String messageIdKey = Constants.KEY_LAST_SEEN_MESSAGE_ID + "_" + conversationId;
+        long lastSeenTimestamp = preferenceManager.getLong(timestampKey);
+        int lastSeenNanos = (int) preferenceManager.getLong(nanosKey);
+        String lastSeenMessageId = preferenceManager.getString(messageIdKey);
+        boolean resumable = lastSeenTimestamp > 0 && lastSeenMessageId != null;
+        int limit = Math.min(remainingReads, MAX_MESSAGES_PER_CONVERSATION);
+        List<ChatMessage> chatMessages = resumable
+                ? syncDataSource.fetchMessagesAfter(conversationId, lastSeenTimestamp, lastSeenNanos, lastSeenMessageId,
+                        limit)
+                : syncDataSource.fetchNewestMessages(conversationId, limit);
+        charge(chatMessages.size());
+        if (chatMessages.isEmpty()) {
+            return;
+        }
+        chatDatabase.insertMessages(conversationId, chatMessages);
+        if (resumable && preferenceManager.getBoolean(Constants.KEY_LEGACY_SYNCED + "_" + conversationId)) {
+            ChatMessage newest = chatMessages.get(chatMessages.size() - 1);
+            // the open conversation may have moved the mark past this page while it was read
+            String storedId = preferenceManager.getString(messageIdKey);
+            if (storedId != null && MessageOrdering.compareToMark(newest, preferenceManager.getLong(timestampKey),
+                    (int) preferenceManager.getLong(nanosKey), storedId) <= 0) {
+                return;
+            }
+            preferenceManager.putLong(timestampKey, newest.timestamp);
+            preferenceManager.putLong(nanosKey, newest.timestampNanos);
+            preferenceManager.putString(messageIdKey, newest.id);
+        }
+    }
+
+    /**
+     * syncDirectory method to refresh the stored user directory with the remaining budget
+     * the first load pages through every user by id, later runs only read users changed since
+     * the cursors are stored after every page, so a run that runs out of budget resumes where it stopped
+     * the update time of the mark is the exact server timestamp, so a page always starts past the last user
+     * of the previous one, even a page of a single user
+     * the state is shared with the directory listener of the foreground through DirectoryCursor
+     */
+    private void syncDirectory() throws Exception {
+        directoryCursor.startLoad();
+        while (remainingReads > 0) {
+            int limit = Math.min(remainingReads, DIRECTORY_PAGE_SIZE);
+            // checked on every page, the foreground may complete the first load while this run pages
+            boolean loaded = directoryCursor.isLoaded();
+            List<User> users;
+            if (loaded) {
+                DirectoryCursor.Mark mark = directoryCursor.getMark();
+                users = syncDataSource.fetchUsersUpdatedAfter(mark.updatedAt, mark.updatedAtNanos, mark.userId, limit);
+            } else {
+                users = syncDataSource.fetchUsersAfterId(directoryCursor.getLoadCursor(), limit);
+            }
+            charge(users.size());
+            chatDatabase.upsertUsers(users);
+            if (!users.isEmpty()) {
+                User last = users.get(users.size() - 1);
+                if (loaded) {
+                    directoryCursor.advanceMark(last); // never back past a user the foreground already read
+                } else {
+                    directoryCursor.putLoadCursor(last.id);
+                }
+            }
+            if (users.size() < limit) {
+                if (!loaded) {
+                    directoryCursor.completeLoad(); // later runs continue from the start time of the load
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * charge method to take the reads of one query from the budget
+     *
+     * @param documents - the number of documents the query returned
+     */
+    private void charge(int documents) {
+        remainingReads -= Math.max(1, documents);
+    }
+}
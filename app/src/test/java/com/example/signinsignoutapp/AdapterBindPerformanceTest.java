@@ -0,0 +1,126 @@
+package com.example.signinsignoutapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.signinsignoutapp.adapters.ChatAdapter;
+import com.example.signinsignoutapp.adapters.UsersAdapter;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.models.User;
+import com.example.signinsignoutapp.utilities.ChatImageEncoder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Performance regression tests of the adapters, binding thousands of rows through a few recycled holders.
+ * Each bind pass is held to a bitmap decode budget and an allocation budget per row.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AdapterBindPerformanceTest {
+    private static final int ROWS = 2000;
+    private static final int MAX_DECODES_PER_PASS = 0; // avatars and thumbnails are decoded before binding
+    private static final long MAX_BYTES_PER_BIND = 16 * 1024; // a decoded avatar alone is larger
+
+    private FrameLayout parent;
+    private Bitmap bitmap;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                R.style.Theme_SignInSignOutApp);
+        parent = new FrameLayout(context);
+        bitmap = Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void usersAdapterBindPassStaysWithinBudget() {
+        List<User> users = new ArrayList<>();
+        Map<String, Long> unreadCounts = new HashMap<>();
+        Map<String, Bitmap> userImages = new HashMap<>();
+        for (int i = 0; i < ROWS; i++) {
+            User user = new User();
+            user.id = "user" + i;
+            user.name = "User " + i;
+            user.email = "user" + i + "@example.com";
+            user.image = "not decoded while binding";
+            users.add(user);
+            unreadCounts.put(user.id, (long) (i % 120));
+            userImages.put(user.id, bitmap);
+        }
+        UsersAdapter usersAdapter = new UsersAdapter(unreadCounts, userImages, user -> { });
+        usersAdapter.submitList(users); // the first list is shown without a diff
+        assertBindPassWithinBudget(usersAdapter);
+    }
+
+    @Test
+    public void chatAdapterBindPassStaysWithinBudget() {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = "message" + i;
+            chatMessage.message = "message number " + i;
+            chatMessage.timestamp = i * 60_000L;
+            chatMessage.dateTime = "Jan 01, 2024 - 10:00 AM"; // already formatted by an earlier bind
+            chatMessage.isSent = i % 2 == 0;
+            chatMessages.add(chatMessage);
+        }
+        assertBindPassWithinBudget(new ChatAdapter(chatMessages, bitmap, null, null));
+    }
+
+    /**
+     * binds every row twice through one holder per view type, the second pass is measured
+     */
+    private <VH extends RecyclerView.ViewHolder> void assertBindPassWithinBudget(RecyclerView.Adapter<VH> adapter) {
+        Map<Integer, VH> holders = new HashMap<>();
+        bindPass(adapter, holders); // warm up, creates the holders and stable ids
+
+        int decodes = ChatImageEncoder.getBase64DecodeCount();
+        com.sun.management.ThreadMXBean allocationBean = allocationBean();
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+        bindPass(adapter, holders);
+        long allocated = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) - before : 0;
+
+        int passDecodes = ChatImageEncoder.getBase64DecodeCount() - decodes;
+        assertTrue(passDecodes + " decodes in one bind pass", passDecodes <= MAX_DECODES_PER_PASS);
+        long bytesPerBind = allocated / adapter.getItemCount();
+        assertTrue(bytesPerBind + " bytes per bind", bytesPerBind <= MAX_BYTES_PER_BIND);
+    }
+
+    private <VH extends RecyclerView.ViewHolder> void bindPass(RecyclerView.Adapter<VH> adapter, Map<Integer, VH> holders) {
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            int viewType = adapter.getItemViewType(position);
+            VH holder = holders.get(viewType);
+            if (holder == null) {
+                holder = adapter.createViewHolder(parent, viewType);
+                holders.put(viewType, holder);
+            }
+            adapter.bindViewHolder(holder, position);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            return (com.sun.management.ThreadMXBean) threadMXBean;
+        }
+        return null; // allocation counting unavailable on this JVM, only the decode budget is checked
+    }
+}
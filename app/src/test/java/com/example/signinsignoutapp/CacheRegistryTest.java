@@ -0,0 +1,83 @@
+package com.example.signinsignoutapp;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.CacheRegistry;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+import com.example.signinsignoutapp.utilities.MessageTextPrecomputer;
+import com.example.signinsignoutapp.utilities.MessageTimeFormatter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Memory pressure handling: every registered cache is trimmed at the level the system reported,
+ * the bytes released are added up, and the state dropped from a message is rebuilt when it is read again.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CacheRegistryTest {
+
+    @Test
+    public void trimReachesEveryCacheAndReportsReleasedBytes() {
+        CacheRegistry cacheRegistry = CacheRegistry.getInstance();
+        List<Integer> levels = new ArrayList<>();
+        CacheRegistry.TrimmableCache first = level -> {
+            levels.add(level);
+            return 1000;
+        };
+        CacheRegistry.TrimmableCache second = level -> level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ? 500 : 0;
+        cacheRegistry.register(first);
+        cacheRegistry.register(second);
+        cacheRegistry.register(first); // registered once only
+        try {
+            long total = cacheRegistry.getReleasedBytes();
+            assertEquals(1000, cacheRegistry.trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+            assertEquals(1500, cacheRegistry.onLowMemory());
+            assertEquals(total + 2500, cacheRegistry.getReleasedBytes());
+            assertEquals(2, levels.size());
+            assertEquals(ComponentCallbacks2.TRIM_MEMORY_COMPLETE, (int) levels.get(1));
+        } finally {
+            cacheRegistry.unregister(first);
+            cacheRegistry.unregister(second);
+        }
+        assertEquals(0, cacheRegistry.trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void releasedMessageStateIsRebuiltOnNextRead() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("a long message that repeats itself ");
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = "message";
+        chatMessage.timestamp = 1_700_000_000_000L;
+        chatMessage.compressedMessage = MessageCompression.compressIfLarge(text.toString());
+        assertNotNull(chatMessage.compressedMessage);
+        chatMessage.thumbnailBitmap = Bitmap.createBitmap(32, 24, Bitmap.Config.ARGB_8888);
+
+        String dateTime = MessageTimeFormatter.getDateTime(chatMessage);
+        assertEquals(text.toString(), MessageCompression.getDisplayText(chatMessage)); // inflated on bind
+
+        assertTrue(MessageTimeFormatter.releaseDateTime(chatMessage) > 0);
+        assertTrue(MessageCompression.releaseText(chatMessage) >= 2L * text.length());
+        assertEquals(0, MessageTextPrecomputer.release(chatMessage, false)); // nothing measured, thumbnail kept
+        assertNotNull(chatMessage.thumbnailBitmap);
+        assertEquals(32 * 24 * 4, MessageTextPrecomputer.release(chatMessage, true));
+        assertNull(chatMessage.dateTime);
+        assertNull(chatMessage.message);
+        assertNull(chatMessage.thumbnailBitmap);
+
+        assertEquals(0, MessageCompression.releaseText(chatMessage)); // already released
+        assertEquals(dateTime, MessageTimeFormatter.getDateTime(chatMessage));
+        assertEquals(text.toString(), MessageCompression.getDisplayText(chatMessage));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.CacheRegistry;
+import com.example.signinsignoutapp.utilities.ConversationUtils;
+import com.example.signinsignoutapp.utilities.MessageTimeFormatter;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Heap footprint of a conversation held in memory, measured per 10k messages.
+ * The compact ChatMessage is compared against the previous shape, a Date, a formatted date time, and
+ * a fresh copy of both user ids per message. Sizes are only reported, the ratio is asserted.
+ * Each shape is measured as the bytes its thread allocates while building it, which unlike the free heap
+ * does not depend on when the collector runs.
+ */
+public class ChatMessageFootprintTest {
+    private static final int MESSAGES = 10_000;
+    private static final String FIRST_USER_ID = "Zk3sP0mQx8VbRt2LcYw9NhJd4aF1";
+    private static final String SECOND_USER_ID = "Qe7TgUo5Hy1XiWn6KzMb3CvLr8Sp";
+    private static final String TEXT = "see you at noon"; // shared by both shapes, only the overhead is compared
+
+    // LegacyChatMessage class, the fields ChatMessage held before it was made compact
+    private static class LegacyChatMessage {
+        String id, senderId, receiverId, message, dateTime;
+        Date dateObject;
+        boolean isSent;
+    }
+
+    @Test
+    public void compactMessagesUseLessThanHalfTheHeap() {
+        com.sun.management.ThreadMXBean allocationBean = allocationBean();
+        assumeNotNull(allocationBean);
+        // the strings a document read produces are built beforehand, the shape that keeps them is charged
+        // their estimated size, formatting and copying allocate more garbage than they keep
+        String[] ids = new String[MESSAGES];
+        String[] senderIds = new String[MESSAGES];
+        String[] receiverIds = new String[MESSAGES];
+        String[] dateTimes = new String[MESSAGES];
+        long keptBytes = 0; // the read strings kept by the legacy shape only
+        for (int i = 0; i < MESSAGES; i++) {
+            boolean isSent = i % 2 == 0;
+            ids[i] = "message" + i; // shared by both shapes
+            // every document read produces its own copy of the ids
+            senderIds[i] = String.valueOf((isSent ? FIRST_USER_ID : SECOND_USER_ID).toCharArray());
+            receiverIds[i] = String.valueOf((isSent ? SECOND_USER_ID : FIRST_USER_ID).toCharArray());
+            dateTimes[i] = MessageTimeFormatter.format(i * 60_000L);
+            keptBytes += CacheRegistry.estimateBytes(senderIds[i]) + CacheRegistry.estimateBytes(receiverIds[i])
+                    + CacheRegistry.estimateBytes(dateTimes[i]);
+        }
+        ConversationUtils.internUserId(FIRST_USER_ID); // the interned ids are set up once, outside both shapes
+        ConversationUtils.internUserId(SECOND_USER_ID);
+        long threadId = Thread.currentThread().getId();
+
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        LegacyChatMessage[] legacyMessages = new LegacyChatMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            LegacyChatMessage legacyMessage = new LegacyChatMessage();
+            boolean isSent = i % 2 == 0;
+            legacyMessage.id = ids[i];
+            legacyMessage.senderId = senderIds[i];
+            legacyMessage.receiverId = receiverIds[i];
+            legacyMessage.message = TEXT;
+            legacyMessage.dateObject = new Date(i * 60_000L);
+            legacyMessage.dateTime = dateTimes[i]; // formatted when ingested
+            legacyMessage.isSent = isSent;
+            legacyMessages[i] = legacyMessage;
+        }
+        long legacyBytes = allocationBean.getThreadAllocatedBytes(threadId) - before + keptBytes;
+
+        before = allocationBean.getThreadAllocatedBytes(threadId);
+        ChatMessage[] chatMessages = new ChatMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage chatMessage = new ChatMessage();
+            boolean isSent = i % 2 == 0;
+            chatMessage.id = ids[i];
+            chatMessage.senderId = ConversationUtils.internUserId(senderIds[i]); // the read copy is dropped
+            chatMessage.message = TEXT;
+            chatMessage.timestamp = i * 60_000L; // the date time is only formatted for bound rows
+            chatMessage.isSent = isSent;
+            chatMessages[i] = chatMessage;
+        }
+        long compactBytes = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.println(String.format("per %d messages: legacy %d KB, compact %d KB",
+                MESSAGES, legacyBytes / 1024, compactBytes / 1024));
+        assertEquals(legacyMessages.length, chatMessages.length); // both shapes stay reachable until measured
+        assertTrue(compactBytes + " bytes compact, " + legacyBytes + " bytes legacy", compactBytes * 2 < legacyBytes);
+    }
+
+    @Test
+    public void dateTimeIsFormattedOnceWhenBound() {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.timestamp = 60_000L;
+        assertNull(chatMessage.dateTime);
+
+        String dateTime = MessageTimeFormatter.getDateTime(chatMessage);
+        assertEquals(MessageTimeFormatter.format(60_000L), dateTime);
+        assertSame(dateTime, MessageTimeFormatter.getDateTime(chatMessage));
+
+        chatMessage.isEdited = true;
+        chatMessage.dateTime = null; // cleared by the repository when the message is edited
+        assertTrue(MessageTimeFormatter.getDateTime(chatMessage).endsWith("(edited)"));
+    }
+
+    @Test
+    public void userIdsAreShared() {
+        String first = ConversationUtils.internUserId(new String(FIRST_USER_ID));
+        assertSame(first, ConversationUtils.internUserId(new String(FIRST_USER_ID)));
+        assertNull(ConversationUtils.internUserId(null));
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled()) {
+            return (com.sun.management.ThreadMXBean) threadMXBean;
+        }
+        return null; // allocation counting unavailable on this JVM, the footprint is not measured
+    }
+}
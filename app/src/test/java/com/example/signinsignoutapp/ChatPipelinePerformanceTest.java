@@ -0,0 +1,172 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.MessageOrdering;
+import com.example.signinsignoutapp.utilities.MessageTimeFormatter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Performance regression tests of the chat pipeline, fed with synthetic snapshots of thousands of messages.
+ * Each test holds one hot path to an operation or allocation budget.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ChatPipelinePerformanceTest {
+    private static final int MESSAGES = 10_000;
+    private static final int SNAPSHOT_SIZE = 50;
+    private static final long MAX_FORMAT_BYTES_PER_ROW = 1024; // a new SimpleDateFormat alone is several KB
+
+    @Test
+    public void appendedSnapshotsNeverResortTheList() {
+        CountingComparator comparator = new CountingComparator();
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (int snapshot = 0; snapshot < MESSAGES / SNAPSHOT_SIZE; snapshot++) {
+            List<ChatMessage> batch = newMessages(snapshot * SNAPSHOT_SIZE, SNAPSHOT_SIZE, 1);
+            Collections.shuffle(batch, new Random(snapshot)); // documents of one snapshot come in any order
+            assertEquals(chatMessages.size(), MessageOrdering.merge(chatMessages, batch, comparator));
+        }
+        assertSorted(chatMessages);
+        // each snapshot costs a sort of the snapshot plus one comparison to append it
+        long budget = (long) (MESSAGES / SNAPSHOT_SIZE) * (SNAPSHOT_SIZE * log2(SNAPSHOT_SIZE) + 1);
+        assertTrue(comparator.count + " comparisons, budget " + budget, comparator.count <= budget);
+    }
+
+    @Test
+    public void lateSnapshotIsMergedWithoutFullSort() {
+        List<ChatMessage> chatMessages = newMessages(0, MESSAGES, 2); // even timestamps
+        List<ChatMessage> lateMessages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lateMessages.add(newMessage("late" + i, i * (MESSAGES / 5L) + 1)); // odd timestamps spread over the list
+        }
+        CountingComparator comparator = new CountingComparator();
+        int firstPosition = MessageOrdering.merge(chatMessages, lateMessages, comparator);
+
+        assertEquals(MESSAGES + lateMessages.size(), chatMessages.size());
+        assertEquals(1, firstPosition);
+        assertSorted(chatMessages);
+        // a binary search per late message, a full sort would need at least one comparison per message
+        long budget = lateMessages.size() * (log2(lateMessages.size()) + log2(MESSAGES) + 2);
+        assertTrue(comparator.count + " comparisons, budget " + budget, comparator.count <= budget);
+    }
+
+    @Test
+    public void confirmedTimestampRepositionsOnlyThatMessage() {
+        CountingList chatMessages = new CountingList(newMessages(0, MESSAGES, 2));
+        ChatMessage pendingMessage = chatMessages.get(MESSAGES - 1);
+        pendingMessage.timestamp = MESSAGES + 1; // the server time is earlier than the estimate
+        CountingComparator comparator = new CountingComparator();
+        chatMessages.reads = 0;
+
+        assertTrue(MessageOrdering.reposition(chatMessages, pendingMessage, comparator));
+        long reads = chatMessages.reads; // finding the message counts too, not only the comparisons
+        assertSorted(chatMessages);
+        long budget = log2(MESSAGES) + 3;
+        assertTrue(comparator.count + " comparisons, budget " + budget, comparator.count <= budget);
+        assertTrue(reads + " element reads, budget " + budget, reads <= budget);
+    }
+
+    @Test
+    public void formattingAllocatesNoFormatterPerRow() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        for (int i = 0; i < 1000; i++) {
+            MessageTimeFormatter.format(i * 60_000L); // warm up the thread's formatter
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageTimeFormatter.format(i * 60_000L);
+        }
+        long bytesPerRow = (allocationBean.getThreadAllocatedBytes(threadId) - before) / MESSAGES;
+        assertTrue(bytesPerRow + " bytes per row", bytesPerRow <= MAX_FORMAT_BYTES_PER_ROW);
+    }
+
+    private static List<ChatMessage> newMessages(int first, int count, long step) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            chatMessages.add(newMessage(String.format("message%06d", i), i * step));
+        }
+        return chatMessages;
+    }
+
+    private static ChatMessage newMessage(String id, long timestamp) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.message = id;
+        chatMessage.timestamp = timestamp;
+        return chatMessage;
+    }
+
+    private static void assertSorted(List<ChatMessage> chatMessages) {
+        for (int i = 1; i < chatMessages.size(); i++) {
+            assertTrue(MessageOrdering.BY_DATE.compare(chatMessages.get(i - 1), chatMessages.get(i)) <= 0);
+        }
+    }
+
+    private static long log2(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value - 1); // rounded up
+    }
+
+    // CountingList class counting the element reads of the chat messages list, including any scan for a message
+    private static class CountingList extends AbstractList<ChatMessage> {
+        private final List<ChatMessage> chatMessages;
+        long reads;
+
+        CountingList(List<ChatMessage> chatMessages) {
+            this.chatMessages = chatMessages;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            reads++;
+            return chatMessages.get(index);
+        }
+
+        @Override
+        public int size() {
+            return chatMessages.size();
+        }
+
+        @Override
+        public ChatMessage set(int index, ChatMessage chatMessage) {
+            return chatMessages.set(index, chatMessage);
+        }
+
+        @Override
+        public void add(int index, ChatMessage chatMessage) {
+            chatMessages.add(index, chatMessage);
+        }
+
+        @Override
+        public ChatMessage remove(int index) {
+            return chatMessages.remove(index);
+        }
+    }
+
+    // CountingComparator class counting the comparisons of the chat message order
+    private static class CountingComparator implements Comparator<ChatMessage> {
+        long count;
+
+        @Override
+        public int compare(ChatMessage obj1, ChatMessage obj2) {
+            count++;
+            return MessageOrdering.BY_DATE.compare(obj1, obj2);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.ExpiryQueue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Expiry of disappearing messages: the queue hands back only the expired messages, soonest first,
+ * and a tick over a large conversation costs the expired messages, not the conversation.
+ */
+public class ExpiryQueueTest {
+    private static final int MESSAGES = 100_000;
+
+    @Test
+    public void expiredMessagesArePolledSoonestFirst() {
+        ExpiryQueue expiryQueue = new ExpiryQueue();
+        expiryQueue.add(message("c", 3_000));
+        expiryQueue.add(message("a", 1_000));
+        expiryQueue.add(message("never", 0)); // never expires, not tracked
+        expiryQueue.add(message("b", 2_000));
+        assertEquals(3, expiryQueue.size());
+        assertEquals(1_000, expiryQueue.getNextExpiry());
+
+        List<ChatMessage> expired = expiryQueue.pollExpired(2_000);
+        assertEquals(2, expired.size());
+        assertEquals("a", expired.get(0).id);
+        assertEquals("b", expired.get(1).id);
+        assertEquals(3_000, expiryQueue.getNextExpiry());
+
+        assertTrue(expiryQueue.pollExpired(2_999).isEmpty());
+        assertEquals(1, expiryQueue.pollExpired(3_000).size());
+        assertEquals(0, expiryQueue.getNextExpiry());
+    }
+
+    @Test
+    public void tickCostDoesNotGrowWithTheConversation() {
+        ExpiryQueue expiryQueue = new ExpiryQueue();
+        for (int i = 0; i < MESSAGES; i++) {
+            expiryQueue.add(message("message" + i, 1_000_000L + (i * 7919L) % MESSAGES)); // added out of order
+        }
+        long start = System.nanoTime();
+        int expired = 0;
+        for (long now = 1_000_000L; now < 1_000_100L; now++) { // one tick per expiring message
+            expired += expiryQueue.pollExpired(now).size();
+        }
+        long tickNs = (System.nanoTime() - start) / 100;
+
+        System.out.println(String.format("%d tracked messages: %.1f us per tick", MESSAGES, tickNs / 1000.0));
+        assertEquals(100, expired);
+        assertEquals(MESSAGES - 100, expiryQueue.size());
+        assertTrue(tickNs + " ns per tick", tickNs < 1_000_000); // a scan of the whole list would be far slower
+    }
+
+    private static ChatMessage message(String id, long expiresAt) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.expiresAt = expiresAt;
+        return chatMessage;
+    }
+}
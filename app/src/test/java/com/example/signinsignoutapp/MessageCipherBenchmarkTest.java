@@ -0,0 +1,128 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.utilities.MessageCipher;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cost of end-to-end encryption per message, with the session key derived once and then reused.
+ * Key agreement and derivation happen once per conversation and epoch, sealing and opening once per message.
+ * Times are only reported, the per-message bound is loose so the test is not flaky on slow machines.
+ */
+public class MessageCipherBenchmarkTest {
+    private static final int MESSAGES = 2_000;
+    private static final int WARMUP_MESSAGES = 2_000;
+    private static final String CONVERSATION_ID = "Qe7TgUo5Hy1XiWn6KzMb3CvLr8Sp_Zk3sP0mQx8VbRt2LcYw9NhJd4aF1";
+    private static final int EPOCH = 2900;
+
+    @Test
+    public void sealAndOpenCostMicrosecondsPerMessage() throws Exception {
+        KeyPair first = newIdentity();
+        KeyPair second = newIdentity();
+        deriveSessionKey(first, second, EPOCH - 1); // loads the providers, paid once per process
+        long start = System.nanoTime();
+        SecretKey sessionKey = deriveSessionKey(first, second, EPOCH);
+        long derivationNs = System.nanoTime() - start;
+
+        byte[][] texts = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            texts[i] = ("see you at noon, message " + i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < WARMUP_MESSAGES; i++) {
+            MessageCipher.open(sessionKey, MessageCipher.seal(sessionKey, EPOCH, texts[i % MESSAGES], false));
+        }
+
+        byte[][] sealed = new byte[MESSAGES][];
+        start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            sealed[i] = MessageCipher.seal(sessionKey, EPOCH, texts[i], false);
+        }
+        long sealNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            assertArrayEquals(texts[i], MessageCipher.open(sessionKey, sealed[i]));
+        }
+        long openNs = System.nanoTime() - start;
+
+        System.out.println(String.format("key derivation %d us, seal %.1f us/message, open %.1f us/message",
+                derivationNs / 1000, sealNs / 1000.0 / MESSAGES, openNs / 1000.0 / MESSAGES));
+        assertTrue("seal took " + sealNs / MESSAGES + " ns per message", sealNs / MESSAGES < 500_000);
+        assertTrue("open took " + openNs / MESSAGES + " ns per message", openNs / MESSAGES < 500_000);
+    }
+
+    @Test
+    public void bothUsersDeriveTheSameSessionKey() throws Exception {
+        KeyPair first = newIdentity();
+        KeyPair second = newIdentity();
+        SecretKey firstKey = deriveSessionKey(first, second, EPOCH);
+        SecretKey secondKey = deriveSessionKey(second, first, EPOCH);
+        assertArrayEquals(firstKey.getEncoded(), secondKey.getEncoded());
+
+        byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(text, MessageCipher.open(secondKey, MessageCipher.seal(firstKey, EPOCH, text, false)));
+    }
+
+    @Test
+    public void changedMessagesAreRefused() throws Exception {
+        SecretKey sessionKey = deriveSessionKey(newIdentity(), newIdentity(), EPOCH);
+        byte[] sealed = MessageCipher.seal(sessionKey, EPOCH, "hello".getBytes(StandardCharsets.UTF_8), false);
+
+        byte[] changedText = sealed.clone();
+        changedText[changedText.length - 1] ^= 1;
+        assertNull(MessageCipher.open(sessionKey, changedText));
+
+        byte[] changedEpoch = sealed.clone();
+        ByteBuffer.wrap(changedEpoch).putInt(2, EPOCH + 1); // the header is authenticated with the text
+        assertNull(MessageCipher.open(sessionKey, changedEpoch));
+
+        assertNull(MessageCipher.open(sessionKey, new byte[4]));
+        assertEquals(-1, MessageCipher.getEpoch(new byte[4]));
+    }
+
+    @Test
+    public void keysOfOtherEpochsCannotOpen() throws Exception {
+        KeyPair first = newIdentity();
+        KeyPair second = newIdentity();
+        SecretKey sessionKey = deriveSessionKey(first, second, EPOCH);
+        SecretKey nextKey = deriveSessionKey(first, second, EPOCH + 1);
+
+        byte[] sealed = MessageCipher.seal(sessionKey, EPOCH, "hello".getBytes(StandardCharsets.UTF_8), false);
+        assertEquals(EPOCH, MessageCipher.getEpoch(sealed));
+        assertNull(MessageCipher.open(nextKey, sealed));
+    }
+
+    @Test
+    public void deflatedFlagIsKept() throws Exception {
+        SecretKey sessionKey = deriveSessionKey(newIdentity(), newIdentity(), EPOCH);
+        byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+        assertTrue(MessageCipher.isDeflated(MessageCipher.seal(sessionKey, EPOCH, text, true)));
+        assertFalse(MessageCipher.isDeflated(MessageCipher.seal(sessionKey, EPOCH, text, false)));
+    }
+
+    private static KeyPair newIdentity() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    // the same agreement and derivation SessionKeyStore runs, without the Android keystore
+    private static SecretKey deriveSessionKey(KeyPair own, KeyPair peer, int epoch) throws Exception {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(own.getPrivate());
+        keyAgreement.doPhase(peer.getPublic(), true);
+        return MessageCipher.deriveKey(keyAgreement.generateSecret(),
+                CONVERSATION_ID.getBytes(StandardCharsets.UTF_8), ByteBuffer.allocate(4).putInt(epoch).array());
+    }
+}
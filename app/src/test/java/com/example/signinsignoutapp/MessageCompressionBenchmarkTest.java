@@ -0,0 +1,107 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.MessageCompression;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the message compression, the CPU spent per message against the bytes saved on the wire.
+ * Sizes are asserted, timings are only reported since they depend on the machine.
+ */
+public class MessageCompressionBenchmarkTest {
+    private static final int[] PAYLOAD_SIZES = {1024, 4 * 1024, 16 * 1024, 64 * 1024};
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void shortMessagesStayPlain() {
+        assertNull(MessageCompression.compressIfLarge("see you at noon"));
+        assertNull(MessageCompression.compressIfLarge(logText(MessageCompression.COMPRESSION_THRESHOLD_BYTES - 1)));
+    }
+
+    @Test
+    public void incompressibleTextStaysPlain() {
+        byte[] random = new byte[8 * 1024];
+        new Random(1).nextBytes(random);
+        assertNull(MessageCompression.compressIfLarge(Base64.getEncoder().encodeToString(random)));
+    }
+
+    @Test
+    public void compressedTextIsInflatedOnceWhenBound() {
+        String text = logText(4 * 1024);
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.compressedMessage = MessageCompression.compressIfLarge(text);
+        assertNotNull(chatMessage.compressedMessage);
+
+        assertEquals(text, MessageCompression.getText(chatMessage));
+        assertNull(chatMessage.message); // reading off the main thread leaves the message as it was
+        assertEquals(text, MessageCompression.getDisplayText(chatMessage));
+        assertSame(chatMessage.message, MessageCompression.getDisplayText(chatMessage));
+    }
+
+    @Test
+    public void corruptDataIsNotInflated() {
+        byte[] compressed = MessageCompression.compressIfLarge(logText(4 * 1024));
+        assertNull(MessageCompression.inflate(Arrays.copyOf(compressed, compressed.length / 2)));
+    }
+
+    @Test
+    public void compressionTradeOff() {
+        System.out.println("payload  wire bytes  saved  deflate us  inflate us");
+        for (int size : PAYLOAD_SIZES) {
+            String text = logText(size);
+            int plainBytes = text.getBytes(StandardCharsets.UTF_8).length;
+            byte[] compressed = MessageCompression.compressIfLarge(text);
+            assertNotNull(compressed);
+            assertEquals(text, MessageCompression.inflate(compressed));
+            // pasted logs and code repeat themselves, a long paste should at least halve
+            assertTrue(compressed.length * 2 <= plainBytes);
+
+            long deflateNanos = medianNanos(() -> MessageCompression.compressIfLarge(text));
+            long inflateNanos = medianNanos(() -> MessageCompression.inflate(compressed));
+            System.out.printf("%7d  %10d  %4d%%  %10.1f  %10.1f%n", plainBytes, compressed.length,
+                    100 - compressed.length * 100 / plainBytes, deflateNanos / 1000.0, inflateNanos / 1000.0);
+        }
+    }
+
+    /**
+     * builds log-like text of the given UTF-8 size, lines share most of their words like real logs do
+     */
+    private static String logText(int bytes) {
+        Random random = new Random(bytes);
+        String[] levels = {"DEBUG", "INFO", "WARN", "ERROR"};
+        String[] components = {"SyncWorker", "ChatRepository", "SnapshotListener", "ChatImageLoader"};
+        StringBuilder builder = new StringBuilder(bytes);
+        while (builder.length() < bytes) {
+            builder.append("2024-05-").append(10 + random.nextInt(20)).append(' ')
+                    .append(10 + random.nextInt(14)).append(':').append(10 + random.nextInt(50)).append(' ')
+                    .append(levels[random.nextInt(levels.length)]).append(' ')
+                    .append(components[random.nextInt(components.length)])
+                    .append(": request ").append(random.nextInt(100000)).append(" completed in ")
+                    .append(random.nextInt(900)).append(" ms\n");
+        }
+        builder.setLength(bytes);
+        return builder.toString();
+    }
+
+    private static long medianNanos(Runnable task) {
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            task.run(); // warm up
+        }
+        long[] nanos = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[ITERATIONS / 2];
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.firebase.MessageSchema;
+import com.example.signinsignoutapp.models.ChatMessage;
+import com.example.signinsignoutapp.utilities.MessageOrdering;
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Query cursors keep the exact server timestamp: a cursor rebuilt from a message is the timestamp the message
+ * was read with, so a query starting after it never reads that message again, and messages a few microseconds
+ * apart keep the order of the server.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MessageCursorTest {
+
+    @Test
+    public void cursorIsTheExactServerTimestamp() {
+        Timestamp timestamp = new Timestamp(1_700_000_000L, 123_456_000); // the server keeps microseconds
+        long millis = MessageSchema.toMillis(timestamp);
+        int nanos = MessageSchema.toNanos(timestamp);
+        assertEquals(1_700_000_000_123L, millis);
+        assertEquals(456_000, nanos);
+        assertEquals(timestamp, MessageSchema.toTimestamp(millis, nanos));
+        assertEquals(new Timestamp(0, 0), MessageSchema.toTimestamp(MessageSchema.toMillis(null),
+                MessageSchema.toNanos(null)));
+    }
+
+    @Test
+    public void messagesInTheSameMillisecondKeepTheServerOrder() {
+        ChatMessage first = message("b", 1_000, 100_000);
+        ChatMessage second = message("a", 1_000, 200_000); // a smaller id, but later on the server
+
+        assertTrue(MessageOrdering.BY_DATE.compare(first, second) < 0);
+        // the mark taken from the first message is not after it, and the second one is after the mark
+        assertEquals(0, MessageOrdering.compareToMark(first, first.timestamp, first.timestampNanos, first.id));
+        assertTrue(MessageOrdering.compareToMark(second, first.timestamp, first.timestampNanos, first.id) > 0);
+        // the id only breaks ties of the exact same time
+        assertTrue(MessageOrdering.compareToMark(second, 1_000, 200_000, "b") < 0);
+    }
+
+    private static ChatMessage message(String id, long timestamp, int timestampNanos) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.timestamp = timestamp;
+        chatMessage.timestampNanos = timestampNanos;
+        return chatMessage;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.signinsignoutapp;
+
+import com.example.signinsignoutapp.models.NetworkState;
+import com.example.signinsignoutapp.utilities.NetworkPolicy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Network-quality policy driven by fake network states: pages, prefetching, image variants and background sync
+ * shrink from Wi-Fi to metered cellular to a constrained link, and stop when offline.
+ */
+public class NetworkPolicyTest {
+    private final NetworkState networkState = new NetworkState();
+    private final NetworkPolicy networkPolicy = new NetworkPolicy(() -> networkState);
+
+    @Test
+    public void unmeteredNetworkGetsTheFullBudget() {
+        setNetwork(true, false, 50_000);
+        assertEquals(NetworkPolicy.QUALITY_UNMETERED, networkPolicy.getQuality());
+        assertEquals(30, networkPolicy.getMessagePageSize());
+        assertEquals(3, networkPolicy.getPrefetchDepth());
+        assertTrue(networkPolicy.isFullImageAllowed());
+        assertTrue(networkPolicy.isBackgroundSyncAllowed());
+    }
+
+    @Test
+    public void meteredNetworkPrefetchesLessAndSkipsBackgroundSync() {
+        setNetwork(true, true, 20_000);
+        assertEquals(NetworkPolicy.QUALITY_METERED, networkPolicy.getQuality());
+        assertEquals(20, networkPolicy.getMessagePageSize());
+        assertEquals(1, networkPolicy.getPrefetchDepth());
+        assertTrue(networkPolicy.isFullImageAllowed());
+        assertFalse(networkPolicy.isBackgroundSyncAllowed());
+    }
+
+    @Test
+    public void slowLinkIsConstrainedEvenWhenUnmetered() {
+        setNetwork(true, true, 200); // 2G
+        assertEquals(NetworkPolicy.QUALITY_CONSTRAINED, networkPolicy.getQuality());
+        assertEquals(10, networkPolicy.getMessagePageSize());
+        assertEquals(0, networkPolicy.getPrefetchDepth());
+        assertFalse(networkPolicy.isFullImageAllowed());
+
+        setNetwork(true, false, 500); // a weak Wi-Fi signal
+        assertEquals(NetworkPolicy.QUALITY_CONSTRAINED, networkPolicy.getQuality());
+        assertFalse(networkPolicy.isBackgroundSyncAllowed());
+    }
+
+    @Test
+    public void unknownBandwidthIsJudgedByCostOnly() {
+        setNetwork(true, true, 0);
+        assertEquals(NetworkPolicy.QUALITY_METERED, networkPolicy.getQuality());
+        setNetwork(true, false, 0);
+        assertEquals(NetworkPolicy.QUALITY_UNMETERED, networkPolicy.getQuality());
+    }
+
+    @Test
+    public void offlineReadsNothing() {
+        setNetwork(false, false, 50_000);
+        assertEquals(NetworkPolicy.QUALITY_OFFLINE, networkPolicy.getQuality());
+        assertEquals(0, networkPolicy.getMessagePageSize());
+        assertEquals(0, networkPolicy.getPrefetchDepth());
+        assertFalse(networkPolicy.isFullImageAllowed());
+        assertFalse(networkPolicy.isBackgroundSyncAllowed());
+        assertEquals(NetworkPolicy.QUALITY_OFFLINE, NetworkPolicy.classify(null));
+    }
+
+    @Test
+    public void policyFollowsTheNetworkAsItChanges() {
+        setNetwork(true, false, 50_000);
+        assertTrue(networkPolicy.isFullImageAllowed());
+        setNetwork(true, true, 100); // walked out of Wi-Fi range onto 2G
+        assertFalse(networkPolicy.isFullImageAllowed());
+    }
+
+    private void setNetwork(boolean isConnected, boolean isMetered, int downstreamKbps) {
+        networkState.isConnected = isConnected;
+        networkState.isMetered = isMetered;
+        networkState.downstreamKbps = downstreamKbps;
+    }
+}